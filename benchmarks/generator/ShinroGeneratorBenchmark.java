@@ -0,0 +1,47 @@
+package generator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of a single generation of ShinroGenerator's genetic algorithm
+ * <p>
+ * Every iteration starts over from the same seeded random population with the
+ * default targets, and the generations of an iteration follow on from each
+ * other as they would in generatePuzzle(). The generator's state is static, so
+ * this benchmark must only be run on one thread. Run with "-prof gc" to see
+ * the allocation rate alongside the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShinroGeneratorBenchmark {
+	private static final long SEED = 20150101L;
+
+	private ShinroGenerator.Generation generation;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		this.generation = new ShinroGenerator.Generation(SEED);
+	}
+
+	@Benchmark
+	public double generation() {
+		this.generation.next();
+		return this.generation.getEliteFitness();
+	}
+}
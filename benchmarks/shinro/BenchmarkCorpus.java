@@ -0,0 +1,96 @@
+package shinro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+
+/**
+ * The fixed set of puzzles the benchmarks run on
+ * <p>
+ * The corpus is the text pack CORPUS on the classpath, built with
+ * generator.PuzzlePackGenerator from 8 puzzles of generator.ConstructiveGenerator
+ * for every difficulty factor from 2 to 7 (seeds 1002 to 1007). It is checked in
+ * rather than generated so that results stay comparable when the generators
+ * change. Puzzles are bucketed by their pack difficulty.
+ */
+public class BenchmarkCorpus {
+	public static final String CORPUS = "/corpus.txt";
+
+	/**
+	 * Loads the puzzles of a difficulty bucket
+	 * @param bucket  "easy" for a difficulty below 10, "medium" for 10 to 29,
+	 * "hard" for 30 and over or "all"
+	 * @return the unsolved puzzles of the bucket, in pack order
+	 * @throws IOException if the corpus can't be read or parsed
+	 * @throws IllegalArgumentException if there is no such bucket
+	 */
+	public static ShinroPuzzle[] load(String bucket) throws IOException {
+		int min, max;
+		if (bucket.equals("easy")) {
+			min = 0;
+			max = 9;
+		}
+		else if (bucket.equals("medium")) {
+			min = 10;
+			max = 29;
+		}
+		else if (bucket.equals("hard")) {
+			min = 30;
+			max = Integer.MAX_VALUE;
+		}
+		else if (bucket.equals("all")) {
+			min = Integer.MIN_VALUE;
+			max = Integer.MAX_VALUE;
+		}
+		else {
+			throw new IllegalArgumentException("load: Illegal value --> "
+					+ bucket);
+		}
+
+		PuzzleParser parser = new PuzzleParser(ByteBuffer.wrap(readCorpus()));
+		ArrayList<ShinroPuzzle> puzzles = new ArrayList<ShinroPuzzle>();
+		try {
+			parser.readPackName();
+			int numPuzzles = parser.readNumPuzzles();
+			int[][] intMatrix = new int[ShinroPuzzle.SIZE][ShinroPuzzle.SIZE];
+			for (int i = 0; i < numPuzzles; i++) {
+				int difficulty = parser.readPackPuzzle(intMatrix);
+				if (difficulty >= min && difficulty <= max) {
+					ShinroPuzzle puzzle = new ShinroPuzzle(intMatrix);
+					puzzle.reset();
+					puzzles.add(puzzle);
+				}
+			}
+		}
+		catch (ParseException e) {
+			throw new IOException(CORPUS + ": " + e.getMessage());
+		}
+		return puzzles.toArray(new ShinroPuzzle[puzzles.size()]);
+	}
+
+	/**
+	 * Reads the corpus from the classpath
+	 * @return the bytes of the corpus
+	 * @throws IOException if the corpus is missing or can't be read
+	 */
+	private static byte[] readCorpus() throws IOException {
+		InputStream in = BenchmarkCorpus.class.getResourceAsStream(CORPUS);
+		if (in == null) {
+			throw new IOException("Missing " + CORPUS);
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			in.close();
+		}
+	}
+}
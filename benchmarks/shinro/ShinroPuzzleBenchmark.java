@@ -0,0 +1,103 @@
+package shinro;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the ShinroPuzzle primitives the solver and the generators are
+ * built on
+ * <p>
+ * Every benchmark covers all the relevant spaces of every puzzle in the corpus,
+ * so a score is in whole corpus passes per millisecond. Run with "-prof gc" to
+ * see the allocation rate alongside the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ShinroPuzzleBenchmark {
+	private ShinroPuzzle[] puzzles;
+	private GridPos[][] arrows, empties;
+
+	@Setup
+	public void setup() throws IOException {
+		this.puzzles = BenchmarkCorpus.load("all");
+		this.arrows = new GridPos[this.puzzles.length][];
+		this.empties = new GridPos[this.puzzles.length][];
+		for (int i = 0; i < this.puzzles.length; i++) {
+			ArrayList<GridPos> arrowList = new ArrayList<GridPos>();
+			ArrayList<GridPos> emptyList = new ArrayList<GridPos>();
+			for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+				for (int col = 0; col < ShinroPuzzle.SIZE; col++) {
+					if (this.puzzles[i].isArrow(row, col)) {
+						arrowList.add(new GridPos(row, col));
+					}
+					else {
+						emptyList.add(new GridPos(row, col));
+					}
+				}
+			}
+			this.arrows[i] = arrowList.toArray(new GridPos[arrowList.size()]);
+			this.empties[i] = emptyList.toArray(new GridPos[emptyList.size()]);
+		}
+	}
+
+	/* Every arrow of every puzzle */
+	@Benchmark
+	public void getArrowToEdge(Blackhole bh) {
+		for (int i = 0; i < this.puzzles.length; i++) {
+			for (GridPos pos : this.arrows[i]) {
+				bh.consume(this.puzzles[i].getArrowToEdge(pos.getRow(),
+						pos.getCol()));
+			}
+		}
+	}
+
+	/* Every space of every puzzle that isn't an arrow */
+	@Benchmark
+	public void getPointingArrows(Blackhole bh) {
+		for (int i = 0; i < this.puzzles.length; i++) {
+			for (GridPos pos : this.empties[i]) {
+				bh.consume(this.puzzles[i].getPointingArrows(pos.getRow(),
+						pos.getCol()));
+			}
+		}
+	}
+
+	/* Places and clears a point in every space of every puzzle that isn't an
+	 * arrow, satisfying and unsatisfying the arrows pointing at it; the puzzles
+	 * are left as they were
+	 */
+	@Benchmark
+	public void putPointClearSpace() {
+		for (int i = 0; i < this.puzzles.length; i++) {
+			for (GridPos pos : this.empties[i]) {
+				this.puzzles[i].putPoint(pos.getRow(), pos.getCol());
+				this.puzzles[i].clearSpace(pos.getRow(), pos.getCol());
+			}
+		}
+	}
+
+	/* Every puzzle */
+	@Benchmark
+	public void cloneAll(Blackhole bh) {
+		for (ShinroPuzzle puzzle : this.puzzles) {
+			bh.consume(puzzle.clone());
+		}
+	}
+}
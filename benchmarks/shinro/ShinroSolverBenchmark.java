@@ -0,0 +1,130 @@
+package shinro;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of ShinroSolver
+ * <p>
+ * solve() solves every puzzle of a difficulty bucket of the corpus, so its
+ * score is in bucket passes per second. Every puzzle is cloned first since the
+ * solver changes its puzzle; compare with ShinroPuzzleBenchmark.cloneAll.
+ * solveReused() solves the same puzzles with one solver that is reset between
+ * puzzles instead, so it measures the solver alone. It should not allocate at
+ * all; {@link SolverAllocationCheck} runs it with the GC profiler to make sure.
+ * <p>
+ * strategy() runs a single strategy on the puzzle states it is actually used
+ * on: the states of every corpus solve just before the solver makes a move of
+ * that difficulty, where every easier strategy fails. Each call clones a state
+ * and makes one move, so its score is in moves per millisecond. Run with
+ * "-prof gc" to see the allocation rate alongside the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShinroSolverBenchmark {
+
+	/* The puzzles of a difficulty bucket */
+	@State(Scope.Thread)
+	public static class Bucket {
+		@Param({"easy", "medium", "hard"})
+		public String bucket;
+
+		ShinroPuzzle[] puzzles;
+		ShinroSolver solver;
+
+		@Setup
+		public void setup() throws IOException {
+			this.puzzles = BenchmarkCorpus.load(this.bucket);
+			this.solver = new ShinroSolver();
+		}
+	}
+
+	/* The corpus states a strategy makes a move in */
+	@State(Scope.Thread)
+	public static class Strategy {
+		@Param({"1", "2", "3", "4", "5", "6", "7"})
+		public int difficulty;
+
+		ShinroPuzzle[] states;
+		ShinroSolver solver;
+		int next;
+
+		@Setup
+		public void setup() throws IOException {
+			//replay every solve of the corpus the way nextMove() does
+			ArrayList<ShinroPuzzle> found = new ArrayList<ShinroPuzzle>();
+			for (ShinroPuzzle puzzle : BenchmarkCorpus.load("all")) {
+				ShinroSolver replay = new ShinroSolver(puzzle.clone());
+				boolean moved = true;
+				while (moved) {
+					moved = false;
+					for (int d = 1; d < ShinroSolver.ARRAYSIZE - 1 && !moved; d++) {
+						ShinroPuzzle before = replay.getPuzzle().clone();
+						if (replay.tryMove(d)) {
+							moved = true;
+							if (d == this.difficulty) {
+								found.add(before);
+							}
+						}
+					}
+				}
+			}
+			if (found.size() == 0) {
+				throw new IllegalStateException("No moves of difficulty "
+						+ this.difficulty + " in the corpus");
+			}
+			this.states = found.toArray(new ShinroPuzzle[found.size()]);
+			this.solver = new ShinroSolver();
+			this.next = 0;
+		}
+	}
+
+	/* Solves every puzzle of the bucket */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void solve(Bucket bucket, Blackhole bh) {
+		for (ShinroPuzzle puzzle : bucket.puzzles) {
+			bh.consume(new ShinroSolver(puzzle.clone()).solve());
+		}
+	}
+
+	/* Solves every puzzle of the bucket again with the same solver */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void solveReused(Bucket bucket, Blackhole bh) {
+		ShinroSolver solver = bucket.solver;
+		for (ShinroPuzzle puzzle : bucket.puzzles) {
+			solver.setPuzzle(puzzle);
+			solver.reset();
+			bh.consume(solver.solve());
+		}
+	}
+
+	/* Makes one move of the strategy's difficulty */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public boolean strategy(Strategy strategy) {
+		ShinroPuzzle state = strategy.states[strategy.next].clone();
+		if (++strategy.next == strategy.states.length) {
+			strategy.next = 0;
+		}
+		strategy.solver.setPuzzle(state);
+		return strategy.solver.tryMove(strategy.difficulty);
+	}
+}
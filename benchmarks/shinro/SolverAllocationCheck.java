@@ -0,0 +1,57 @@
+package shinro;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Checks that a steady-state solve doesn't allocate
+ * <p>
+ * Runs ShinroSolverBenchmark.solveReused for every difficulty bucket with the
+ * GC profiler and fails if any bucket allocates more than MAXBYTESPEROP bytes
+ * per pass. The allowance only covers the profiler's own measurement noise; a
+ * single ArrayList or GridPos per solve is far more than that.
+ * <p>
+ * Usage, after "mvn -P jmh package": "java -cp target/benchmarks.jar
+ * shinro.SolverAllocationCheck". Exits with 1 if the check fails.
+ */
+public class SolverAllocationCheck {
+	private static final double MAXBYTESPEROP = 8.0;
+	private static final String NORMALIZEDRATE = "gc.alloc.rate.norm";
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(ShinroSolverBenchmark.class.getName() + ".solveReused$")
+				.addProfiler(GCProfiler.class)
+				.build();
+		Collection<RunResult> results = new Runner(options).run();
+
+		boolean allocates = false;
+		for (RunResult result : results) {
+			String bucket = result.getParams().getParam("bucket");
+			Result rate = result.getSecondaryResults().get(NORMALIZEDRATE);
+			if (rate == null) {
+				System.out.println("No allocation rate for the " + bucket
+						+ " bucket. Terminating.");
+				System.exit(1);
+			}
+			double bytes = rate.getScore();
+			System.out.println(String.format("%s: %.3f bytes per pass", bucket,
+					bytes));
+			if (bytes > MAXBYTESPEROP) {
+				allocates = true;
+			}
+		}
+		if (allocates) {
+			System.out.println("Solving allocates more than " + MAXBYTESPEROP
+					+ " bytes per pass.");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An approximate set of longs in a memory-mapped file
+ * <p>
+ * The bits live in a file rather than on the heap, so a filter for hundreds of
+ * millions of values only costs disk space and page cache. A value that was
+ * added is always recognized; a new value is mistaken for one that was added
+ * with a small probability that grows with the number of values.
+ */
+class BloomFilter implements LongSet {
+	private MappedByteBuffer bits;
+	private long mask;
+	private int numHashes;
+
+	/**
+	 * Creates an empty filter
+	 * @param file  the file to keep the bits in; it is created or truncated
+	 * @param log2Bits  the base 2 logarithm of the number of bits, at most 33
+	 * @param numHashes  the number of bits set per value
+	 * @throws IOException if the file can't be created
+	 */
+	BloomFilter(File file, int log2Bits, int numHashes) throws IOException {
+		if (log2Bits < 3 || log2Bits > 33) {
+			throw new IllegalArgumentException("BloomFilter: Illegal size --> "
+					+ log2Bits);
+		}
+		this.mask = (1L << log2Bits) - 1;
+		this.numHashes = numHashes;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength(1L << (log2Bits - 3));
+			this.bits = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					1L << (log2Bits - 3));
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/* Sets numHashes bits chosen by double hashing
+	 * @see generator.LongSet#add(long)
+	 */
+	@Override
+	public boolean add(long value) {
+		long h1 = value;
+		long h2 = (value * 0x9E3779B97F4A7C15L) | 1;
+		boolean added = false;
+		for (int i = 0; i < this.numHashes; i++) {
+			long bit = (h1 + i * h2) & this.mask;
+			int index = (int)(bit >>> 3);
+			byte b = this.bits.get(index);
+			byte set = (byte)(b | (1 << (bit & 7)));
+			if (set != b) {
+				this.bits.put(index, set);
+				added = true;
+			}
+		}
+		return added;
+	}
+}
@@ -0,0 +1,159 @@
+package generator;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Checks that a {@link ResultCollector} stays correct when many threads offer
+ * puzzles to it at once
+ * <p>
+ * Every round, a pool of threads offers random hashes to a collector, moving
+ * to another bucket as each one fills, the way the workers of
+ * {@link ConstructiveGenerator#generateParallel} do. The hashes come from a
+ * range only a few times larger than the total quota, so most hashes are
+ * offered several times and many offers race on the same stripe. A round fails
+ * if a bucket doesn't end up with exactly its quota, a hash is accepted twice,
+ * the number of duplicates the collector reports doesn't match the offers
+ * that returned DUPLICATE, or the threads run out of offers before every
+ * bucket is full.
+ * <p>
+ * Usage: "java generator/CollectorStress [--threads n] [--rounds n]". There are
+ * MINTHREADS threads by default, or one per available processor if there are
+ * more, so that the threads contend even on a single processor. The program
+ * exits with 1 if any round fails.
+ */
+public class CollectorStress {
+	private static final int[] QUOTAS = {0, 5000, 20000, 1, 300};
+	private static final int HASHESPERPUZZLE = 4; //size of the hash range
+	private static final int MAXOFFERS = 1 << 20; //per thread and round
+	private static final int MINTHREADS = 8;
+	private static final int DEFAULTROUNDS = 20;
+
+	/**
+	 * Runs one round against a new collector
+	 * @param numThreads  the number of threads offering hashes
+	 * @param seed  the seed of the round's hashes
+	 * @return a description of what went wrong or null if the round passed
+	 */
+	static String runRound(int numThreads, final long seed) {
+		final ResultCollector collector = new ResultCollector(QUOTAS);
+		final ConcurrentHashMap<Long, Boolean> accepted =
+				new ConcurrentHashMap<Long, Boolean>();
+		final AtomicIntegerArray numAccepted = new AtomicIntegerArray(
+				QUOTAS.length);
+		final AtomicInteger numDuplicates = new AtomicInteger();
+		final AtomicInteger numTwice = new AtomicInteger();
+		final AtomicInteger numStarved = new AtomicInteger();
+		int total = 0;
+		for (int quota : QUOTAS) {
+			total += quota;
+		}
+		final int range = total * HASHESPERPUZZLE;
+
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					Random rand = new Random(seed * 31 + thread);
+					int bucket = thread % QUOTAS.length;
+					int offers = 0;
+					while ((bucket = collector.retarget(bucket)) >= 0) {
+						if (++offers > MAXOFFERS) {
+							numStarved.incrementAndGet();
+							return;
+						}
+						long hash = rand.nextInt(range);
+						int result = collector.offer(hash, bucket);
+						if (result == ResultCollector.ACCEPTED) {
+							numAccepted.incrementAndGet(bucket);
+							if (accepted.putIfAbsent(hash, Boolean.TRUE) != null) {
+								numTwice.incrementAndGet();
+							}
+						}
+						else if (result == ResultCollector.DUPLICATE) {
+							numDuplicates.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		int[] counts = new int[QUOTAS.length];
+		for (int i = 0; i < QUOTAS.length; i++) {
+			counts[i] = numAccepted.get(i);
+		}
+		if (numStarved.get() > 0) {
+			return numStarved.get() + " thread(s) gave up with buckets "
+					+ Arrays.toString(counts);
+		}
+		if (!Arrays.equals(counts, QUOTAS)) {
+			return "accepted " + Arrays.toString(counts) + ", wanted "
+					+ Arrays.toString(QUOTAS);
+		}
+		for (int i = 0; i < QUOTAS.length; i++) {
+			if (collector.getAccepted(i) != QUOTAS[i] || !collector.isFull(i)) {
+				return "bucket " + i + " holds " + collector.getAccepted(i)
+						+ " of " + QUOTAS[i];
+			}
+		}
+		if (numTwice.get() > 0) {
+			return numTwice.get() + " hash(es) accepted twice";
+		}
+		if (!collector.isDone() || collector.getTotalAccepted() != total) {
+			return "collector holds " + collector.getTotalAccepted() + " of "
+					+ total + " puzzles";
+		}
+		if (collector.getNumDuplicates() != numDuplicates.get()) {
+			return "collector counted " + collector.getNumDuplicates()
+					+ " duplicate(s), offers returned " + numDuplicates.get();
+		}
+		return null;
+	}
+
+	public static void main(String[] args) {
+		int numThreads = Math.max(MINTHREADS,
+				Runtime.getRuntime().availableProcessors());
+		int numRounds = DEFAULTROUNDS;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--threads") && i + 1 < args.length) {
+				numThreads = Math.max(1, Integer.parseInt(args[++i]));
+			}
+			else if (args[i].equals("--rounds") && i + 1 < args.length) {
+				numRounds = Math.max(1, Integer.parseInt(args[++i]));
+			}
+		}
+
+		long start = System.nanoTime();
+		int numFailed = 0;
+		for (int round = 0; round < numRounds; round++) {
+			String failure = runRound(numThreads, round);
+			if (failure != null) {
+				System.out.println("Round " + (round + 1) + ": " + failure);
+				numFailed++;
+			}
+		}
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		System.out.println("ResultCollector failed " + numFailed + " of "
+				+ numRounds + " rounds (" + millis + " ms on " + numThreads
+				+ " threads).");
+		if (numFailed > 0) {
+			System.exit(1);
+		}
+	}
+}
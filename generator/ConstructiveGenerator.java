@@ -0,0 +1,563 @@
+package generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import shinro.GridPos;
+import shinro.ShinroPuzzle;
+import shinro.ShinroSolver;
+import shinro.SolverMetrics;
+
+/**
+ * Generates shinro puzzles by working backwards from a solution.
+ * <p>
+ * This is an alternative to the genetic algorithm in {@link ShinroGenerator}. The
+ * twelve points are placed first. Arrows are then added one at a time, each time
+ * choosing the arrow that lets {@link shinro.ShinroSolver} make the most progress
+ * while favoring moves of the desired difficulty factor. Generation stops as soon
+ * as the solver can solve the puzzle using at least 'minOfDifficulty' moves of the
+ * desired difficulty factor. Since every solver move is a forced deduction, a
+ * puzzle the solver can solve has a unique solution. Dead ends (puzzles that become
+ * solvable too easily or need more than MAXARROWS arrows) are thrown away.
+ * <p>
+ * Instances are independent of each other, so puzzles can be generated in parallel
+ * by giving each thread its own ConstructiveGenerator. The threads hand their
+ * puzzles to a {@link ResultCollector}, which drops duplicates and tells them
+ * when the puzzles of a difficulty factor are no longer needed.
+ * <p>
+ * Usage: "java generator/ConstructiveGenerator [--metrics] [--metricsport port]
+ * [--log logFile] [numPuzzles [difficultyFactor [minOfDifficulty]]]" generates
+ * puzzles (one by default) on every available processor and writes them to files that
+ * {@link PuzzlePackGenerator} picks up, or to a shared {@link PuzzleLog}. In place
+ * of numPuzzles and difficultyFactor, "--quotas factor:count[,factor:count...]"
+ * generates puzzles of several difficulty factors at once, moving threads to
+ * another factor as each one fills. With
+ * "--metrics", the {@link shinro.SolverMetrics} of all threads are printed
+ * periodically. With "--metricsport", {@link GeneratorMetrics} are served on the
+ * given port while generating. The options may come in any order.
+ * "java generator/ConstructiveGenerator --benchmark [seconds]" compares puzzles
+ * per minute against {@link ShinroGenerator#generatePuzzle()} for every
+ * difficulty factor.
+ */
+public class ConstructiveGenerator {
+	private int difficultyFactor, minOfDifficulty;
+	private Random rand;
+	private int numAttempts;
+	private ResultCollector collector; //see generateParallel
+
+	//constraint constants
+	private static final int NUMPOINTS = ShinroPuzzle.POINTS;
+	private static final int MAXARROWS = 24;
+	private static final int CANDIDATESPERSTEP = 48;
+	private static final int DIFFICULTYWEIGHT = 16;
+
+	//defaults for the command line
+	private static final int DEFAULTDIFFICULTY = 6;
+	private static final int DEFAULTOFDIFFICULTY = 4;
+
+	//benchmark constants
+	private static final int BENCHMOVES = 30;
+	private static final int BENCHOFDIFFICULTY = 4;
+	private static final int BENCHSECONDS = 60;
+
+	//other constants
+	private static final int PUZZSIZE = ShinroPuzzle.SIZE;
+
+	//an arrow that could be added to the puzzle
+	private static class Candidate {
+		GridPos pos;
+		int dir;
+
+		public Candidate(GridPos pos, int dir) {
+			this.pos = pos;
+			this.dir = dir;
+		}
+	}
+
+	/**
+	 * Creates a new ConstructiveGenerator
+	 * @param difficultyFactor  the difficulty factor to select for. See
+	 * {@link shinro.ShinroSolver} for information about difficulty factor values.
+	 * @param minOfDifficulty  the least number of moves of the difficulty factor a
+	 * generated puzzle needs
+	 * @param seed  the seed for this generator's random number generator
+	 */
+	public ConstructiveGenerator(int difficultyFactor, int minOfDifficulty,
+			long seed) {
+		this.difficultyFactor = difficultyFactor;
+		this.minOfDifficulty = minOfDifficulty;
+		this.rand = new Random(seed);
+		this.numAttempts = 0;
+	}
+
+	/**
+	 * Gets the number of attempts (including dead ends) this generator has made
+	 * @return the total number of attempts made by this generator
+	 */
+	public int getNumAttempts() {
+		return this.numAttempts;
+	}
+
+	/**
+	 * Generates a new puzzle, starting over from new points after every dead end
+	 * <p>
+	 * Like the genomes of ShinroGenerator, the puzzle keeps its points in place.
+	 * They are its solution and are what the header numbers are derived from when
+	 * the puzzle is read back in.
+	 * @return the generated puzzle with its points placed and its headers set
+	 */
+	public ShinroPuzzle generatePuzzle() {
+		ShinroPuzzle puzzle = null;
+		while (puzzle == null) {
+			puzzle = this.attempt();
+		}
+		return puzzle;
+	}
+
+	/**
+	 * Makes a single attempt at generating a puzzle
+	 * <p>
+	 * If the generator has a collector, the attempt is abandoned as soon as the
+	 * collector's bucket for the difficulty factor fills.
+	 * @return the generated puzzle with its points still in place or null if the
+	 * attempt reached a dead end or was abandoned
+	 */
+	private ShinroPuzzle attempt() {
+		this.numAttempts++;
+		ShinroPuzzle puzzle = this.placePoints();
+
+		for (int numArrows = 0; numArrows < MAXARROWS; numArrows++) {
+			if (this.collector != null 
+					&& this.collector.isFull(this.difficultyFactor)) {
+				return null;
+			}
+			ArrayList<Candidate> candidates = getCandidates(puzzle);
+			Collections.shuffle(candidates, this.rand);
+			Candidate best = null;
+			int bestScore = -1;
+
+			for (int i = 0; i < candidates.size() && i < CANDIDATESPERSTEP; i++) {
+				Candidate candidate = candidates.get(i);
+				puzzle.setPos(candidate.pos, candidate.dir);
+				ShinroPuzzle toSolve = puzzle.clone();
+				int[] solverInfo = new ShinroSolver(toSolve).solve();
+				GeneratorMetrics.countSolve();
+				puzzle.setPos(candidate.pos, ShinroPuzzle.EMPTY);
+
+				if (solverInfo[solverInfo.length - 1] == 1) {
+					if (solverInfo[this.difficultyFactor] >= this.minOfDifficulty) {
+						puzzle.setPos(candidate.pos, candidate.dir);
+						return puzzle;
+					}
+					continue; //too easy; more arrows would only make it easier
+				}
+
+				int score = (PUZZSIZE * PUZZSIZE
+						- toSolve.getListByType(ShinroPuzzle.EMPTY).size())
+						+ DIFFICULTYWEIGHT * Math.min(solverInfo[this.difficultyFactor],
+								this.minOfDifficulty);
+				if (score > bestScore) {
+					bestScore = score;
+					best = candidate;
+				}
+			}
+
+			if (best == null) {
+				return null;
+			}
+			puzzle.setPos(best.pos, best.dir);
+		}
+		return null;
+	}
+
+	/**
+	 * Creates a new puzzle with NUMPOINTS points in random spaces
+	 * @return the new puzzle with its headers set
+	 */
+	private ShinroPuzzle placePoints() {
+		ShinroPuzzle puzzle = new ShinroPuzzle();
+		int placed = 0;
+		while (placed < NUMPOINTS) {
+			int row = this.rand.nextInt(PUZZSIZE);
+			int col = this.rand.nextInt(PUZZSIZE);
+			if (puzzle.atPos(row, col) == ShinroPuzzle.EMPTY) {
+				puzzle.setPos(row, col, ShinroPuzzle.POINT);
+				placed++;
+			}
+		}
+		puzzle.setHeaders();
+		return puzzle;
+	}
+
+	/**
+	 * Gets every arrow that could be added to a puzzle
+	 * <p>
+	 * An arrow may go in any empty space as long as at least one point lies along
+	 * its path, i.e. it is never pointless.
+	 * @param puzzle  the puzzle to find candidate arrows for
+	 * @return an ArrayList of every candidate arrow
+	 */
+	private static ArrayList<Candidate> getCandidates(ShinroPuzzle puzzle) {
+		ArrayList<Candidate> result = new ArrayList<Candidate>();
+		for (GridPos pos : puzzle.getListByType(ShinroPuzzle.EMPTY)) {
+			for (int dir = ShinroPuzzle.N; dir <= ShinroPuzzle.NW; dir++) {
+				if (puzzle.getTypeInList(ShinroPuzzle.POINT,
+						puzzle.getSpacesToEdge(pos, dir)).size() > 0) {
+					result.add(new Candidate(pos, dir));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Generates puzzles on a number of threads until every difficulty factor has
+	 * its quota of distinct puzzles or time runs out
+	 * <p>
+	 * The threads are spread over the difficulty factors with a quota. A thread
+	 * whose difficulty factor fills abandons its attempt and moves on to the next
+	 * factor that still needs puzzles. Copies, rotations and reflections of
+	 * puzzles already generated are dropped.
+	 * @param quotas  the number of puzzles to generate for each difficulty factor,
+	 * indexed by difficulty factor
+	 * @param minOfDifficulty  the least number of moves of the difficulty factor
+	 * @param numThreads  the number of threads to generate on
+	 * @param seconds  the time limit in seconds or zero for no limit
+	 * @param sink  where to write each puzzle
+	 * @return the collector, which holds the number of puzzles generated and
+	 * dropped
+	 */
+	private static ResultCollector generateParallel(int[] quotas,
+			final int minOfDifficulty, int numThreads, long seconds, 
+			final PuzzleSink sink) {
+		final ResultCollector collector = new ResultCollector(quotas);
+		final long start = System.nanoTime();
+		final long limit = (seconds > 0) ? TimeUnit.SECONDS.toNanos(seconds)
+				: Long.MAX_VALUE;
+		final long seed = System.nanoTime();
+		ArrayList<Integer> factors = new ArrayList<Integer>();
+		for (int factor = 0; factor < quotas.length; factor++) {
+			if (quotas[factor] > 0) {
+				factors.add(factor);
+			}
+		}
+		if (factors.isEmpty()) {
+			return collector;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+
+		for (int t = 0; t < numThreads; t++) {
+			final int thread = t;
+			final int firstFactor = factors.get(t % factors.size());
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					ConstructiveGenerator generator = new ConstructiveGenerator(
+							firstFactor, minOfDifficulty, seed + thread);
+					generator.collector = collector;
+					while (System.nanoTime() - start < limit) {
+						int factor = collector.retarget(generator.difficultyFactor);
+						if (factor < 0) {
+							break;
+						}
+						generator.difficultyFactor = factor;
+						ShinroPuzzle puzzle = generator.attempt();
+						if (puzzle == null || System.nanoTime() - start >= limit) {
+							continue;
+						}
+						if (collector.offer(puzzle.getCanonicalHash(), factor)
+								== ResultCollector.ACCEPTED) {
+							writePuzzle(puzzle, factor, sink);
+						}
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		try {
+			while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+				ShinroGenerator.logSolverMetrics();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return collector;
+	}
+	
+	/**
+	 * Parses quotas of the form "factor:count[,factor:count...]"
+	 * @param text  the quotas
+	 * @return the number of puzzles wanted, indexed by difficulty factor
+	 * @throws IllegalArgumentException if a difficulty factor or count is out of
+	 * range or a quota isn't of the form "factor:count"
+	 */
+	private static int[] parseQuotas(String text) throws IllegalArgumentException {
+		int[] quotas = new int[ShinroSolver.ARRAYSIZE - 1];
+		for (String quota : text.split(",")) {
+			String[] parts = quota.split(":");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("parseQuotas: Illegal value --> "
+						+ quota);
+			}
+			int factor = Integer.parseInt(parts[0].trim());
+			int count = Integer.parseInt(parts[1].trim());
+			if (factor < 1 || factor >= quotas.length || count < 0) {
+				throw new IllegalArgumentException("parseQuotas: Illegal value --> "
+						+ quota);
+			}
+			quotas[factor] += count;
+		}
+		return quotas;
+	}
+	
+	/**
+	 * Makes quotas for a single difficulty factor
+	 * @param difficultyFactor  the difficulty factor
+	 * @param numPuzzles  the number of puzzles wanted of it
+	 * @return the number of puzzles wanted, indexed by difficulty factor
+	 * @throws IllegalArgumentException if the difficulty factor or the number of
+	 * puzzles is out of range
+	 */
+	private static int[] singleQuota(int difficultyFactor, int numPuzzles)
+			throws IllegalArgumentException {
+		int[] quotas = new int[ShinroSolver.ARRAYSIZE - 1];
+		if (difficultyFactor < 1 || difficultyFactor >= quotas.length
+				|| numPuzzles < 0) {
+			throw new IllegalArgumentException("singleQuota: Illegal value --> "
+					+ difficultyFactor + ":" + numPuzzles);
+		}
+		quotas[difficultyFactor] = numPuzzles;
+		return quotas;
+	}
+
+	/**
+	 * Writes a generated puzzle with a name like those of ShinroGenerator
+	 * <p>
+	 * The name is of the format "shinro_cAAa_NN1234567_HHHHHHHH" where AA is
+	 * the number of arrows, NN is the total number of moves, the next numbers are
+	 * the number of moves per difficulty factor and HHHHHHHH is a hash of the
+	 * puzzle to keep puzzles with the same statistics apart.
+	 * @param puzzle  the puzzle to write
+	 * @param difficultyFactor  the difficulty factor it was generated for
+	 * @param sink  where to write the puzzle
+	 */
+	private static void writePuzzle(ShinroPuzzle puzzle, int difficultyFactor,
+			PuzzleSink sink) {
+		int[] solverInfo = new ShinroSolver(puzzle.clone()).solve();
+		GeneratorMetrics.countSolve();
+		String fileString = String.format("shinro_c%02da_",
+				puzzle.getListByType(ShinroPuzzle.N).size()); //any arrow
+		for (int i = 0; i < (solverInfo.length - 1); i++) {
+			fileString += solverInfo[i];
+		}
+		fileString += String.format("_%08x",
+				Arrays.deepHashCode(puzzle.toIntMatrix()));
+		try {
+			sink.write(fileString, puzzle);
+			GeneratorMetrics.countEmitted(difficultyFactor);
+			System.out.println("Puzzle '" + fileString + "' written successfully.");
+		}
+		catch (IOException e) {
+			System.out.println("Crirical error -- could not write puzzle: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Compares puzzles per minute of this generator against ShinroGenerator
+	 * <p>
+	 * Every difficulty factor is run for the given number of seconds. This
+	 * generator runs on every available processor, ShinroGenerator runs on one
+	 * thread since its state is static. ShinroGenerator can't be interrupted, so
+	 * its rate is based on the time its last puzzle actually finished.
+	 * <p>
+	 * Both generators write their puzzles to a sink that discards them, so that
+	 * no puzzle files are left behind for PuzzlePackGenerator to pick up.
+	 * @param seconds  the time to spend on each generator per difficulty factor
+	 */
+	private static void benchmark(int seconds) {
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		String results = String.format("%-10s %16s %16s%n", "diffFactor",
+				"constructive/min", "genetic/min");
+		PuzzleSink discard = new PuzzleSink() {
+			@Override
+			public void write(String name, ShinroPuzzle puzzle) {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		PuzzleSink previous = ShinroGenerator.setSink(discard);
+		try {
+			for (int factor = 1; factor < ShinroSolver.ARRAYSIZE - 1; factor++) {
+				long start = System.nanoTime();
+				int constructive = generateParallel(
+						singleQuota(factor, Integer.MAX_VALUE), BENCHOFDIFFICULTY, 
+						numThreads, seconds, discard).getTotalAccepted();
+				double constructiveMinutes = (System.nanoTime() - start) / 6e10;
+
+				ShinroGenerator.setTargets(BENCHMOVES, factor, BENCHOFDIFFICULTY);
+				int genetic = 0;
+				start = System.nanoTime();
+				while (System.nanoTime() - start 
+						< TimeUnit.SECONDS.toNanos(seconds)) {
+					if (ShinroGenerator.generatePuzzle() != null) {
+						genetic++;
+					}
+				}
+				double geneticMinutes = (System.nanoTime() - start) / 6e10;
+
+				results += String.format("%-10d %16.2f %16.2f%n", factor,
+						constructive / constructiveMinutes, 
+						genetic / geneticMinutes);
+			}
+		}
+		finally {
+			ShinroGenerator.setSink(previous);
+		}
+		System.out.println("\nConstructive threads: " + numThreads
+				+ ", genetic threads: 1");
+		System.out.print(results);
+	}
+
+	public static void main(String[] args) {
+		try {
+			runCommandLine(args);
+		}
+		finally {
+			GeneratorMetrics.stop();
+		}
+	}
+
+	/**
+	 * Runs the generator or the benchmark as the class description describes
+	 * <p>
+	 * The metrics server, if it was started, is left running for main to stop
+	 * however this returns.
+	 * @param args  the command line arguments
+	 */
+	private static void runCommandLine(String[] args) {
+		FlightRecorderEvents.install();
+		PuzzleSink sink = new PuzzleFileSink(new File("."));
+		boolean benchmark = false;
+		int seconds = BENCHSECONDS;
+		String quotaSpec = null;
+		ArrayList<String> values = new ArrayList<String>(); //the non-options
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--metrics")) {
+				SolverMetrics.setEnabled(true);
+			}
+			else if (args[i].equals("--metricsport") && i + 1 < args.length) {
+				try {
+					GeneratorMetrics.serve(Integer.parseInt(args[++i]));
+				}
+				catch (IOException e) {
+					System.out.println("Could not serve metrics: " + e.getMessage());
+					System.exit(1);
+				}
+				catch (IllegalArgumentException e) { //not a port number
+					System.out.println("Could not serve metrics: " + e.getMessage());
+					System.exit(1);
+				}
+			}
+			else if (args[i].equals("--log") && i + 1 < args.length) {
+				try {
+					sink = new PuzzleLog(new File(args[++i]));
+				}
+				catch (IOException e) {
+					System.out.println("Could not open log: " + e.getMessage());
+					System.exit(1);
+				}
+			}
+			else if (args[i].equals("--benchmark")) {
+				benchmark = true;
+				if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+					try {
+						seconds = Integer.parseInt(args[++i]);
+					}
+					catch (NumberFormatException e) {
+						seconds = 0;
+					}
+					if (seconds < 1) {
+						System.out.println("Could not run benchmark: Illegal "
+								+ "seconds --> " + args[i]);
+						System.exit(1);
+					}
+				}
+			}
+			else if (args[i].equals("--quotas") && i + 1 < args.length) {
+				quotaSpec = args[++i];
+			}
+			else {
+				values.add(args[i]);
+			}
+		}
+		if (benchmark) {
+			benchmark(seconds);
+			return;
+		}
+		int[] quotas;
+		int ofDifficulty;
+		try {
+			if (quotaSpec != null) {
+				quotas = parseQuotas(quotaSpec);
+				ofDifficulty = values.size() > 0 ? Integer.parseInt(values.get(0))
+						: DEFAULTOFDIFFICULTY;
+			}
+			else {
+				int numPuzzles = values.size() > 0 
+						? Integer.parseInt(values.get(0)) : 1;
+				int factor = values.size() > 1 ? Integer.parseInt(values.get(1)) 
+						: DEFAULTDIFFICULTY;
+				quotas = singleQuota(factor, numPuzzles);
+				ofDifficulty = values.size() > 2 ? Integer.parseInt(values.get(2))
+						: DEFAULTOFDIFFICULTY;
+			}
+			//a solve can't take more moves than there are spaces
+			if (ofDifficulty < 1 || ofDifficulty > PUZZSIZE * PUZZSIZE) {
+				throw new IllegalArgumentException("runCommandLine: Illegal "
+						+ "minOfDifficulty --> " + ofDifficulty);
+			}
+		}
+		catch (IllegalArgumentException e) { //including NumberFormatException
+			System.out.println("Could not parse quotas: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		int numPuzzles = 0;
+		String targets = "";
+		for (int factor = 0; factor < quotas.length; factor++) {
+			if (quotas[factor] > 0) {
+				numPuzzles += quotas[factor];
+				targets += (targets.isEmpty() ? "" : ", ") + factor + " (" 
+						+ quotas[factor] + ")";
+			}
+		}
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		System.out.println("Generating " + numPuzzles + " puzzle(s) on "
+				+ numThreads + " threads...");
+		System.out.println("Target difficulty: " + targets
+				+ ", Target # of diffFactor moves: " + ofDifficulty);
+		ResultCollector collector = generateParallel(quotas, ofDifficulty, 
+				numThreads, 0, sink);
+		try {
+			sink.close();
+		}
+		catch (IOException e) {
+			System.out.println("Crirical error -- could not write puzzles: "
+					+ e.getMessage());
+		}
+		System.out.println("Generated " + collector.getTotalAccepted() 
+				+ " puzzle(s), dropped " + collector.getNumDuplicates()
+				+ " duplicate(s).");
+	}
+}
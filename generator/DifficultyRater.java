@@ -0,0 +1,256 @@
+package generator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import shinro.PuzzleCodec;
+import shinro.ShinroPuzzle;
+import shinro.ShinroSolver;
+
+/**
+ * Rates the difficulty of puzzles from their solver profiles
+ * <p>
+ * The solver profile of a puzzle is the array returned by
+ * {@link ShinroSolver#solve()}. A puzzle is only solved the first time it is
+ * rated; its profile is cached by a hash of its clues and can be saved to and
+ * loaded from a file, so puzzles can be re-rated with another Formula without
+ * solving them again. A DifficultyRater is safe to use from several threads.
+ * <p>
+ * The cache file has the format:
+ * <ul>
+ * <li> int: MAGIC
+ * <li> int: VERSION
+ * <li> int: number of profiles n
+ * <li> n profiles, each a long hash, a byte count and that many bytes of solver
+ * profile
+ * </ul>
+ */
+public class DifficultyRater {
+	private Formula formula;
+	private ConcurrentHashMap<Long, int[]> profiles;
+	private AtomicInteger numSolves;
+
+	private static final int MAGIC = 0x53485254; //"SHRT"
+	private static final int VERSION = 1;
+
+	/**
+	 * A way of turning a solver profile into a difficulty rating
+	 */
+	public interface Formula {
+		/**
+		 * Rates a puzzle
+		 * @param solverInfo  the puzzle's solver profile
+		 * @return the puzzle's difficulty
+		 */
+		int rate(int[] solverInfo);
+	}
+
+	/**
+	 * The original pack rating: the average of the moves weighted by the fourth
+	 * power of their difficulty, scaled to roughly 1 to 100
+	 */
+	public static final Formula QUARTIC = new Formula() {
+		@Override
+		public int rate(int[] solverInfo) {
+			/* I sort of winged this difficulty calculation because I'm not
+			 * exactly sure how to go about this particular kind of statistical
+			 * analysis. The goal was to have a difficulty rating between 1 and
+			 * 100 where 1 was the easiest puzzle possible and 100 is the
+			 * hardest. Moves below difficulty 5 are trivial to identify so
+			 * puzzles consisting mostly of these moves should have a very low
+			 * difficulty score. Anyway, after tweaking this function I finally
+			 * achieved a good enough distribution to be moving on with. If you
+			 * happen to be peeping through this source and actually know what
+			 * you're doing in this arena, please contact me through the
+			 * appropriate channels and let me know so I can have a more robust
+			 * difficulty rating.
+			 */
+			int weightedSum = 0, difficulty = 0;
+			double difficultyQuotient = 0;
+			for (int i = 1; i < solverInfo.length - 1; i++) {
+				weightedSum += solverInfo[i] * i * i * i * i;
+			}
+			if (solverInfo[0] == 0) {
+				return 0;
+			}
+
+			difficultyQuotient = weightedSum
+					/ solverInfo[0]; // divided by totalNumMoves
+			difficulty = (int)(Math.round(difficultyQuotient / 500 * 100));
+			return difficulty;
+		}
+	};
+
+	/**
+	 * Creates a rater with an empty cache
+	 * @param formula  the formula to rate puzzles with
+	 */
+	public DifficultyRater(Formula formula) {
+		this.formula = formula;
+		this.profiles = new ConcurrentHashMap<Long, int[]>();
+		this.numSolves = new AtomicInteger();
+	}
+
+	/**
+	 * Gets a formula by name
+	 * @param name  "quartic" or the fully qualified name of a class implementing
+	 * Formula with a no-argument constructor
+	 * @return the formula
+	 * @throws IllegalArgumentException if there is no such formula
+	 */
+	public static Formula getFormula(String name)
+			throws IllegalArgumentException {
+		if (name.equals("quartic")) {
+			return QUARTIC;
+		}
+		try {
+			return (Formula)Class.forName(name).getDeclaredConstructor()
+					.newInstance();
+		}
+		catch (Exception e) {
+			throw new IllegalArgumentException("getFormula: No formula --> "
+					+ name);
+		}
+	}
+
+	/**
+	 * Rates a puzzle, solving it only if its profile isn't cached
+	 * @param puzzle  the puzzle to rate; it isn't changed
+	 * @return the puzzle's difficulty
+	 */
+	public int rate(ShinroPuzzle puzzle) {
+		return this.formula.rate(this.getProfile(puzzle));
+	}
+
+	/**
+	 * Rates a solver profile
+	 * @param solverInfo  a solver profile
+	 * @return the difficulty of a puzzle with that profile
+	 */
+	public int rate(int[] solverInfo) {
+		return this.formula.rate(solverInfo);
+	}
+
+	/**
+	 * Gets the solver profile of a puzzle, solving it only if it isn't cached
+	 * @param puzzle  the puzzle; it isn't changed
+	 * @return the array returned by {@link ShinroSolver#solve()}, which must not
+	 * be modified
+	 */
+	public int[] getProfile(ShinroPuzzle puzzle) {
+		Long hash = getHash(puzzle);
+		int[] profile = this.profiles.get(hash);
+		if (profile == null) {
+			profile = new ShinroSolver(puzzle.clone()).solve();
+			this.numSolves.incrementAndGet();
+			this.profiles.putIfAbsent(hash, profile);
+		}
+		return profile;
+	}
+
+	/**
+	 * Gets the number of puzzles this rater has solved
+	 * @return the number of cache misses
+	 */
+	public int getNumSolves() {
+		return this.numSolves.get();
+	}
+
+	/**
+	 * Gets the cache key of a puzzle
+	 * <p>
+	 * Only the clues are hashed: the arrows, whether satisfied or not, and the
+	 * header numbers. Unlike {@link ShinroPuzzle#getCanonicalHash()}, rotations
+	 * and reflections get different keys since the solver may not find the same
+	 * moves in a turned puzzle.
+	 * @param puzzle  the puzzle
+	 * @return a 64-bit FNV-1a hash of the puzzle's clues
+	 */
+	static long getHash(ShinroPuzzle puzzle) {
+		long hash = 0xcbf29ce484222325L;
+		for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+			for (int col = 0; col < ShinroPuzzle.SIZE; col++) {
+				int value = PuzzleCodec.normalize(puzzle.atPos(row, col));
+				hash ^= (value == ShinroPuzzle.POINT) ? ShinroPuzzle.EMPTY : value;
+				hash *= 0x100000001b3L;
+			}
+		}
+		for (int i = 0; i < ShinroPuzzle.SIZE; i++) {
+			hash ^= puzzle.getRowHeaderNum(i) << 4 | puzzle.getColHeaderNum(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Adds the profiles saved in a file to the cache
+	 * @param file  the cache file; nothing is loaded if it doesn't exist
+	 * @throws IOException if the file can't be read or isn't a rating cache
+	 */
+	public void load(File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a rating cache: " + file);
+			}
+			int numProfiles = in.readInt();
+			for (int i = 0; i < numProfiles; i++) {
+				long hash = in.readLong();
+				int[] profile = new int[in.readUnsignedByte()];
+				for (int j = 0; j < profile.length; j++) {
+					profile[j] = in.readByte();
+				}
+				this.profiles.put(hash, profile);
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Saves every cached profile to a file atomically
+	 * @param file  the cache file
+	 * @throws IOException if the file can't be written
+	 */
+	public void save(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(stream));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.profiles.size());
+			for (Map.Entry<Long, int[]> entry : this.profiles.entrySet()) {
+				out.writeLong(entry.getKey());
+				out.writeByte(entry.getValue().length);
+				for (int info : entry.getValue()) {
+					out.writeByte(info);
+				}
+			}
+			out.flush();
+			stream.getFD().sync();
+		}
+		finally {
+			stream.close();
+		}
+		Files.move(temp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
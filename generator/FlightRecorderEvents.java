@@ -0,0 +1,201 @@
+package generator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import shinro.ShinroSolver;
+
+/**
+ * Emits Java Flight Recorder events for the generations of
+ * {@link ShinroGenerator} and for every solve of {@link ShinroSolver}
+ * <p>
+ * The events are "shinro.Generation" and "shinro.Solve". Both are on by default
+ * and can be turned off or given a threshold in the recording's settings like
+ * any JDK event, e.g. "jcmd pid JFR.start settings=profile
+ * shinro.Solve#threshold=1ms". Solves shorter than 100 microseconds are
+ * dropped unless the threshold is lowered. While nothing is recording, each
+ * generation and solve costs one check of whether the event is enabled.
+ * <p>
+ * jdk.jfr is only touched once {@link #install()} has found a flight recorder.
+ * On a JVM without one, such as Android or Java 8 before 8u262, the methods of
+ * this class do nothing.
+ */
+public class FlightRecorderEvents {
+	private static boolean installed = false;
+
+	/**
+	 * Starts emitting events if the JVM has a flight recorder
+	 * @return true if events are emitted
+	 */
+	public static synchronized boolean install() {
+		if (!installed) {
+			try {
+				installed = Recorder.install();
+			}
+			catch (LinkageError e) {
+				//no jdk.jfr
+				installed = false;
+			}
+		}
+		return installed;
+	}
+
+	/**
+	 * Starts timing the evaluation of a new generation
+	 * @return the event to pass to {@link #endGeneration} or null if it isn't
+	 * recorded
+	 */
+	static Object beginGeneration() {
+		return installed ? Recorder.beginGeneration() : null;
+	}
+
+	/**
+	 * Stops timing the evaluation of a generation and commits its event
+	 * @param event  the event returned by beginGeneration; may be null
+	 * @param generation  the number of the generation
+	 * @param eliteFitness  the fitness of the generation's elite genome
+	 * @param noImprovementCount  the number of generations without improvement
+	 * before this one
+	 */
+	static void endGeneration(Object event, int generation, double eliteFitness,
+			int noImprovementCount) {
+		if (event != null) {
+			Recorder.endGeneration(event, generation, eliteFitness,
+					noImprovementCount);
+		}
+	}
+
+	@Name("shinro.Generation")
+	@Label("Shinro Generation")
+	@Description("Evaluation of a generation of the genetic puzzle generator")
+	@Category("Shinro")
+	@Enabled(true)
+	@StackTrace(false)
+	@Threshold("0 ms")
+	static class GenerationEvent extends Event {
+		@Label("Generation")
+		int generation;
+
+		@Label("Elite Fitness")
+		double eliteFitness;
+
+		@Label("No Improvement Count")
+		@Description("Generations without improvement before this one")
+		int noImprovementCount;
+	}
+
+	@Name("shinro.Solve")
+	@Label("Shinro Solve")
+	@Description("A run of ShinroSolver")
+	@Category("Shinro")
+	@Enabled(true)
+	@StackTrace(false)
+	@Threshold("100 us")
+	static class SolveEvent extends Event {
+		@Label("Moves")
+		int moves;
+
+		@Label("Zero To Place Moves")
+		int moves1;
+
+		@Label("Unfilled Equal Remaining Moves")
+		int moves2;
+
+		@Label("One Free Space Moves")
+		int moves3;
+
+		@Label("One And Horizontal Or Vertical Moves")
+		int moves4;
+
+		@Label("Nonintersecting Moves")
+		int moves5;
+
+		@Label("Pigeonhole Moves")
+		int moves6;
+
+		@Label("Unsatisfiable Moves")
+		int moves7;
+
+		@Label("Solved")
+		boolean solved;
+
+		@Label("Early Exit")
+		@Description("Whether the solver gave up before completion")
+		boolean earlyExit;
+	}
+
+	/* Everything that refers to jdk.jfr. This is a class of its own so that
+	 * FlightRecorderEvents can be loaded where jdk.jfr is missing.
+	 */
+	private static class Recorder {
+		static boolean install() {
+			if (!FlightRecorder.isAvailable()) {
+				return false;
+			}
+			ShinroSolver.setSolveObserver(new ShinroSolver.SolveObserver() {
+				@Override
+				public Object solveStarted() {
+					SolveEvent event = new SolveEvent();
+					if (!event.isEnabled()) {
+						return null;
+					}
+					event.begin();
+					return event;
+				}
+
+				@Override
+				public void solveFinished(Object token, int[] numMovesByDifficulty,
+						boolean earlyExit) {
+					if (token == null) {
+						return;
+					}
+					SolveEvent event = (SolveEvent)token;
+					event.end();
+					if (event.shouldCommit()) {
+						event.moves = numMovesByDifficulty[0];
+						event.moves1 = numMovesByDifficulty[1];
+						event.moves2 = numMovesByDifficulty[2];
+						event.moves3 = numMovesByDifficulty[3];
+						event.moves4 = numMovesByDifficulty[4];
+						event.moves5 = numMovesByDifficulty[5];
+						event.moves6 = numMovesByDifficulty[6];
+						event.moves7 = numMovesByDifficulty[7];
+						event.solved = numMovesByDifficulty[
+								numMovesByDifficulty.length - 1] == 1;
+						event.earlyExit = earlyExit;
+						event.commit();
+					}
+				}
+			});
+			return true;
+		}
+
+		static Object beginGeneration() {
+			GenerationEvent event = new GenerationEvent();
+			if (!event.isEnabled()) {
+				return null;
+			}
+			event.begin();
+			return event;
+		}
+
+		static void endGeneration(Object token, int generation,
+				double eliteFitness, int noImprovementCount) {
+			GenerationEvent event = (GenerationEvent)token;
+			event.end();
+			if (event.shouldCommit()) {
+				event.generation = generation;
+				event.eliteFitness = eliteFitness;
+				event.noImprovementCount = noImprovementCount;
+				event.commit();
+			}
+		}
+	}
+}
@@ -0,0 +1,308 @@
+package generator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import shinro.PuzzleSnapshot;
+import shinro.ShinroPuzzle;
+import shinro.ShinroSolver;
+
+/**
+ * A snapshot of a {@link ShinroGenerator} run that the run can be resumed from
+ * <p>
+ * The checkpoint holds the selection targets, the generation counter, the
+ * noImprovementCount, the state of the generator's random number generator, the
+ * adaptive mutation counts, the tournament size and every genome in the
+ * population. Header numbers aren't stored since they are
+ * always the point counts of a genome's rows and columns.
+ * <p>
+ * The binary file has the format:
+ * <ul>
+ * <li> int: MAGIC
+ * <li> int: VERSION
+ * <li> int: minMoves, difficultyFactor, minOfDifficulty
+ * <li> int: numGenerations, noImprovementCount
+ * <li> long: random number generator state
+ * <li> boolean: whether mutation selection is adaptive
+ * <li> int: number of mutants since the counts were last halved
+ * <li> NUMMUTATIONS ints: mutants tried of every mutation type
+ * <li> NUMMUTATIONS ints: mutants of every type that beat their parent
+ * <li> int: population size p
+ * <li> int: tournament size
+ * <li> p * SIZE * SIZE bytes: every genome's spaces in row-major order
+ * <li> int: the CRC-32 of everything before it
+ * </ul>
+ * A checkpoint whose checksum doesn't match or whose values are out of range is
+ * rejected as damaged when it is read.
+ */
+class GeneratorCheckpoint {
+	int minMoves, difficultyFactor, minOfDifficulty;
+	int numGenerations, noImprovementCount;
+	long randomState;
+	boolean adaptiveMutation;
+	int numSinceDecay, tournamentSize;
+	int[] numMutantsTried, numMutantsImproved;
+	private PuzzleSnapshot[] genomes;
+
+	private static final int MAGIC = 0x5348434B; //"SHCK"
+	private static final int VERSION = 3;
+	private static final int NUMMUTATIONS = ShinroGenerator.NUMMUTATIONS;
+	private static final int HEADERBYTES = 10 * 4 + 8 + 1 
+			+ 2 * 4 * NUMMUTATIONS; //before the genomes
+	private static final int CRCBYTES = 4;
+	private static final int CELLS = ShinroPuzzle.SIZE * ShinroPuzzle.SIZE;
+
+	/**
+	 * Creates a checkpoint of a population
+	 * <p>
+	 * The genomes are snapshotted so the population may keep evolving while the
+	 * checkpoint is written.
+	 * @param population  the population to store
+	 */
+	GeneratorCheckpoint(Population population) {
+		this.genomes = new PuzzleSnapshot[population.size()];
+		for (int i = 0; i < this.genomes.length; i++) {
+			this.genomes[i] = population.toSnapshot(i);
+		}
+	}
+
+	private GeneratorCheckpoint() {
+	}
+
+	/**
+	 * Rebuilds the population stored in this checkpoint
+	 * @return a Population of the stored genomes, whose fitness is yet to be
+	 * calculated
+	 */
+	Population getPopulation() {
+		Population population = new Population(this.genomes.length);
+		for (int i = 0; i < this.genomes.length; i++) {
+			for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+				for (int col = 0; col < ShinroPuzzle.SIZE; col++) {
+					population.setPos(i, row * ShinroPuzzle.SIZE + col, 
+							this.genomes[i].atPos(row, col));
+				}
+			}
+			population.calcHash(i);
+		}
+		return population;
+	}
+
+	/**
+	 * Reads a checkpoint from a file
+	 * @param file  the checkpoint file
+	 * @return the checkpoint stored in the file
+	 * @throws IOException if the file can't be read, isn't a checkpoint or is
+	 * damaged
+	 */
+	static GeneratorCheckpoint read(File file) throws IOException {
+		CheckedInputStream checked = new CheckedInputStream(
+				new BufferedInputStream(new FileInputStream(file)), new CRC32());
+		DataInputStream in = new DataInputStream(checked);
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a generator checkpoint: " + file);
+			}
+			GeneratorCheckpoint checkpoint = new GeneratorCheckpoint();
+			checkpoint.minMoves = in.readInt();
+			checkpoint.difficultyFactor = in.readInt();
+			checkpoint.minOfDifficulty = in.readInt();
+			checkpoint.numGenerations = in.readInt();
+			checkpoint.noImprovementCount = in.readInt();
+			checkpoint.randomState = in.readLong();
+			checkpoint.adaptiveMutation = in.readBoolean();
+			checkpoint.numSinceDecay = in.readInt();
+			checkpoint.numMutantsTried = new int[NUMMUTATIONS];
+			checkpoint.numMutantsImproved = new int[NUMMUTATIONS];
+			for (int i = 0; i < NUMMUTATIONS; i++) {
+				checkpoint.numMutantsTried[i] = in.readInt();
+			}
+			for (int i = 0; i < NUMMUTATIONS; i++) {
+				checkpoint.numMutantsImproved[i] = in.readInt();
+				if (checkpoint.numMutantsImproved[i] < 0 
+						|| checkpoint.numMutantsImproved[i] 
+								> checkpoint.numMutantsTried[i]) {
+					throw new IOException("Damaged generator checkpoint: " + file);
+				}
+			}
+			int size = in.readInt();
+			checkpoint.tournamentSize = in.readInt();
+			if (checkpoint.minMoves < 0 || checkpoint.difficultyFactor < 1
+					|| checkpoint.difficultyFactor > ShinroSolver.ARRAYSIZE - 2
+					|| checkpoint.minOfDifficulty < 0
+					|| checkpoint.numGenerations < 0
+					|| checkpoint.noImprovementCount < 0
+					|| checkpoint.numSinceDecay < 0
+					|| checkpoint.tournamentSize < 1 
+					|| checkpoint.tournamentSize > size
+					|| size < 2 || size > (file.length() - HEADERBYTES - CRCBYTES) / CELLS) {
+				throw new IOException("Damaged generator checkpoint: " + file);
+			}
+			checkpoint.genomes = new PuzzleSnapshot[size];
+			for (int i = 0; i < checkpoint.genomes.length; i++) {
+				PuzzleSnapshot.Builder genome = new PuzzleSnapshot.Builder();
+				for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+					for (int col = 0; col < ShinroPuzzle.SIZE; col++) {
+						byte value = in.readByte();
+						if (value < ShinroPuzzle.EMPTY || value > ShinroPuzzle.POINT) {
+							throw new IOException("Damaged generator checkpoint: "
+									+ file);
+						}
+						genome.setPos(row, col, value);
+					}
+				}
+				checkpoint.genomes[i] = genome.setHeaders().build();
+			}
+			int crc = (int)checked.getChecksum().getValue();
+			if (in.readInt() != crc) {
+				throw new IOException("Damaged generator checkpoint: " + file);
+			}
+			return checkpoint;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes this checkpoint to a file atomically
+	 * <p>
+	 * The checkpoint is written and synced to a temporary file next to the target,
+	 * which is then moved over the target. A crash mid-write leaves the previous
+	 * checkpoint intact.
+	 * @param file  the checkpoint file
+	 * @throws IOException if the file can't be written
+	 */
+	void write(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			CheckedOutputStream checked = new CheckedOutputStream(
+					new BufferedOutputStream(stream), new CRC32());
+			DataOutputStream out = new DataOutputStream(checked);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.minMoves);
+			out.writeInt(this.difficultyFactor);
+			out.writeInt(this.minOfDifficulty);
+			out.writeInt(this.numGenerations);
+			out.writeInt(this.noImprovementCount);
+			out.writeLong(this.randomState);
+			out.writeBoolean(this.adaptiveMutation);
+			out.writeInt(this.numSinceDecay);
+			for (int tried : this.numMutantsTried) {
+				out.writeInt(tried);
+			}
+			for (int improved : this.numMutantsImproved) {
+				out.writeInt(improved);
+			}
+			out.writeInt(this.genomes.length);
+			out.writeInt(this.tournamentSize);
+			for (PuzzleSnapshot genome : this.genomes) {
+				for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+					for (int col = 0; col < ShinroPuzzle.SIZE; col++) {
+						out.writeByte(genome.atPos(row, col));
+					}
+				}
+			}
+			out.writeInt((int)checked.getChecksum().getValue());
+			out.flush();
+			stream.getFD().sync();
+		}
+		finally {
+			stream.close();
+		}
+		Files.move(temp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes checkpoints to a file from a background thread
+	 * <p>
+	 * Only one checkpoint is written at a time. A checkpoint offered while the
+	 * previous one is still being written is dropped rather than making the caller
+	 * wait.
+	 */
+	static class Writer {
+		private final File file;
+		private final ExecutorService executor;
+		private final AtomicBoolean busy;
+
+		/**
+		 * Creates a new Writer
+		 * @param file  the checkpoint file to write to
+		 */
+		Writer(File file) {
+			this.file = file;
+			this.busy = new AtomicBoolean(false);
+			this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "checkpoint-writer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		/**
+		 * Queues a checkpoint to be written unless one is already being written
+		 * @param checkpoint  the checkpoint to write
+		 * @return true if the checkpoint was queued
+		 */
+		boolean offer(final GeneratorCheckpoint checkpoint) {
+			if (!this.busy.compareAndSet(false, true)) {
+				return false;
+			}
+			this.executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						checkpoint.write(file);
+					}
+					catch (IOException e) {
+						System.out.println("Could not write checkpoint: "
+								+ e.getMessage());
+					}
+					finally {
+						busy.set(false);
+					}
+				}
+			});
+			return true;
+		}
+
+		/**
+		 * Waits for any pending checkpoint and deletes the checkpoint file
+		 * <p>
+		 * This is called once a run has finished and there is nothing left to
+		 * resume.
+		 */
+		void finish() {
+			this.executor.shutdown();
+			try {
+				this.executor.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.file.delete();
+		}
+	}
+}
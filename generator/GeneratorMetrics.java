@@ -0,0 +1,260 @@
+package generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import shinro.ShinroSolver;
+
+/**
+ * Counts the progress of the generators and serves it to Prometheus
+ * <p>
+ * The counters are always kept; they cost an atomic increment per generation,
+ * solve and puzzle. {@link #serve(int)} starts an HTTP server that answers
+ * "GET /metrics" in the Prometheus text format with:
+ * <ul>
+ * <li> shinro_generations_total: generations run by ShinroGenerator
+ * <li> shinro_solves_total: puzzles solved to rate or build puzzles
+ * <li> shinro_population_fitness: a histogram of the fitness of every genome
+ * of every generation
+ * <li> shinro_elite_fitness: the fitness of the latest elite genome
+ * <li> shinro_invalid_restarts_total{reason}: times ShinroGenerator carried on
+ * after converging on an invalid puzzle, by reason
+ * <li> shinro_puzzles_emitted_total{factor}: puzzles written, by the difficulty
+ * factor they were generated for
+ * <li> shinro_mutants_screened_total{tier} and 
+ * shinro_mutants_rejected_total{tier}: mutants that reached each tier of
+ * ShinroGenerator's screening, and mutants each tier rejected. Tier "store"
+ * counts mutants found in a {@link SolverStore}, which skip tiers 1 and 2
+ * </ul>
+ * Generations and solves per second are the rate() of their counters.
+ */
+public class GeneratorMetrics {
+	//reasons for an invalid-puzzle restart, see ShinroGenerator.generatePuzzle
+	public static final int ZEROFITNESS = 0;
+	public static final int POINTCOUNT = 1;
+	public static final int POINTLESSARROWS = 2;
+	public static final int UNSOLVABLE = 3;
+	private static final String[] REASONS = {"zero_fitness", "point_count",
+			"pointless_arrows", "unsolvable"};
+
+	//upper bounds of the fitness histogram buckets; the last is +Inf
+	private static final double[] FITNESSBUCKETS = {0.1, 0.2, 0.3, 0.4, 0.5,
+			0.6, 0.7, 0.8, 0.9, 1.0};
+
+	private static final AtomicLong numGenerations = new AtomicLong();
+	private static final AtomicLong numSolves = new AtomicLong();
+	private static final AtomicLongArray numRestarts =
+			new AtomicLongArray(REASONS.length);
+	private static final AtomicLongArray numEmitted =
+			new AtomicLongArray(ShinroSolver.ARRAYSIZE - 1);
+	//tiers of ShinroGenerator's screening, see ShinroGenerator.screenMutant
+	static final int STORETIER = 3;
+	private static final String[] TIERS = {"0", "1", "2", "store"};
+	private static final AtomicLongArray numScreened = 
+			new AtomicLongArray(TIERS.length);
+	private static final AtomicLongArray numScreenRejected = 
+			new AtomicLongArray(TIERS.length);
+	private static final long[] fitnessCounts =
+			new long[FITNESSBUCKETS.length + 1];
+	private static double fitnessSum = 0;
+	private static double eliteFitness = 0;
+
+	private static HttpServer server = null;
+
+	/**
+	 * Counts a generation of ShinroGenerator
+	 * @param elite  the fitness of the generation's elite genome
+	 */
+	static void countGeneration(double elite) {
+		numGenerations.incrementAndGet();
+		synchronized (fitnessCounts) {
+			eliteFitness = elite;
+		}
+	}
+
+	/**
+	 * Adds the fitness of a genome to the fitness histogram
+	 * @param value  the fitness value
+	 */
+	static void countFitness(double value) {
+		int bucket = 0;
+		while (bucket < FITNESSBUCKETS.length && value > FITNESSBUCKETS[bucket]) {
+			bucket++;
+		}
+		synchronized (fitnessCounts) {
+			fitnessCounts[bucket]++;
+			fitnessSum += value;
+		}
+	}
+
+	/**
+	 * Counts a solve
+	 */
+	static void countSolve() {
+		numSolves.incrementAndGet();
+	}
+
+	/**
+	 * Counts an invalid-puzzle restart
+	 * @param reason  ZEROFITNESS, POINTCOUNT, POINTLESSARROWS or UNSOLVABLE
+	 */
+	static void countRestart(int reason) {
+		numRestarts.incrementAndGet(reason);
+	}
+
+	/**
+	 * Counts a puzzle written by a generator
+	 * @param difficultyFactor  the difficulty factor it was generated for
+	 */
+	static void countEmitted(int difficultyFactor) {
+		numEmitted.incrementAndGet(difficultyFactor);
+	}
+
+	/**
+	 * Counts a mutant that reached a tier of screening
+	 * @param tier  the tier, from 0 to 2, or STORETIER
+	 */
+	static void countScreened(int tier) {
+		numScreened.incrementAndGet(tier);
+	}
+
+	/**
+	 * Counts a mutant rejected by a tier of screening
+	 * @param tier  the tier, from 0 to 2, or STORETIER
+	 */
+	static void countScreenRejected(int tier) {
+		numScreenRejected.incrementAndGet(tier);
+	}
+
+	/**
+	 * Writes every metric in the Prometheus text exposition format
+	 * @return the metrics
+	 */
+	public static String format() {
+		StringBuilder result = new StringBuilder();
+		result.append("# HELP shinro_generations_total Generations run by "
+				+ "ShinroGenerator.\n");
+		result.append("# TYPE shinro_generations_total counter\n");
+		result.append("shinro_generations_total ").append(numGenerations.get())
+				.append('\n');
+
+		result.append("# HELP shinro_solves_total Puzzles solved by the "
+				+ "generators.\n");
+		result.append("# TYPE shinro_solves_total counter\n");
+		result.append("shinro_solves_total ").append(numSolves.get())
+				.append('\n');
+
+		result.append("# HELP shinro_population_fitness Fitness of every genome "
+				+ "of every generation.\n");
+		result.append("# TYPE shinro_population_fitness histogram\n");
+		synchronized (fitnessCounts) {
+			long cumulative = 0;
+			for (int i = 0; i < fitnessCounts.length; i++) {
+				cumulative += fitnessCounts[i];
+				result.append("shinro_population_fitness_bucket{le=\"")
+						.append((i < FITNESSBUCKETS.length)
+								? Double.toString(FITNESSBUCKETS[i]) : "+Inf")
+						.append("\"} ").append(cumulative).append('\n');
+			}
+			result.append("shinro_population_fitness_sum ").append(fitnessSum)
+					.append('\n');
+			result.append("shinro_population_fitness_count ").append(cumulative)
+					.append('\n');
+
+			result.append("# HELP shinro_elite_fitness Fitness of the latest "
+					+ "elite genome.\n");
+			result.append("# TYPE shinro_elite_fitness gauge\n");
+			result.append("shinro_elite_fitness ").append(eliteFitness)
+					.append('\n');
+		}
+
+		result.append("# HELP shinro_invalid_restarts_total Generator runs "
+				+ "continued after converging on an invalid puzzle.\n");
+		result.append("# TYPE shinro_invalid_restarts_total counter\n");
+		for (int i = 0; i < REASONS.length; i++) {
+			result.append("shinro_invalid_restarts_total{reason=\"")
+					.append(REASONS[i]).append("\"} ").append(numRestarts.get(i))
+					.append('\n');
+		}
+
+		result.append("# HELP shinro_puzzles_emitted_total Puzzles written, by "
+				+ "target difficulty factor.\n");
+		result.append("# TYPE shinro_puzzles_emitted_total counter\n");
+		for (int i = 1; i < numEmitted.length(); i++) {
+			result.append("shinro_puzzles_emitted_total{factor=\"").append(i)
+					.append("\"} ").append(numEmitted.get(i)).append('\n');
+		}
+
+		result.append("# HELP shinro_mutants_screened_total Mutants that reached "
+				+ "a tier of screening.\n");
+		result.append("# TYPE shinro_mutants_screened_total counter\n");
+		for (int i = 0; i < TIERS.length; i++) {
+			result.append("shinro_mutants_screened_total{tier=\"")
+					.append(TIERS[i]).append("\"} ").append(numScreened.get(i))
+					.append('\n');
+		}
+
+		result.append("# HELP shinro_mutants_rejected_total Mutants rejected by "
+				+ "a tier of screening.\n");
+		result.append("# TYPE shinro_mutants_rejected_total counter\n");
+		for (int i = 0; i < TIERS.length; i++) {
+			result.append("shinro_mutants_rejected_total{tier=\"")
+					.append(TIERS[i]).append("\"} ").append(numScreenRejected.get(i))
+					.append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Starts serving the metrics on "/metrics"
+	 * <p>
+	 * The server only listens on the loopback address, since the endpoint has no
+	 * authentication. It runs on a thread of its own that keeps the JVM alive
+	 * until {@link #stop()} is called, so callers stop it in a finally block.
+	 * @param port  the port to listen on
+	 * @throws IOException if the server can't be started
+	 */
+	public static synchronized void serve(int port) throws IOException {
+		if (server != null) {
+			return;
+		}
+		server = HttpServer.create(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = format().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type",
+						"text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					out.write(body);
+				}
+				finally {
+					out.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Stops serving the metrics, if they are being served
+	 */
+	public static synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package generator;
+
+/**
+ * An exact set of longs in a single open-addressing table
+ * <p>
+ * Values are stored unboxed with linear probing, so a set of n values takes
+ * about 16n bytes at most. Zero marks a free slot and is tracked separately.
+ */
+class LongHashSet implements LongSet {
+	private long[] table;
+	private int size, mask;
+	private boolean hasZero;
+
+	private static final int INITIALCAPACITY = 1024;
+
+	/**
+	 * Creates an empty set
+	 */
+	LongHashSet() {
+		this.table = new long[INITIALCAPACITY];
+		this.mask = INITIALCAPACITY - 1;
+		this.size = 0;
+		this.hasZero = false;
+	}
+
+	/* Adds the value by linear probing, doubling the table at half load
+	 * @see generator.LongSet#add(long)
+	 */
+	@Override
+	public boolean add(long value) {
+		if (value == 0) {
+			boolean added = !this.hasZero;
+			this.hasZero = true;
+			return added;
+		}
+		int i = slot(value, this.mask);
+		while (this.table[i] != 0) {
+			if (this.table[i] == value) {
+				return false;
+			}
+			i = (i + 1) & this.mask;
+		}
+		this.table[i] = value;
+		if (++this.size > this.table.length / 2) {
+			this.grow();
+		}
+		return true;
+	}
+
+	/**
+	 * Tests whether a value is in the set
+	 * @param value  the value to look for
+	 * @return true if the value is in the set
+	 */
+	boolean contains(long value) {
+		if (value == 0) {
+			return this.hasZero;
+		}
+		int i = slot(value, this.mask);
+		while (this.table[i] != 0) {
+			if (this.table[i] == value) {
+				return true;
+			}
+			i = (i + 1) & this.mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of values in the set
+	 * @return the number of values
+	 */
+	int size() {
+		return this.size + (this.hasZero ? 1 : 0);
+	}
+
+	/**
+	 * Moves every value into a table twice the size
+	 */
+	private void grow() {
+		long[] old = this.table;
+		this.table = new long[old.length * 2];
+		this.mask = this.table.length - 1;
+		for (long value : old) {
+			if (value != 0) {
+				int i = slot(value, this.mask);
+				while (this.table[i] != 0) {
+					i = (i + 1) & this.mask;
+				}
+				this.table[i] = value;
+			}
+		}
+	}
+
+	/**
+	 * Gets the home slot of a value
+	 * @param value  the value
+	 * @param mask  the table length minus one
+	 * @return the index the value is probed from
+	 */
+	private static int slot(long value, int mask) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+}
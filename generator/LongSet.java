@@ -0,0 +1,15 @@
+package generator;
+
+/**
+ * A set of 64-bit hashes used to recognize puzzles that have been seen before
+ * @see LongHashSet
+ * @see BloomFilter
+ */
+interface LongSet {
+	/**
+	 * Adds a value to the set
+	 * @param value  the value to add
+	 * @return true if the value wasn't in the set before
+	 */
+	boolean add(long value);
+}
@@ -0,0 +1,188 @@
+package generator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The sidecar of a puzzle pack that remembers how every puzzle in it was rated
+ * <p>
+ * {@link PuzzlePackGenerator} looks every source up in the manifest of the
+ * previous build and only solves the puzzles it doesn't find. A puzzle file is
+ * found by its name, and only if its modification time and length haven't
+ * changed. A puzzle from a log is found by a hash of its content.
+ * <p>
+ * The binary file has the format:
+ * <ul>
+ * <li> int: MAGIC
+ * <li> int: VERSION
+ * <li> int: number of entries n
+ * <li> n entries, each a UTF key, a long modification time, a long length, an int
+ * difficulty, a byte count and that many bytes of solver info and the UTF puzzle
+ * string
+ * </ul>
+ */
+class PackManifest {
+	private ArrayList<Entry> entries;
+	private HashMap<String, Entry> byKey;
+
+	private static final int MAGIC = 0x53484D46; //"SHMF"
+	private static final int VERSION = 1;
+
+	/**
+	 * How a single puzzle was rated
+	 */
+	static class Entry {
+		final String key;
+		final long modified, length;
+		final int difficulty;
+		final int[] solverInfo;
+		final String puzzleString;
+
+		Entry(String key, long modified, long length, int difficulty,
+				int[] solverInfo, String puzzleString) {
+			this.key = key;
+			this.modified = modified;
+			this.length = length;
+			this.difficulty = difficulty;
+			this.solverInfo = solverInfo;
+			this.puzzleString = puzzleString;
+		}
+	}
+
+	/**
+	 * Creates an empty manifest
+	 */
+	PackManifest() {
+		this.entries = new ArrayList<Entry>();
+		this.byKey = new HashMap<String, Entry>();
+	}
+
+	/**
+	 * Adds an entry, replacing any entry with the same key in lookups
+	 * @param entry  the entry to add
+	 */
+	void add(Entry entry) {
+		this.entries.add(entry);
+		this.byKey.put(entry.key, entry);
+	}
+
+	/**
+	 * Looks up an unchanged source
+	 * @param key  the source's key
+	 * @param modified  the source's modification time or 0 for a log record
+	 * @param length  the source's length or 0 for a log record
+	 * @return the source's entry or null if it is new or has changed
+	 */
+	Entry get(String key, long modified, long length) {
+		Entry entry = this.byKey.get(key);
+		if (entry == null || entry.modified != modified
+				|| entry.length != length) {
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Gets the number of entries
+	 * @return the number of entries
+	 */
+	int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Gets the key of a puzzle read from a log
+	 * @param puzzleString  the puzzle as space-delimited integers
+	 * @return a key made from a 64-bit FNV-1a hash of the puzzle string
+	 */
+	static String contentKey(String puzzleString) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < puzzleString.length(); i++) {
+			hash ^= puzzleString.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return String.format("#%016x", hash);
+	}
+
+	/**
+	 * Reads a manifest from a file
+	 * @param file  the manifest file
+	 * @return the manifest or an empty manifest if the file doesn't exist
+	 * @throws IOException if the file can't be read or isn't a manifest
+	 */
+	static PackManifest read(File file) throws IOException {
+		PackManifest manifest = new PackManifest();
+		if (!file.exists()) {
+			return manifest;
+		}
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a pack manifest: " + file);
+			}
+			int numEntries = in.readInt();
+			for (int i = 0; i < numEntries; i++) {
+				String key = in.readUTF();
+				long modified = in.readLong();
+				long length = in.readLong();
+				int difficulty = in.readInt();
+				int[] solverInfo = new int[in.readUnsignedByte()];
+				for (int j = 0; j < solverInfo.length; j++) {
+					solverInfo[j] = in.readByte();
+				}
+				manifest.add(new Entry(key, modified, length, difficulty,
+						solverInfo, in.readUTF()));
+			}
+			return manifest;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes this manifest to a file atomically
+	 * @param file  the manifest file
+	 * @throws IOException if the file can't be written
+	 */
+	void write(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(stream));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.entries.size());
+			for (Entry entry : this.entries) {
+				out.writeUTF(entry.key);
+				out.writeLong(entry.modified);
+				out.writeLong(entry.length);
+				out.writeInt(entry.difficulty);
+				out.writeByte(entry.solverInfo.length);
+				for (int info : entry.solverInfo) {
+					out.writeByte(info);
+				}
+				out.writeUTF(entry.puzzleString);
+			}
+			out.flush();
+			stream.getFD().sync();
+		}
+		finally {
+			stream.close();
+		}
+		Files.move(temp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
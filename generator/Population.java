@@ -0,0 +1,413 @@
+package generator;
+
+import java.util.Random;
+
+import shinro.PuzzleSnapshot;
+import shinro.ShinroPuzzle;
+import shinro.ShinroSolver;
+
+/**
+ * A population of {@link ShinroGenerator} genomes stored as flat arrays
+ * <p>
+ * Instead of a ShinroPuzzle per genome, every genome's spaces are packed one
+ * byte each into a single array, next to a mask of its points and a mask of its
+ * arrows. Its fitness, hash, number of pointless arrows and solver info are
+ * kept in parallel arrays indexed by genome. Header numbers aren't stored since
+ * they are always the point counts of a genome's rows and columns.
+ * <p>
+ * Genomes are changed in place with {@link #setPos(int, int, int)}, which keeps
+ * the masks up to date, and copied between populations with
+ * {@link #copyGenome(int, Population, int)}, so a generation can be run on two
+ * populations that swap places without allocating anything.
+ * <p>
+ * Spaces are indexed row-major, from 0 to CELLS - 1. Bit i of a mask is space i.
+ */
+class Population {
+	static final int SIZE = ShinroPuzzle.SIZE;
+	static final int CELLS = SIZE * SIZE;
+	static final int INFOSIZE = ShinroSolver.ARRAYSIZE;
+
+	private static final long FNVOFFSET = 0xcbf29ce484222325L;
+	private static final long FNVPRIME = 0x100000001b3L;
+	private static final int[] DIRROW = {0, -1, -1, 0, 1, 1, 1, 0, -1};
+	private static final int[] DIRCOL = {0, 0, 1, 1, 1, 0, -1, -1, -1};
+
+	//the spaces from each space to the edge in each direction, itself included
+	private static final long[][] PATHS = new long[CELLS][ShinroPuzzle.NW + 1];
+	private static final long[] ROWMASKS = new long[SIZE];
+	private static final long[] COLMASKS = new long[SIZE];
+
+	static {
+		for (int space = 0; space < CELLS; space++) {
+			for (int dir = ShinroPuzzle.N; dir <= ShinroPuzzle.NW; dir++) {
+				for (int row = space / SIZE, col = space % SIZE;
+						row >= 0 && row < SIZE && col >= 0 && col < SIZE;
+						row += DIRROW[dir], col += DIRCOL[dir]) {
+					PATHS[space][dir] |= 1L << (row * SIZE + col);
+				}
+			}
+			ROWMASKS[space / SIZE] |= 1L << space;
+			COLMASKS[space % SIZE] |= 1L << space;
+		}
+	}
+
+	final byte[] cells;       //genome i's spaces start at i * CELLS
+	final long[] points;      //mask of each genome's points
+	final long[] arrows;      //mask of each genome's arrows
+	final double[] fitness;
+	final long[] hashes;      //see calcHash
+	final int[] numPointless; //pointless arrows when the genome was evaluated
+	final int[] solverInfo;   //genome i's solver info starts at i * INFOSIZE
+	private final int size;
+
+	private int[] selections = new int[0]; //tournament scratch
+
+	/**
+	 * Creates a population of empty genomes with zero fitness
+	 * @param size  the number of genomes
+	 */
+	Population(int size) {
+		this.size = size;
+		this.cells = new byte[size * CELLS];
+		this.points = new long[size];
+		this.arrows = new long[size];
+		this.fitness = new double[size];
+		this.hashes = new long[size];
+		this.numPointless = new int[size];
+		this.solverInfo = new int[size * INFOSIZE];
+	}
+
+	/**
+	 * Gets the number of genomes in the population
+	 * @return the population size
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets the value of a genome's space
+	 * @param genome  the index of the genome
+	 * @param space  the row-major index of the space
+	 * @return EMPTY, POINT or an arrow from N to NW
+	 */
+	int atPos(int genome, int space) {
+		return this.cells[genome * CELLS + space];
+	}
+
+	/**
+	 * Sets a genome's space to a specific value and updates its masks
+	 * @param genome  the index of the genome
+	 * @param space  the row-major index of the space
+	 * @param value  EMPTY, POINT or an arrow from N to NW
+	 * @throws IllegalArgumentException if value is less than EMPTY or greater
+	 * than POINT
+	 */
+	void setPos(int genome, int space, int value)
+			throws IllegalArgumentException {
+		if (value < ShinroPuzzle.EMPTY || value > ShinroPuzzle.POINT) {
+			throw new IllegalArgumentException("setPos: Illegal value --> " + value);
+		}
+		long bit = 1L << space;
+		this.cells[genome * CELLS + space] = (byte)value;
+		if (value == ShinroPuzzle.POINT) {
+			this.points[genome] |= bit;
+			this.arrows[genome] &= ~bit;
+		}
+		else if (value == ShinroPuzzle.EMPTY) {
+			this.points[genome] &= ~bit;
+			this.arrows[genome] &= ~bit;
+		}
+		else {
+			this.points[genome] &= ~bit;
+			this.arrows[genome] |= bit;
+		}
+	}
+
+	/**
+	 * Gets a mask of a genome's empty spaces
+	 * @param genome  the index of the genome
+	 * @return the mask
+	 */
+	long getEmpty(int genome) {
+		return ~(this.points[genome] | this.arrows[genome]);
+	}
+
+	/**
+	 * Gets the number of points in a genome
+	 * @param genome  the index of the genome
+	 * @return the number of points
+	 */
+	int getNumPoints(int genome) {
+		return Long.bitCount(this.points[genome]);
+	}
+
+	/**
+	 * Gets the number of points in one of a genome's rows
+	 * @param genome  the index of the genome
+	 * @param row  the row
+	 * @return the row's header number
+	 */
+	int getRowHeaderNum(int genome, int row) {
+		return Long.bitCount(this.points[genome] & ROWMASKS[row]);
+	}
+
+	/**
+	 * Gets the number of points in one of a genome's columns
+	 * @param genome  the index of the genome
+	 * @param col  the column
+	 * @return the column's header number
+	 */
+	int getColHeaderNum(int genome, int col) {
+		return Long.bitCount(this.points[genome] & COLMASKS[col]);
+	}
+
+	/**
+	 * Gets the spaces from a space to the edge of the puzzle in a direction
+	 * @param space  the row-major index of the space, which is included
+	 * @param dir  the direction, from N to NW
+	 * @return a mask of the spaces
+	 */
+	static long getPath(int space, int dir) {
+		return PATHS[space][dir];
+	}
+
+	/**
+	 * Gets the index of a set bit of a mask, counting up from the lowest
+	 * @param mask  the mask
+	 * @param n  which set bit to get, from zero to one less than the bit count
+	 * @return the index of the bit, which is the row-major index of its space
+	 */
+	static int getNthSpace(long mask, int n) {
+		for (int i = 0; i < n; i++) {
+			mask &= mask - 1;
+		}
+		return Long.numberOfTrailingZeros(mask);
+	}
+
+	/**
+	 * Counts the arrows of a genome with no point in their paths
+	 * @param genome  the index of the genome
+	 * @return the number of pointless arrows
+	 */
+	int countPointlessArrows(int genome) {
+		int count = 0;
+		long points = this.points[genome];
+		for (long left = this.arrows[genome]; left != 0; left &= left - 1) {
+			int arrow = Long.numberOfTrailingZeros(left);
+			if ((PATHS[arrow][this.atPos(genome, arrow)] & points) == 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Clears every arrow of a genome with no point in its path
+	 * @param genome  the index of the genome
+	 */
+	void removePointlessArrows(int genome) {
+		long points = this.points[genome];
+		for (long left = this.arrows[genome]; left != 0; left &= left - 1) {
+			int arrow = Long.numberOfTrailingZeros(left);
+			if ((PATHS[arrow][this.atPos(genome, arrow)] & points) == 0) {
+				this.setPos(genome, arrow, ShinroPuzzle.EMPTY);
+			}
+		}
+	}
+
+	/**
+	 * Calculates and stores the hash of a genome
+	 * <p>
+	 * The hash is the same as {@link PuzzleSnapshot#getHash()} of the genome's
+	 * snapshot.
+	 * @param genome  the index of the genome
+	 * @return the hash
+	 */
+	long calcHash(int genome) {
+		long hash = FNVOFFSET;
+		for (int i = genome * CELLS, end = i + CELLS; i < end; i++) {
+			hash = (hash ^ (this.cells[i] & 0xff)) * FNVPRIME;
+		}
+		for (int row = 0; row < SIZE; row++) {
+			hash = (hash ^ this.getRowHeaderNum(genome, row)) * FNVPRIME;
+		}
+		for (int col = 0; col < SIZE; col++) {
+			hash = (hash ^ this.getColHeaderNum(genome, col)) * FNVPRIME;
+		}
+		this.hashes[genome] = hash;
+		return hash;
+	}
+
+	/**
+	 * Determines whether a genome has the same spaces as a genome of another
+	 * population
+	 * <p>
+	 * The genomes' hashes must already be calculated.
+	 * @param genome  the index of the genome
+	 * @param other  the other population, which may be this one
+	 * @param otherGenome  the index of the genome in the other population
+	 * @return true if every space is the same
+	 */
+	boolean sameSpaces(int genome, Population other, int otherGenome) {
+		if (this.hashes[genome] != other.hashes[otherGenome]
+				|| this.points[genome] != other.points[otherGenome]
+				|| this.arrows[genome] != other.arrows[otherGenome]) {
+			return false;
+		}
+		for (int i = 0; i < CELLS; i++) {
+			if (this.cells[genome * CELLS + i]
+					!= other.cells[otherGenome * CELLS + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copies a genome, its fitness and everything else known about it into a
+	 * genome of another population
+	 * @param genome  the index of the genome to copy
+	 * @param into  the population to copy it to, which may be this one
+	 * @param intoGenome  the index of the genome to overwrite
+	 */
+	void copyGenome(int genome, Population into, int intoGenome) {
+		System.arraycopy(this.cells, genome * CELLS, into.cells,
+				intoGenome * CELLS, CELLS);
+		System.arraycopy(this.solverInfo, genome * INFOSIZE, into.solverInfo,
+				intoGenome * INFOSIZE, INFOSIZE);
+		into.points[intoGenome] = this.points[genome];
+		into.arrows[intoGenome] = this.arrows[genome];
+		into.fitness[intoGenome] = this.fitness[genome];
+		into.hashes[intoGenome] = this.hashes[genome];
+		into.numPointless[intoGenome] = this.numPointless[genome];
+	}
+
+	/**
+	 * Copies a genome's fitness, solver info and number of pointless arrows into
+	 * a genome of another population, leaving its spaces alone
+	 * @param genome  the index of the genome whose evaluation is copied
+	 * @param into  the population to copy it to, which may be this one
+	 * @param intoGenome  the index of the genome to overwrite
+	 */
+	void copyEvaluation(int genome, Population into, int intoGenome) {
+		System.arraycopy(this.solverInfo, genome * INFOSIZE, into.solverInfo,
+				intoGenome * INFOSIZE, INFOSIZE);
+		into.fitness[intoGenome] = this.fitness[genome];
+		into.numPointless[intoGenome] = this.numPointless[genome];
+	}
+
+	/**
+	 * Copies a genome's spaces and header numbers into a puzzle
+	 * <p>
+	 * Every space of the puzzle is overwritten, so one puzzle can be reused to
+	 * solve any number of genomes.
+	 * @param genome  the index of the genome
+	 * @param puzzle  the puzzle to copy it to
+	 */
+	void copyToPuzzle(int genome, ShinroPuzzle puzzle) {
+		for (int row = 0; row < SIZE; row++) {
+			for (int col = 0; col < SIZE; col++) {
+				puzzle.setPos(row, col, this.atPos(genome, row * SIZE + col));
+			}
+			puzzle.setRowHeaderNum(row, this.getRowHeaderNum(genome, row));
+			puzzle.setColHeaderNum(row, this.getColHeaderNum(genome, row));
+		}
+	}
+
+	/**
+	 * Sets a genome to the spaces of a puzzle
+	 * <p>
+	 * The genome's hash is calculated; its fitness is left alone.
+	 * @param genome  the index of the genome
+	 * @param puzzle  a puzzle with no Xs or satisfied arrows
+	 */
+	void copyFromPuzzle(int genome, ShinroPuzzle puzzle) {
+		for (int row = 0; row < SIZE; row++) {
+			for (int col = 0; col < SIZE; col++) {
+				this.setPos(genome, row * SIZE + col, puzzle.atPos(row, col));
+			}
+		}
+		this.calcHash(genome);
+	}
+
+	/**
+	 * Makes a new puzzle from a genome
+	 * @param genome  the index of the genome
+	 * @return a ShinroPuzzle with the genome's spaces and header numbers
+	 */
+	ShinroPuzzle toPuzzle(int genome) {
+		ShinroPuzzle puzzle = new ShinroPuzzle();
+		this.copyToPuzzle(genome, puzzle);
+		return puzzle;
+	}
+
+	/**
+	 * Takes a snapshot of a genome
+	 * @param genome  the index of the genome
+	 * @return a snapshot of the genome's spaces and header numbers
+	 */
+	PuzzleSnapshot toSnapshot(int genome) {
+		PuzzleSnapshot.Builder builder = new PuzzleSnapshot.Builder();
+		for (int space = 0; space < CELLS; space++) {
+			builder.setPos(space / SIZE, space % SIZE, this.atPos(genome, space));
+		}
+		return builder.setHeaders().build();
+	}
+
+	/**
+	 * Gets the index of the elite genome
+	 * @return the index of the first genome with the highest fitness, or zero if
+	 * every genome has a fitness of zero
+	 */
+	int getElite() {
+		int elite = 0;
+		double bestValue = 0f;
+		for (int i = 0; i < this.size; i++) {
+			if (this.fitness[i] > bestValue) {
+				bestValue = this.fitness[i];
+				elite = i;
+			}
+		}
+		return elite;
+	}
+
+	/**
+	 * Performs tournament selection on the population
+	 * <p>
+	 * The tournament is made of distinct genomes picked at random. The victor is
+	 * the elite genome of the tournament, or the first genome picked if every
+	 * genome of the tournament has a fitness of zero.
+	 * @param rand  the random number generator to pick the genomes with
+	 * @param tournamentSize  the number of genomes in the tournament, no more
+	 * than the size of the population
+	 * @return the index of the victor of the tournament
+	 */
+	int runTournament(Random rand, int tournamentSize) {
+		if (this.selections.length < tournamentSize) {
+			this.selections = new int[tournamentSize];
+		}
+		int[] selections = this.selections;
+		for (int i = 0; i < tournamentSize; i++) {
+			selections[i] = rand.nextInt(this.size);
+
+			//make sure the same genome isn't selected twice
+			for (int j = (i - 1); j >= 0; j--) {
+				if (selections[i] == selections[j]) {
+					i--; //repeat this iteration of outer loop
+					break;
+				}
+			}
+		}
+
+		int victor = selections[0];
+		double bestValue = 0f;
+		for (int i = 0; i < tournamentSize; i++) {
+			if (this.fitness[selections[i]] > bestValue) {
+				bestValue = this.fitness[selections[i]];
+				victor = selections[i];
+			}
+		}
+		return victor;
+	}
+}
@@ -0,0 +1,62 @@
+package generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import shinro.ShinroPuzzle;
+
+/**
+ * Writes every puzzle to its own plain text file in a directory
+ * <p>
+ * The file is named after the puzzle and contains the puzzle as a sequence of
+ * space-delimited integers. This is the format {@link PuzzlePackGenerator} reads
+ * when it scans a directory.
+ */
+public class PuzzleFileSink implements PuzzleSink {
+	private File dir;
+
+	/**
+	 * Creates a PuzzleFileSink which writes to the specified directory
+	 * @param dir  the directory to create puzzle files in
+	 */
+	public PuzzleFileSink(File dir) {
+		this.dir = dir;
+	}
+
+	/* Writes the puzzle to a new file named after the puzzle
+	 * @see generator.PuzzleSink#write(java.lang.String, shinro.ShinroPuzzle)
+	 */
+	@Override
+	public void write(String name, ShinroPuzzle puzzle) throws IOException {
+		File outFile = new File(this.dir, name);
+		PrintWriter out = new PrintWriter(outFile);
+		out.print(toText(puzzle));
+		out.close();
+		if (out.checkError()) {
+			throw new IOException("could not write " + outFile);
+		}
+	}
+
+	/* Nothing to do; every file is closed once written
+	 * @see generator.PuzzleSink#close()
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Gets a puzzle as a sequence of space-delimited integers
+	 * @param puzzle  the puzzle to convert
+	 * @return the puzzle's spaces in row-major order, each followed by a space
+	 */
+	static String toText(ShinroPuzzle puzzle) {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < puzzle.size(); i++) {
+			for (int j = 0; j < puzzle.size(); j++) {
+				result.append(puzzle.atPos(i, j)).append(' ');
+			}
+		}
+		return result.toString();
+	}
+}
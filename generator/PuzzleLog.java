@@ -0,0 +1,292 @@
+package generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import shinro.ShinroPuzzle;
+
+/**
+ * An append-only log of generated puzzles in a single file
+ * <p>
+ * Every puzzle is one newline-terminated record of the form
+ * "NAME|0 0 0 ... 0 |CRC" where the middle part is the puzzle as space-delimited
+ * integers (the same text {@link PuzzleFileSink} writes) and CRC is the CRC-32 of
+ * everything before the second '|' as eight hex digits.
+ * <p>
+ * Records are collected in a buffer and appended with a single channel write
+ * while holding a lock on the file, so any number of threads and generator
+ * processes can share one log without their records interleaving. The file is
+ * synced every 'syncInterval' records and on {@link #flush()} and
+ * {@link #close()}. A record torn by a crash fails its checksum and is skipped by
+ * {@link #read(File, ArrayList)}.
+ */
+public class PuzzleLog implements PuzzleSink {
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private int syncInterval, unsynced;
+
+	private static final int BUFFERSIZE = 64 * 1024;
+	private static final int DEFAULTSYNCINTERVAL = 64;
+	private static final char SEPARATOR = '|';
+
+	/**
+	 * A puzzle read back from a log
+	 */
+	public static class Record {
+		public final String name;
+		public final String puzzleString;
+
+		public Record(String name, String puzzleString) {
+			this.name = name;
+			this.puzzleString = puzzleString;
+		}
+	}
+
+	/**
+	 * Opens a log for appending, syncing every DEFAULTSYNCINTERVAL records
+	 * @param file  the log file, which is created if it doesn't exist
+	 * @throws IOException if the file can't be opened
+	 */
+	public PuzzleLog(File file) throws IOException {
+		this(file, DEFAULTSYNCINTERVAL);
+	}
+
+	/**
+	 * Opens a log for appending
+	 * <p>
+	 * If the log ends in a record torn by a crash, the record is terminated so
+	 * that new records start on a line of their own.
+	 * @param file  the log file, which is created if it doesn't exist
+	 * @param syncInterval  the number of records after which the file is synced
+	 * @throws IOException if the file can't be opened
+	 */
+	public PuzzleLog(File file, int syncInterval) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+		this.buffer = ByteBuffer.allocate(BUFFERSIZE);
+		this.syncInterval = syncInterval;
+		this.unsynced = 0;
+
+		FileLock lock = this.channel.lock();
+		try {
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				if (in.length() > 0) {
+					in.seek(in.length() - 1);
+					if (in.read() != '\n') {
+						this.channel.write(ByteBuffer.wrap(new byte[] {'\n'}));
+					}
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		finally {
+			lock.release();
+		}
+	}
+
+	/* Appends the puzzle as a record, syncing if syncInterval records are pending
+	 * @see generator.PuzzleSink#write(java.lang.String, shinro.ShinroPuzzle)
+	 */
+	@Override
+	public synchronized void write(String name, ShinroPuzzle puzzle)
+			throws IOException {
+		if (name.indexOf(SEPARATOR) >= 0 || name.indexOf('\n') >= 0) {
+			throw new IllegalArgumentException("write: Illegal puzzle name --> "
+					+ name);
+		}
+		byte[] record = encode(name, PuzzleFileSink.toText(puzzle));
+		if (record.length > this.buffer.remaining()) {
+			this.flushBuffer();
+		}
+		if (record.length > this.buffer.capacity()) {
+			this.append(ByteBuffer.wrap(record));
+		}
+		else {
+			this.buffer.put(record);
+		}
+		if (++this.unsynced >= this.syncInterval) {
+			this.flush();
+		}
+	}
+
+	/**
+	 * Appends any buffered records and syncs the file
+	 * @throws IOException if the records can't be written
+	 */
+	public synchronized void flush() throws IOException {
+		this.flushBuffer();
+		this.channel.force(false);
+		this.unsynced = 0;
+	}
+
+	/* Flushes and closes the log
+	 * @see generator.PuzzleSink#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.channel.isOpen()) {
+			this.flush();
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Appends the buffered records to the file
+	 * @throws IOException if the records can't be written
+	 */
+	private void flushBuffer() throws IOException {
+		this.buffer.flip();
+		if (this.buffer.hasRemaining()) {
+			this.append(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * Appends whole records to the file while holding the file lock
+	 * @param records  the records to append
+	 * @throws IOException if the records can't be written
+	 */
+	private void append(ByteBuffer records) throws IOException {
+		FileLock lock = this.channel.lock();
+		try {
+			while (records.hasRemaining()) {
+				this.channel.write(records);
+			}
+		}
+		finally {
+			lock.release();
+		}
+	}
+
+	/**
+	 * Encodes a single record
+	 * @param name  the puzzle's name
+	 * @param puzzleString  the puzzle as space-delimited integers
+	 * @return the record's bytes including the trailing newline
+	 */
+	private static byte[] encode(String name, String puzzleString) {
+		String body = name + SEPARATOR + puzzleString;
+		return (body + SEPARATOR + String.format("%08x", checksum(body)) + "\n")
+				.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Calculates the checksum of a record's body
+	 * @param body  everything in the record before the second separator
+	 * @return the CRC-32 of the body
+	 */
+	private static long checksum(String body) {
+		CRC32 crc = new CRC32();
+		crc.update(body.getBytes(StandardCharsets.US_ASCII));
+		return crc.getValue();
+	}
+
+	/**
+	 * Reads the intact records of a log one at a time
+	 * <p>
+	 * Only the current record is held in memory, so a Reader can go through a log
+	 * of any size.
+	 */
+	public static class Reader {
+		private BufferedReader reader;
+		private int damaged;
+
+		/**
+		 * Opens a log for reading
+		 * @param file  the log file to read
+		 * @throws IOException if the file can't be opened
+		 */
+		public Reader(File file) throws IOException {
+			this.reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), StandardCharsets.US_ASCII));
+			this.damaged = 0;
+		}
+
+		/**
+		 * Reads the next intact record, skipping damaged ones
+		 * @return the next record or null at the end of the log
+		 * @throws IOException if the file can't be read
+		 */
+		public Record next() throws IOException {
+			String line;
+			while ((line = this.reader.readLine()) != null) {
+				int first = line.indexOf(SEPARATOR);
+				int last = line.lastIndexOf(SEPARATOR);
+				if (first < 0 || last <= first || last + 9 != line.length()) {
+					if (line.length() > 0) {
+						this.damaged++;
+					}
+					continue;
+				}
+				String body = line.substring(0, last);
+				try {
+					if (Long.parseLong(line.substring(last + 1), 16)
+							!= checksum(body)) {
+						this.damaged++;
+						continue;
+					}
+				}
+				catch (NumberFormatException e) {
+					this.damaged++;
+					continue;
+				}
+				return new Record(line.substring(0, first),
+						line.substring(first + 1, last));
+			}
+			return null;
+		}
+
+		/**
+		 * Gets the number of damaged records skipped so far
+		 * @return the number of damaged records
+		 */
+		public int getDamaged() {
+			return this.damaged;
+		}
+
+		/**
+		 * Closes the log
+		 * @throws IOException if the file can't be closed
+		 */
+		public void close() throws IOException {
+			this.reader.close();
+		}
+	}
+
+	/**
+	 * Reads every intact record from a log
+	 * @param file  the log file to read
+	 * @param records  the list to add the records to
+	 * @return the number of damaged records that were skipped
+	 * @throws IOException if the file can't be read
+	 */
+	public static int read(File file, ArrayList<Record> records)
+			throws IOException {
+		Reader reader = new Reader(file);
+		try {
+			Record record;
+			while ((record = reader.next()) != null) {
+				records.add(record);
+			}
+			return reader.getDamaged();
+		}
+		finally {
+			reader.close();
+		}
+	}
+}
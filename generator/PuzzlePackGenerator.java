@@ -3,19 +3,67 @@ package generator;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import shinro.PackReader;
+import shinro.PackWriter;
+import shinro.PuzzleParser;
 import shinro.ShinroPuzzle;
-import shinro.ShinroSolver;
 
 /**
  * Creates a difficulty-ordered puzzle pack from files generated by 
  * generator.ShinroGenerator
  * <p>
  * The program takes a single parameter: the puzzle pack name, which can contain
- * spaces.
+ * spaces. It may be preceded by any number of "--log logFile" options, in which
+ * case the puzzles are read from those {@link PuzzleLog}s instead of from the
+ * puzzle files in the working directory. With the "--binary" option, a binary
+ * pack for {@link shinro.PackReader} is written as well, to the same file name
+ * with BINARYSUFFIX appended. Puzzles are read, solved and rated on
+ * "--threads n" threads, by default one per available processor.
+ * <p>
+ * With the "--streaming" option (or "--runsize n" to choose the run size), the
+ * pack is built with an external merge sort: every RUNSIZE puzzles are rated,
+ * sorted and spilled to a temporary binary pack, and the runs are then merged
+ * into the final pack. Memory use depends on the run size but not on the number
+ * of puzzles. Puzzles are written to the pack in the normalized form of
+ * {@link PuzzleFileSink}.
+ * <p>
+ * With the "--incremental" option, the rating of every puzzle is kept in a
+ * {@link PackManifest} next to the pack (the pack file name with MANIFESTSUFFIX
+ * appended) and the next build only solves puzzles that are new or have
+ * changed since. This can't be combined with "--streaming".
+ * <p>
+ * Puzzles are rated by a {@link DifficultyRater} with the formula given by
+ * "--formula name", by default "quartic". With "--ratings cacheFile", the
+ * solver profiles are loaded from and saved to that file, so re-packing or
+ * re-rating with another formula doesn't solve the puzzles again. The cache
+ * file's name mustn't start with "shinro" or it is taken for a puzzle file.
+ * <p>
+ * Puzzles that are a copy, rotation or reflection of a puzzle found earlier are
+ * dropped, as recognized by {@link ShinroPuzzle#getCanonicalHash()}. The hashes
+ * are kept in a {@link LongHashSet}. When streaming, only the hashes of the
+ * current run are kept in a LongHashSet and those of earlier runs go in a
+ * {@link BloomFilter} in a temporary file, sized at BLOOMBITSPERPUZZLE bits for
+ * every puzzle the sources could hold (up to 2^MAXBLOOMBITS bits). The filter
+ * may mistake a new puzzle for one in an earlier run, so those puzzles are
+ * reported as possible duplicates. At that size fewer than 1 in 1000 new puzzles
+ * is dropped by mistake, and the rate only grows past that for sources of more
+ * than 2^MAXBLOOMBITS / BLOOMBITSPERPUZZLE puzzles.
  * <p>
  * The pack has the format:
  * PACKNAME
@@ -34,7 +82,18 @@ import shinro.ShinroSolver;
 public class PuzzlePackGenerator {
 	
 	private static final String PACKPREFIX = "pack";
+	private static final String BINARYSUFFIX = ".bin";
+	private static final String MANIFESTSUFFIX = ".manifest";
+	private static final int QUEUEPERTHREAD = 64;
+	private static final int RUNSIZE = 65536;
+	private static final int BLOOMBITSPERPUZZLE = 16, BLOOMHASHES = 7;
+	private static final int MINBLOOMBITS = 16, MAXBLOOMBITS = 33;
+	//a log record holds at least a digit and a separator for every space
+	private static final int MINLOGRECORD = 2 * ShinroPuzzle.SIZE 
+			* ShinroPuzzle.SIZE;
+	private static int numDuplicates = 0, numPossibleDuplicates = 0;
 	private static String packName = "Default Pack";
+	private static DifficultyRater rater;
 	
 	/* This is just a one-shot inner class for facilitating the ease of sorting
 	 * the puzzles by difficulty. Nothing to see here!
@@ -42,10 +101,19 @@ public class PuzzlePackGenerator {
 	private static class PuzzleInfo implements Comparable<PuzzleInfo> {
 		int difficulty;
 		String puzzleString;
+		ShinroPuzzle puzzle;
+		int[] solverInfo;
+		long hash; //the canonical hash
+		String key; //the source's manifest key
+		long modified, length;
+		boolean reused; //rated by a previous build
 		
-		public PuzzleInfo(int difficulty, String puzzleString) {
+		public PuzzleInfo(int difficulty, String puzzleString, 
+				ShinroPuzzle puzzle, int[] solverInfo) {
 			this.difficulty = difficulty;
 			this.puzzleString = puzzleString;
+			this.puzzle = puzzle;
+			this.solverInfo = solverInfo;
 		}
 
 		@Override
@@ -68,13 +136,64 @@ public class PuzzlePackGenerator {
 	 * This program takes a single command-line parameter, the puzzle pack name.
 	 * The pack name CAN have spaces. Please note: behavior with an escape-containing
 	 * string has not been tested.
-	 * @param args  the puzzle pack name
+	 * @param args  any "--log logFile", "--binary", "--threads n", "--streaming",
+	 * "--runsize n", "--incremental", "--formula name" and "--ratings cacheFile"
+	 * options followed by the puzzle pack name
 	 */
 	public static void main(String[] args) {
-		if (args.length > 0) {
+		FlightRecorderEvents.install();
+		ArrayList<File> logs = new ArrayList<File>();
+		boolean binary = false, incremental = false;
+		String formula = "quartic";
+		File ratingsFile = null;
+		int runSize = 0;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		int nameStart = 0;
+		while (nameStart < args.length) {
+			if (nameStart + 1 < args.length && args[nameStart].equals("--log")) {
+				logs.add(new File(args[nameStart + 1]));
+				nameStart += 2;
+			}
+			else if (nameStart + 1 < args.length 
+					&& args[nameStart].equals("--threads")) {
+				numThreads = Math.max(1, Integer.parseInt(args[nameStart + 1]));
+				nameStart += 2;
+			}
+			else if (nameStart + 1 < args.length 
+					&& args[nameStart].equals("--runsize")) {
+				runSize = Math.max(1, Integer.parseInt(args[nameStart + 1]));
+				nameStart += 2;
+			}
+			else if (nameStart + 1 < args.length 
+					&& args[nameStart].equals("--formula")) {
+				formula = args[nameStart + 1];
+				nameStart += 2;
+			}
+			else if (nameStart + 1 < args.length 
+					&& args[nameStart].equals("--ratings")) {
+				ratingsFile = new File(args[nameStart + 1]);
+				nameStart += 2;
+			}
+			else if (args[nameStart].equals("--binary")) {
+				binary = true;
+				nameStart++;
+			}
+			else if (args[nameStart].equals("--streaming")) {
+				runSize = RUNSIZE;
+				nameStart++;
+			}
+			else if (args[nameStart].equals("--incremental")) {
+				incremental = true;
+				nameStart++;
+			}
+			else {
+				break;
+			}
+		}
+		if (args.length > nameStart) {
 			packName = "";
-			for (String string : args) {
-				packName += string + " ";
+			for (int i = nameStart; i < args.length; i++) {
+				packName += args[i] + " ";
 			}
 			packName = packName.trim();
 		}
@@ -82,89 +201,90 @@ public class PuzzlePackGenerator {
 		String filename = PACKPREFIX + packName.replaceAll("\\p{Z}","");
 		filename = filename.toLowerCase(); //Android needs lowercase
 		
+		if (incremental && runSize > 0) {
+			System.out.println("--incremental can't be combined with --streaming."
+					+ " Terminating.");
+			System.exit(1);
+		}
+		
+		try {
+			rater = new DifficultyRater(DifficultyRater.getFormula(formula));
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("Unknown formula '" + formula + "'. Terminating.");
+			System.exit(1);
+		}
+		
 		try {
-			File dir = new File("."); //The directory the program is in
-			File[] files = dir.listFiles();
-			ArrayList<File> puzzles = new ArrayList<File>(); 
+			if (ratingsFile != null) {
+				rater.load(ratingsFile);
+			}
+			if (runSize > 0) {
+				buildStreaming(logs, runSize, numThreads, binary, filename);
+				saveRatings(ratingsFile);
+				return;
+			}
+			
+			//Each source is a puzzle file or a puzzle string from a log
+			ArrayList<Object> sources = new ArrayList<Object>();
 			
-			//Create an ArrayList of puzzles
-			for (File file : files) {
-				if (file.getName().length() > 7 
-						&& file.getName().substring(0, 6).equals("shinro")) {
-					puzzles.add(file);
+			if (logs.size() > 0) {
+				//Read the puzzles from the logs
+				ArrayList<PuzzleLog.Record> records = 
+						new ArrayList<PuzzleLog.Record>();
+				for (File log : logs) {
+					int damaged = PuzzleLog.read(log, records);
+					if (damaged > 0) {
+						System.out.println("Skipped " + damaged 
+								+ " damaged record(s) in " + log);
+					}
+				}
+				for (PuzzleLog.Record record : records) {
+					sources.add(record.puzzleString);
+				}
+			}
+			else {
+				File dir = new File("."); //The directory the program is in
+				File[] files = dir.listFiles();
+				
+				//Create an ArrayList of puzzle files
+				for (File file : files) {
+					if (file.getName().length() > 7 
+							&& file.getName().substring(0, 6).equals("shinro")) {
+						sources.add(file);
+					}
 				}
 			}
 			
-			int numPuzzles = puzzles.size();
-			
-			if (numPuzzles == 0) {
+			if (sources.size() == 0) {
 				System.out.println("No shinro puzzle files in this directory. "
 						+ "Terminating.");
 				System.exit(1);
 			}
 			
-			//Read all the puzzles into an ArrayList
+			File manifestFile = new File(filename + MANIFESTSUFFIX);
+			PackManifest manifest = incremental ? PackManifest.read(manifestFile)
+					: null;
+			PuzzleInfo[] ratedPuzzles = ratePuzzles(sources, numThreads, binary,
+					manifest);
+			PuzzleInfo[] packPuzzles = dropDuplicates(ratedPuzzles, 
+					new LongHashSet());
+			int numPuzzles = packPuzzles.length;
+			numDuplicates += ratedPuzzles.length - numPuzzles;
+			System.out.println("Dropped " + numDuplicates 
+					+ " duplicate puzzle(s).");
+			
+		    /* Sort the puzzles based on difficulty and insert into pack. The
+		     * sort is a stable merge sort, so puzzles of equal difficulty stay in
+		     * the order they were found in, however many threads rated them.
+		     */
+		    Arrays.parallelSort(packPuzzles);
+		    
 			PrintWriter writer = new PrintWriter(filename);
 			writer.println(packName);
 			
 			writer.println("numPuzzles: " + numPuzzles);
 			
-			ArrayList<PuzzleInfo> packPuzzles = new ArrayList<PuzzleInfo>();
-			
-		    for (File puzzle : puzzles) {
-		    	Scanner reader = new Scanner(puzzle);
-		    	String puzzleString = reader.nextLine();
-		    	
-		    	//read puzzle into a ShinroPuzzle so we can get get solver info
-		    	int [][] puzzleInts = new int[ShinroPuzzle.SIZE][ShinroPuzzle.SIZE];
-		    	int row = 0, col = 0;		    	
-		    	Scanner puzzleReader = new Scanner(puzzleString);
-		    	
-		    	while (puzzleReader.hasNextInt()) {
-		    		puzzleInts[row][col] = puzzleReader.nextInt();
-		    		col++;
-		    		if (col > ShinroPuzzle.SIZE - 1) {
-		    			col = 0;
-		    			row++;
-		    		}
-		    	}
-		    	
-		    	puzzleReader.close();
-		    	
-		    	ShinroPuzzle shinroPuzzle = new ShinroPuzzle(puzzleInts);
-		    	ShinroSolver shinroSolver = new ShinroSolver(shinroPuzzle);
-		    	int[] solverInfo = shinroSolver.solve();
-		    	
-		    	/* I sort of winged this difficulty calculation because I'm not
-		    	 * exactly sure how to go about this particular kind of statistical
-		    	 * analysis. The goal was to have a difficulty rating between 1 and
-		    	 * 100 where 1 was the easiest puzzle possible and 100 is the
-		    	 * hardest. Moves below difficulty 5 are trivial to identify so
-		    	 * puzzles consisting mostly of these moves should have a very low
-		    	 * difficulty score. Anyway, after tweaking this function I finally 
-		    	 * achieved a good enough distribution to be moving on with. If you 
-		    	 * happen to be peeping through this source and actually know what 
-		    	 * you're doing in this arena, please contact me through the 
-		    	 * appropriate channels and let me know so I can have a more robust 
-		    	 * difficulty rating.
-		    	 */
-		    	int weightedSum = 0, difficulty = 0;
-		    	double difficultyQuotient = 0;		    	
-		    	for (int i = 1; i < solverInfo.length - 1; i++) {
-	    			weightedSum += solverInfo[i] * i * i * i * i;
-		    	}
-		    	
-		    	difficultyQuotient = weightedSum 
-		    			/ solverInfo[0]; // divided by totalNumMoves		    	
-		    	difficulty = (int)(Math.round(difficultyQuotient / 500 * 100));
-		    	
-		    	packPuzzles.add(new PuzzleInfo(difficulty, puzzleString));
-		    	
-		    	reader.close();
-		    }
-		    //Sort the list of puzzles based on difficulty and insert into pack
-		    Collections.sort(packPuzzles);
-		    
 		    int puzzleCount = 1;
 		    for (PuzzleInfo puzzle : packPuzzles) {
 		    	writer.println("Puzzle " + puzzleCount++); //increments puzzleCount
@@ -174,9 +294,516 @@ public class PuzzlePackGenerator {
 			
 		    System.out.println("Created pack with " + numPuzzles + " puzzles.");
 			writer.close();
+			
+			if (binary) {
+				PackWriter packWriter = new PackWriter(
+						new File(filename + BINARYSUFFIX), packName);
+				for (PuzzleInfo puzzle : packPuzzles) {
+					packWriter.add(puzzle.puzzle, puzzle.difficulty, 
+							puzzle.solverInfo);
+				}
+				packWriter.close();
+				System.out.println("Created binary pack " + filename 
+						+ BINARYSUFFIX);
+			}
+			
+			if (incremental) {
+				PackManifest newManifest = new PackManifest();
+				int numReused = 0;
+				for (PuzzleInfo puzzle : ratedPuzzles) {
+					newManifest.add(new PackManifest.Entry(puzzle.key, 
+							puzzle.modified, puzzle.length, puzzle.difficulty,
+							puzzle.solverInfo, puzzle.puzzleString));
+					if (puzzle.reused) {
+						numReused++;
+					}
+				}
+				newManifest.write(manifestFile);
+				System.out.println("Solved " + (ratedPuzzles.length - numReused) 
+						+ " new or changed puzzle(s), reused " + numReused 
+						+ " from the manifest.");
+			}
+			saveRatings(ratingsFile);
 		}
 		catch (IOException e) {
 			System.out.println("IO Error: " + e.getMessage());
 		}
 	}
+
+	/**
+	 * Reads, solves and rates every puzzle on a pool of threads
+	 * <p>
+	 * The pool's queue is bounded. Once it is full, the calling thread rates the
+	 * next puzzle itself instead of queueing more work, so reading can never run
+	 * far ahead of solving.
+	 * @param sources  puzzle Files and puzzle Strings
+	 * @param numThreads  the number of threads to rate the puzzles on
+	 * @param keepPuzzles  whether to keep each puzzle for the binary pack
+	 * @param manifest  the ratings of a previous build to reuse or null to rate
+	 * every puzzle
+	 * @return a PuzzleInfo per source, in the order of the sources
+	 * @throws IOException if a puzzle file can't be read
+	 */
+	private static PuzzleInfo[] ratePuzzles(final ArrayList<Object> sources,
+			int numThreads, final boolean keepPuzzles, 
+			final PackManifest manifest) throws IOException {
+		final PuzzleInfo[] result = new PuzzleInfo[sources.size()];
+		final AtomicReference<IOException> error = 
+				new AtomicReference<IOException>();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(numThreads, numThreads,
+				0, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<Runnable>(numThreads * QUEUEPERTHREAD),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		
+		for (int i = 0; i < result.length && error.get() == null; i++) {
+			final int index = i;
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Object source = sources.get(index);
+						String key;
+						long modified = 0, length = 0;
+						if (source instanceof File) {
+							File file = (File)source;
+							key = file.getName();
+							modified = file.lastModified();
+							length = file.length();
+						}
+						else {
+							key = PackManifest.contentKey((String)source);
+						}
+						PackManifest.Entry known = (manifest == null) ? null 
+								: manifest.get(key, modified, length);
+						PuzzleInfo info;
+						if (known != null) {
+							ShinroPuzzle puzzle = new ShinroPuzzle(parsePuzzle(
+									known.puzzleString));
+							info = new PuzzleInfo(rater.rate(known.solverInfo), 
+									known.puzzleString, keepPuzzles ? puzzle : null,
+									known.solverInfo);
+							info.hash = puzzle.getCanonicalHash();
+							info.reused = true;
+						}
+						else {
+							String puzzleString = (source instanceof File)
+									? readPuzzle((File)source) : (String)source;
+							info = ratePuzzle(puzzleString, keepPuzzles);
+						}
+						info.key = key;
+						info.modified = modified;
+						info.length = length;
+						result[index] = info;
+					}
+					catch (IOException e) {
+						error.compareAndSet(null, e);
+					}
+					catch (ParseException e) {
+						Object source = sources.get(index);
+						error.compareAndSet(null, new IOException(
+								((source instanceof File) 
+										? ((File)source).getName() 
+										: "log record " + PackManifest.contentKey(
+												(String)source)) 
+								+ ": " + e.getMessage()));
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (error.get() != null) {
+			throw error.get();
+		}
+		return result;
+	}
+	
+	/**
+	 * Reads a puzzle file
+	 * @param file  the puzzle file
+	 * @return the first line of the file
+	 * @throws IOException if the file can't be read
+	 */
+	private static String readPuzzle(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		int end = 0;
+		while (end < bytes.length && bytes[end] != '\n' && bytes[end] != '\r') {
+			end++;
+		}
+		return new String(bytes, 0, end, StandardCharsets.US_ASCII);
+	}
+	
+	/**
+	 * Drops the puzzles whose canonical hash has been seen before
+	 * <p>
+	 * The first of several symmetric puzzles is kept.
+	 * @param puzzles  the rated puzzles in the order they were found in
+	 * @param seen  the hashes of the puzzles kept so far
+	 * @return the puzzles that were kept, in the same order
+	 */
+	private static PuzzleInfo[] dropDuplicates(PuzzleInfo[] puzzles, 
+			LongSet seen) {
+		ArrayList<PuzzleInfo> result = new ArrayList<PuzzleInfo>(puzzles.length);
+		for (PuzzleInfo puzzle : puzzles) {
+			if (seen.add(puzzle.hash)) {
+				result.add(puzzle);
+			}
+		}
+		return result.toArray(new PuzzleInfo[result.size()]);
+	}
+	
+	/**
+	 * Parses a puzzle string
+	 * @param puzzleString  the puzzle as space-delimited integers
+	 * @return the puzzle's spaces as a SIZE x SIZE matrix
+	 * @throws ParseException if the string isn't exactly one legal puzzle
+	 */
+	private static int[][] parsePuzzle(String puzzleString) 
+			throws ParseException {
+		int [][] puzzleInts = new int[ShinroPuzzle.SIZE][ShinroPuzzle.SIZE];
+		PuzzleParser parser = new PuzzleParser(ByteBuffer.wrap(
+				puzzleString.getBytes(StandardCharsets.US_ASCII)));
+		parser.readPuzzle(puzzleInts);
+		parser.expectEnd();
+		return puzzleInts;
+	}
+	
+	/**
+	 * Rates the difficulty of a puzzle, solving it unless the rater has its
+	 * solver profile cached
+	 * @param puzzleString  the puzzle as space-delimited integers
+	 * @param keepPuzzle  whether to keep the unsolved puzzle in the result
+	 * @return the puzzle's PuzzleInfo
+	 * @throws ParseException if the string isn't exactly one legal puzzle
+	 */
+	private static PuzzleInfo ratePuzzle(String puzzleString, boolean keepPuzzle)
+			throws ParseException {
+		
+		//read puzzle into a ShinroPuzzle so we can get get solver info
+		ShinroPuzzle shinroPuzzle = new ShinroPuzzle(parsePuzzle(puzzleString));
+		int[] solverInfo = rater.getProfile(shinroPuzzle);
+		
+		PuzzleInfo info = new PuzzleInfo(rater.rate(solverInfo), puzzleString, 
+				keepPuzzle ? shinroPuzzle : null, solverInfo);
+		info.hash = shinroPuzzle.getCanonicalHash();
+		return info;
+	}
+	
+	/**
+	 * Saves the rater's solver profiles and reports how many puzzles were solved
+	 * @param ratingsFile  the ratings cache or null if there is none
+	 * @throws IOException if the cache can't be written
+	 */
+	private static void saveRatings(File ratingsFile) throws IOException {
+		if (ratingsFile == null) {
+			return;
+		}
+		rater.save(ratingsFile);
+		System.out.println("Solved " + rater.getNumSolves() 
+				+ " puzzle(s) missing from the ratings cache " + ratingsFile);
+	}
+
+	/**
+	 * Builds the pack with an external merge sort
+	 * @param logs  the logs to read puzzles from or an empty list to read the
+	 * puzzle files in the working directory
+	 * @param runSize  the number of puzzles per sorted run
+	 * @param numThreads  the number of threads to rate the puzzles on
+	 * @param binary  whether to write a binary pack as well
+	 * @param filename  the file name of the pack
+	 * @throws IOException if a puzzle, a run or the pack can't be read or written
+	 */
+	private static void buildStreaming(ArrayList<File> logs, int runSize,
+			int numThreads, boolean binary, String filename) throws IOException {
+		File tempDir = Files.createTempDirectory("shinropack").toFile();
+		ArrayList<File> runs = new ArrayList<File>();
+		int numPuzzles = 0, numRead = 0;
+		try {
+			BloomFilter seen = new BloomFilter(new File(tempDir, "seen"), 
+					bloomBits(countSources(logs)), BLOOMHASHES);
+			SourceStream sources = new SourceStream(logs);
+			try {
+				ArrayList<Object> chunk = new ArrayList<Object>();
+				Object source;
+				do {
+					source = sources.next();
+					if (source != null) {
+						chunk.add(source);
+					}
+					if (chunk.size() == runSize 
+							|| (source == null && chunk.size() > 0)) {
+						File run = new File(tempDir, "run" + runs.size());
+						runs.add(run);
+						numRead += chunk.size();
+						numPuzzles += spillRun(chunk, numThreads, seen, run);
+						chunk.clear();
+					}
+				} while (source != null);
+			}
+			finally {
+				sources.close();
+			}
+			
+			if (numPuzzles > 0) {
+				System.out.println("Dropped " + numDuplicates 
+						+ " duplicate puzzle(s) and " + numPossibleDuplicates
+						+ " possible duplicate(s) that the Bloom filter can't tell "
+						+ "from new puzzles.");
+				mergeRuns(runs, numPuzzles, binary, filename);
+			}
+		}
+		finally {
+			for (File run : runs) {
+				run.delete();
+			}
+			new File(tempDir, "seen").delete();
+			tempDir.delete();
+		}
+		
+		if (numRead == 0) {
+			System.out.println("No shinro puzzle files in this directory. "
+					+ "Terminating.");
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Gets an upper bound on the number of puzzles the streaming build will read
+	 * @param logs  the logs to read puzzles from or an empty list to read the
+	 * puzzle files in the working directory
+	 * @return the number of puzzle files, or the number of the shortest records
+	 * that fit in the logs
+	 * @throws IOException if the working directory can't be listed
+	 */
+	private static long countSources(ArrayList<File> logs) throws IOException {
+		long count = 0;
+		if (logs.size() > 0) {
+			for (File log : logs) {
+				count += log.length() / MINLOGRECORD;
+			}
+			return count;
+		}
+		DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get("."),
+				"shinro*");
+		try {
+			for (Path path : dir) {
+				if (path.getFileName().toString().length() > 7) {
+					count++;
+				}
+			}
+		}
+		finally {
+			dir.close();
+		}
+		return count;
+	}
+	
+	/**
+	 * Sizes the Bloom filter of the streaming build
+	 * @param numSources  the most puzzles the filter will hold
+	 * @return the base 2 logarithm of the number of bits, giving every puzzle at
+	 * least BLOOMBITSPERPUZZLE bits, from MINBLOOMBITS to MAXBLOOMBITS
+	 */
+	private static int bloomBits(long numSources) {
+		long bits = Math.max(1, numSources) * BLOOMBITSPERPUZZLE;
+		int log2Bits = 64 - Long.numberOfLeadingZeros(bits - 1);
+		return Math.min(MAXBLOOMBITS, Math.max(MINBLOOMBITS, log2Bits));
+	}
+	
+	/**
+	 * Rates and sorts a run of puzzles and writes it to a temporary binary pack
+	 * <p>
+	 * Duplicates within the run are found exactly and added to numDuplicates.
+	 * Puzzles the Bloom filter takes for one in an earlier run are added to
+	 * numPossibleDuplicates.
+	 * @param chunk  the puzzle Files and puzzle Strings of the run
+	 * @param numThreads  the number of threads to rate the puzzles on
+	 * @param seen  the hashes of the puzzles in earlier runs
+	 * @param run  the file to write the run to
+	 * @return the number of puzzles in the run after dropping duplicates
+	 * @throws IOException if a puzzle can't be read or the run can't be written
+	 */
+	private static int spillRun(ArrayList<Object> chunk, int numThreads, 
+			LongSet seen, File run) throws IOException {
+		PuzzleInfo[] ratedPuzzles = ratePuzzles(chunk, numThreads, true, null);
+		PuzzleInfo[] runPuzzles = dropDuplicates(ratedPuzzles, 
+				new LongHashSet());
+		PuzzleInfo[] packPuzzles = dropDuplicates(runPuzzles, seen);
+		numDuplicates += ratedPuzzles.length - runPuzzles.length;
+		numPossibleDuplicates += runPuzzles.length - packPuzzles.length;
+		Arrays.parallelSort(packPuzzles);
+		PackWriter runWriter = new PackWriter(run, run.getName());
+		try {
+			for (PuzzleInfo puzzle : packPuzzles) {
+				runWriter.add(puzzle.puzzle, puzzle.difficulty, 
+						puzzle.solverInfo);
+			}
+		}
+		finally {
+			runWriter.close();
+		}
+		return packPuzzles.length;
+	}
+	
+	/**
+	 * Merges sorted runs into the pack
+	 * <p>
+	 * Puzzles of equal difficulty are taken from earlier runs first, so the pack
+	 * is in the same order as one sorted in memory.
+	 * @param runs  the run files, in the order they were written
+	 * @param numPuzzles  the total number of puzzles in the runs
+	 * @param binary  whether to write a binary pack as well
+	 * @param filename  the file name of the pack
+	 * @throws IOException if a run can't be read or the pack can't be written
+	 */
+	private static void mergeRuns(ArrayList<File> runs, int numPuzzles, 
+			boolean binary, String filename) throws IOException {
+		PriorityQueue<RunCursor> queue = new PriorityQueue<RunCursor>(
+				Math.max(1, runs.size()));
+		for (int i = 0; i < runs.size(); i++) {
+			RunCursor cursor = new RunCursor(new PackReader(runs.get(i)), i);
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+		
+		PrintWriter writer = new PrintWriter(filename);
+		PackWriter packWriter = binary 
+				? new PackWriter(new File(filename + BINARYSUFFIX), packName) 
+				: null;
+		try {
+			writer.println(packName);
+			writer.println("numPuzzles: " + numPuzzles);
+			StringBuilder puzzleString = new StringBuilder();
+			int puzzleCount = 1;
+			while (!queue.isEmpty()) {
+				RunCursor cursor = queue.poll();
+				puzzleString.setLength(0);
+				for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+					for (int col = 0; col < ShinroPuzzle.SIZE; col++) {
+						puzzleString.append(cursor.entry.atPos(row, col))
+								.append(' ');
+					}
+				}
+				writer.println("Puzzle " + puzzleCount++);
+				writer.println("difficulty " + cursor.entry.getDifficulty());
+				writer.println(puzzleString);
+				if (packWriter != null) {
+					packWriter.add(cursor.entry);
+				}
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+		}
+		finally {
+			writer.close();
+			if (packWriter != null) {
+				packWriter.close();
+			}
+		}
+		System.out.println("Created pack with " + numPuzzles + " puzzles from "
+				+ runs.size() + " run(s).");
+		if (binary) {
+			System.out.println("Created binary pack " + filename + BINARYSUFFIX);
+		}
+	}
+	
+	/* The position of the merge in a single run, ordered by the difficulty of
+	 * the current puzzle and then by run
+	 */
+	private static class RunCursor implements Comparable<RunCursor> {
+		PackReader reader;
+		PackReader.Entry entry;
+		int run, next;
+		
+		public RunCursor(PackReader reader, int run) {
+			this.reader = reader;
+			this.entry = new PackReader.Entry();
+			this.run = run;
+			this.next = 0;
+		}
+		
+		/* Moves to the next puzzle in the run; false if there is none */
+		boolean advance() {
+			if (this.next >= this.reader.size()) {
+				return false;
+			}
+			this.reader.get(this.next++, this.entry);
+			return true;
+		}
+
+		@Override
+		public int compareTo(RunCursor arg0) {
+			int d = this.entry.getDifficulty() - arg0.entry.getDifficulty();
+			return (d != 0) ? d : this.run - arg0.run;
+		}
+	}
+	
+	/* Hands out puzzle sources one at a time, either the puzzle files in the
+	 * working directory or the puzzle strings in a list of logs, so the streaming
+	 * build never holds a list of every puzzle.
+	 */
+	private static class SourceStream {
+		private ArrayList<File> logs;
+		private int nextLog;
+		private PuzzleLog.Reader log;
+		private DirectoryStream<Path> dir;
+		private Iterator<Path> files;
+		
+		public SourceStream(ArrayList<File> logs) throws IOException {
+			this.logs = logs;
+			this.nextLog = 0;
+			if (logs.size() == 0) {
+				this.dir = Files.newDirectoryStream(Paths.get("."), "shinro*");
+				this.files = this.dir.iterator();
+			}
+		}
+		
+		/* Gets the next puzzle File or puzzle String; null at the end */
+		Object next() throws IOException {
+			if (this.files != null) {
+				while (this.files.hasNext()) {
+					File file = this.files.next().toFile();
+					if (file.getName().length() > 7) {
+						return file;
+					}
+				}
+				return null;
+			}
+			while (true) {
+				if (this.log != null) {
+					PuzzleLog.Record record = this.log.next();
+					if (record != null) {
+						return record.puzzleString;
+					}
+					if (this.log.getDamaged() > 0) {
+						System.out.println("Skipped " + this.log.getDamaged() 
+								+ " damaged record(s) in " 
+								+ this.logs.get(this.nextLog - 1));
+					}
+					this.log.close();
+					this.log = null;
+				}
+				if (this.nextLog == this.logs.size()) {
+					return null;
+				}
+				this.log = new PuzzleLog.Reader(this.logs.get(this.nextLog++));
+			}
+		}
+		
+		void close() throws IOException {
+			if (this.dir != null) {
+				this.dir.close();
+			}
+			if (this.log != null) {
+				this.log.close();
+			}
+		}
+	}
 }
@@ -0,0 +1,28 @@
+package generator;
+
+import java.io.IOException;
+
+import shinro.ShinroPuzzle;
+
+/**
+ * A destination for puzzles produced by the generators
+ * <p>
+ * Implementations must be safe to use from several generator threads at once.
+ * @see PuzzleFileSink
+ * @see PuzzleLog
+ */
+public interface PuzzleSink {
+	/**
+	 * Writes a generated puzzle
+	 * @param name  the name of the puzzle, e.g. "shinro_999g_100f_2210552000"
+	 * @param puzzle  the puzzle to write
+	 * @throws IOException if the puzzle could not be written
+	 */
+	void write(String name, ShinroPuzzle puzzle) throws IOException;
+
+	/**
+	 * Makes sure every puzzle written so far is durable and releases any resources
+	 * @throws IOException if pending puzzles could not be written
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,245 @@
+package generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import shinro.GridPos;
+import shinro.PuzzleParser;
+import shinro.ShinroPuzzle;
+import shinro.ShinroSolver;
+
+/**
+ * A fixed corpus of puzzles with the output of the current ShinroSolver for each,
+ * to check rewrites of the solver against
+ * <p>
+ * The puzzles are random rather than generated, so the corpus is cheap to build
+ * and covers partial solves as well as complete ones. Each has 12 points and a
+ * random number of arrows that point at at least one point. Puzzles are kept by
+ * the hardest move the solver makes in them until there are QUOTA of every
+ * difficulty factor from 1 to 7, plus SOLVEDQUOTA puzzles the solver solves
+ * completely. The same seed always gives the same corpus.
+ * <p>
+ * The golden file starts with a comment line. Every other line holds a puzzle
+ * with its points in place, as space-delimited integers, then " : " and the
+ * ShinroSolver.ARRAYSIZE integers returned by {@link ShinroSolver#solve()}.
+ * <p>
+ * Usage: "java generator/RegressionCorpus [--seed n] [goldenFile]" writes the
+ * corpus, by default to GOLDENFILE with seed SEED. Only regenerate the golden
+ * file when a change to the solver's moves is intended. See
+ * {@link SolverRegression} for checking a solver against it.
+ */
+public class RegressionCorpus {
+	public static final String GOLDENFILE = "regression/solver.golden";
+	private static final long SEED = 2015L;
+	private static final int QUOTA = 400;
+	private static final int SOLVEDQUOTA = 600;
+	private static final int MINARROWS = 4, MAXARROWS = 20;
+	private static final int MAXPLACEMENTS = 500; //tries to place the arrows
+
+	/**
+	 * A puzzle of the corpus and its golden solver output
+	 */
+	public static class Entry {
+		public final String puzzleString;
+		public final int[] golden;
+
+		public Entry(String puzzleString, int[] golden) {
+			this.puzzleString = puzzleString;
+			this.golden = golden;
+		}
+
+		/**
+		 * Creates the puzzle of this entry
+		 * @return a new puzzle with its points in place and its headers set
+		 * @throws ParseException if the puzzle string isn't a legal puzzle
+		 */
+		public ShinroPuzzle toPuzzle() throws ParseException {
+			ShinroPuzzle puzzle = new ShinroPuzzle();
+			PuzzleParser parser = new PuzzleParser(ByteBuffer.wrap(
+					this.puzzleString.getBytes(StandardCharsets.US_ASCII)));
+			parser.readPuzzle(puzzle);
+			parser.expectEnd();
+			return puzzle;
+		}
+	}
+
+	/**
+	 * Generates a corpus
+	 * @param seed  the seed of the random puzzles
+	 * @return the entries of the corpus, in the order they were generated
+	 */
+	public static ArrayList<Entry> generate(long seed) {
+		Random rand = new Random(seed);
+		ArrayList<Entry> entries = new ArrayList<Entry>();
+		int[] numByFactor = new int[ShinroSolver.ARRAYSIZE - 1];
+		int numSolved = 0, needed = QUOTA * (numByFactor.length - 1) + SOLVEDQUOTA;
+		while (entries.size() < needed) {
+			ShinroPuzzle puzzle = randomPuzzle(rand);
+			int[] golden = new ShinroSolver(puzzle.clone()).solve().clone();
+			int factor = 0;
+			for (int i = 1; i < numByFactor.length; i++) {
+				if (golden[i] > 0) {
+					factor = i;
+				}
+			}
+			if (golden[golden.length - 1] == 1 && numSolved < SOLVEDQUOTA) {
+				numSolved++;
+			}
+			else if (factor > 0 && numByFactor[factor] < QUOTA) {
+				numByFactor[factor]++;
+			}
+			else {
+				continue;
+			}
+			entries.add(new Entry(PuzzleFileSink.toText(puzzle).trim(), golden));
+		}
+		return entries;
+	}
+
+	/**
+	 * Creates a random puzzle
+	 * @param rand  the random number generator
+	 * @return a puzzle with POINTS points, its headers set and between MINARROWS
+	 * and MAXARROWS arrows that each point at a point
+	 */
+	private static ShinroPuzzle randomPuzzle(Random rand) {
+		ShinroPuzzle puzzle = new ShinroPuzzle();
+		int size = ShinroPuzzle.SIZE;
+		for (int placed = 0; placed < ShinroPuzzle.POINTS; ) {
+			int space = rand.nextInt(size * size);
+			if (puzzle.atPos(space / size, space % size) == ShinroPuzzle.EMPTY) {
+				puzzle.setPos(space / size, space % size, ShinroPuzzle.POINT);
+				placed++;
+			}
+		}
+		int numArrows = MINARROWS + rand.nextInt(MAXARROWS - MINARROWS + 1);
+		for (int placed = 0, tries = 0; placed < numArrows
+				&& tries < MAXPLACEMENTS; tries++) {
+			int space = rand.nextInt(size * size);
+			int row = space / size, col = space % size;
+			int dir = ShinroPuzzle.N + rand.nextInt(ShinroPuzzle.NW);
+			if (puzzle.atPos(row, col) != ShinroPuzzle.EMPTY) {
+				continue;
+			}
+			puzzle.setPos(row, col, dir);
+			boolean pointless = true;
+			for (GridPos pos : puzzle.getArrowToEdge(row, col)) {
+				if (puzzle.atPos(pos) == ShinroPuzzle.POINT) {
+					pointless = false;
+				}
+			}
+			if (pointless) {
+				puzzle.setPos(row, col, ShinroPuzzle.EMPTY);
+			}
+			else {
+				placed++;
+			}
+		}
+		puzzle.setHeaders();
+		return puzzle;
+	}
+
+	/**
+	 * Reads a golden file
+	 * @param file  the golden file
+	 * @return the entries of the corpus, in file order
+	 * @throws IOException if the file can't be read or a line is malformed
+	 */
+	public static ArrayList<Entry> read(File file) throws IOException {
+		ArrayList<Entry> entries = new ArrayList<Entry>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			int lineNum = 0;
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				lineNum++;
+				if (line.startsWith("#") || line.trim().length() == 0) {
+					continue;
+				}
+				String[] parts = line.split(" : ");
+				String[] numbers = (parts.length == 2)
+						? parts[1].trim().split(" ") : new String[0];
+				if (numbers.length != ShinroSolver.ARRAYSIZE) {
+					throw new IOException(file + ": line " + lineNum
+							+ ": Expected a puzzle and " + ShinroSolver.ARRAYSIZE
+							+ " solver outputs");
+				}
+				int[] golden = new int[numbers.length];
+				try {
+					for (int i = 0; i < numbers.length; i++) {
+						golden[i] = Integer.parseInt(numbers[i]);
+					}
+				}
+				catch (NumberFormatException e) {
+					throw new IOException(file + ": line " + lineNum + ": "
+							+ e.getMessage());
+				}
+				entries.add(new Entry(parts[0].trim(), golden));
+			}
+		}
+		finally {
+			in.close();
+		}
+		return entries;
+	}
+
+	/**
+	 * Writes a golden file
+	 * @param file  the golden file
+	 * @param entries  the entries of the corpus
+	 * @param seed  the seed the corpus was generated with, for the comment line
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(File file, ArrayList<Entry> entries, long seed)
+			throws IOException {
+		PrintWriter out = new PrintWriter(file);
+		out.println("# ShinroSolver regression corpus, seed " + seed + ", "
+				+ entries.size() + " puzzles");
+		for (Entry entry : entries) {
+			out.print(entry.puzzleString);
+			out.print(" :");
+			for (int value : entry.golden) {
+				out.print(" " + value);
+			}
+			out.println();
+		}
+		out.close();
+		if (out.checkError()) {
+			throw new IOException("could not write " + file);
+		}
+	}
+
+	public static void main(String[] args) {
+		long seed = SEED;
+		File file = new File(GOLDENFILE);
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--seed") && i + 1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			}
+			else {
+				file = new File(args[i]);
+			}
+		}
+		System.out.println("Generating regression corpus with seed " + seed
+				+ "...");
+		ArrayList<Entry> entries = generate(seed);
+		try {
+			if (file.getParentFile() != null) {
+				file.getParentFile().mkdirs();
+			}
+			write(file, entries, seed);
+		}
+		catch (IOException e) {
+			System.out.println("IO Error: " + e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("Wrote " + entries.size() + " puzzles to " + file);
+	}
+}
@@ -0,0 +1,169 @@
+package generator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Collects the puzzles of many generator threads, dropping duplicates and
+ * keeping every bucket within its quota
+ * <p>
+ * A bucket is whatever the caller sorts puzzles by, such as the difficulty
+ * factor they were generated for, and each one has a quota of puzzles. A puzzle
+ * is accepted only if no puzzle with the same canonical hash was offered before
+ * and its bucket isn't full, so an accepted puzzle is one that will be kept.
+ * <p>
+ * Bucket counts are claimed with a compare-and-set and never go past the
+ * quota, so no locks are taken for them. The hashes are kept in STRIPES
+ * {@link LongHashSet}s, each with its own lock, so threads only wait for each
+ * other when two hashes land in the same stripe at the same time. Workers poll
+ * {@link #isFull(int)} to give up on a bucket as soon as it fills, and
+ * {@link #retarget(int)} to find a bucket that still needs puzzles.
+ * <p>
+ * A puzzle offered to a full bucket is not recorded, unless the bucket filled
+ * while the puzzle was being checked for duplicates. In that case the puzzle
+ * counts as seen even though it wasn't accepted.
+ */
+class ResultCollector {
+	private final int[] quotas;
+	private final AtomicIntegerArray counts;
+	private final AtomicInteger numOpen, numDuplicates;
+	private final LongHashSet[] stripes;
+
+	static final int ACCEPTED = 0;
+	static final int DUPLICATE = 1;
+	static final int FULL = 2;
+
+	private static final int STRIPEBITS = 6;
+	private static final int STRIPES = 1 << STRIPEBITS;
+
+	/**
+	 * Creates a collector
+	 * @param quotas  the number of puzzles wanted in each bucket. A bucket with a
+	 * quota of zero is full from the start
+	 * @throws IllegalArgumentException if a quota is negative
+	 */
+	ResultCollector(int[] quotas) throws IllegalArgumentException {
+		int open = 0;
+		for (int quota : quotas) {
+			if (quota < 0) {
+				throw new IllegalArgumentException("ResultCollector: Illegal "
+						+ "quota --> " + quota);
+			}
+			if (quota > 0) {
+				open++;
+			}
+		}
+		this.quotas = quotas.clone();
+		this.counts = new AtomicIntegerArray(quotas.length);
+		this.numOpen = new AtomicInteger(open);
+		this.numDuplicates = new AtomicInteger();
+		this.stripes = new LongHashSet[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			this.stripes[i] = new LongHashSet();
+		}
+	}
+
+	/**
+	 * Offers a puzzle to a bucket
+	 * @param hash  the puzzle's canonical hash. See
+	 * {@link shinro.ShinroPuzzle#getCanonicalHash()}
+	 * @param bucket  the bucket the puzzle belongs in
+	 * @return ACCEPTED if the puzzle should be kept, DUPLICATE if it was offered
+	 * before or FULL if its bucket is full
+	 */
+	int offer(long hash, int bucket) {
+		if (this.isFull(bucket)) {
+			return FULL;
+		}
+		LongHashSet stripe = this.stripes[stripe(hash)];
+		synchronized (stripe) {
+			if (!stripe.add(hash)) {
+				this.numDuplicates.incrementAndGet();
+				return DUPLICATE;
+			}
+		}
+		while (true) {
+			int count = this.counts.get(bucket);
+			if (count >= this.quotas[bucket]) {
+				return FULL;
+			}
+			if (this.counts.compareAndSet(bucket, count, count + 1)) {
+				if (count + 1 == this.quotas[bucket]) {
+					this.numOpen.decrementAndGet();
+				}
+				return ACCEPTED;
+			}
+		}
+	}
+
+	/**
+	 * Tests whether a bucket has all the puzzles it needs
+	 * @param bucket  the bucket
+	 * @return true if puzzles offered to the bucket will be turned away
+	 */
+	boolean isFull(int bucket) {
+		return this.counts.get(bucket) >= this.quotas[bucket];
+	}
+
+	/**
+	 * Tests whether every bucket is full
+	 * @return true if there is nothing left to generate
+	 */
+	boolean isDone() {
+		return this.numOpen.get() == 0;
+	}
+
+	/**
+	 * Finds a bucket for a worker to generate puzzles for
+	 * @param bucket  the worker's current bucket
+	 * @return the current bucket if it isn't full, otherwise the next bucket
+	 * after it that isn't, or -1 if every bucket is full
+	 */
+	int retarget(int bucket) {
+		for (int i = 0; i < this.quotas.length; i++) {
+			int candidate = (bucket + i) % this.quotas.length;
+			if (!this.isFull(candidate)) {
+				return candidate;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the number of puzzles accepted into a bucket
+	 * @param bucket  the bucket
+	 * @return the number of accepted puzzles, at most the bucket's quota
+	 */
+	int getAccepted(int bucket) {
+		return this.counts.get(bucket);
+	}
+
+	/**
+	 * Gets the number of puzzles accepted into every bucket
+	 * @return the total number of accepted puzzles
+	 */
+	int getTotalAccepted() {
+		int total = 0;
+		for (int i = 0; i < this.quotas.length; i++) {
+			total += this.counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Gets the number of duplicate puzzles turned away
+	 * @return the number of offers that returned DUPLICATE
+	 */
+	int getNumDuplicates() {
+		return this.numDuplicates.get();
+	}
+
+	/**
+	 * Gets the stripe a hash is kept in
+	 * @param hash  the hash
+	 * @return the index of the stripe
+	 */
+	private static int stripe(long hash) {
+		return (int)((hash * 0x9E3779B97F4A7C15L) >>> (64 - STRIPEBITS));
+	}
+}
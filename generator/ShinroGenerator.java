@@ -2,13 +2,11 @@ package generator;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.Random;
 
-import shinro.GridPos;
 import shinro.ShinroPuzzle;
 import shinro.ShinroSolver;
+import shinro.SolverMetrics;
 
 /**
  * Generates shinro puzzles and outputs them to a plain text file.
@@ -62,26 +60,146 @@ public class ShinroGenerator {
 	private static final int MINOFDIFFICULTYCAP = 8;
 	
 	//constraint constants
-	private static final int POPULATIONSIZE = 10;
-	private static final int TOURNAMENTSIZE = 3;
+	private static int populationSize = 10; //see setPopulation
+	private static int tournamentSize = 3;
 	private static final int NUMPOINTS = 12;
 	//private static final double SYMMETRYRATE = 0f;  //DISABLED
 	//private static final double CLUSTERRATE = 0f;   //DISABLED
 	
+	//checkpointing
+	private static final String CHECKPOINTFILE = "generator.checkpoint";
+	private static final int CHECKPOINTINTERVAL = 100; //generations
+	private static GeneratorCheckpoint.Writer checkpointWriter = null;
+	
+	//where generated puzzles go
+	private static PuzzleSink sink = new PuzzleFileSink(new File("."));
+	
 	//other constants
 	private static final int PUZZSIZE = ShinroPuzzle.SIZE;
 	
-	//fitness class
-	private static class Fitness {
-		double value;
-		int[] solverInfo;
+	/* java.util.Random with its state exposed so a run can be checkpointed. This
+	 * is the same linear congruential generator that Random uses.
+	 */
+	private static class GeneratorRandom extends Random {
+		private static final long serialVersionUID = 1L;
+		private static final long MULTIPLIER = 0x5DEECE66DL, ADDEND = 0xBL,
+				MASK = (1L << 48) - 1;
+		private long state;
+		
+		@Override
+		public synchronized void setSeed(long seed) {
+			this.state = (seed ^ MULTIPLIER) & MASK;
+		}
 		
-		public Fitness() {
-			this.value = 0f;
-			this.solverInfo = new int[ShinroSolver.ARRAYSIZE];
+		@Override
+		protected int next(int bits) {
+			this.state = (this.state * MULTIPLIER + ADDEND) & MASK;
+			return (int)(this.state >>> (48 - bits));
 		}
 		
+		long getState() {
+			return this.state;
+		}
+		
+		void setState(long state) {
+			this.state = state;
+		}
+	}
+	
+	private static GeneratorRandom rand = new GeneratorRandom();
+	
+	/* Gives up on a budgeted solve once the moves made so far guarantee that the
+	 * final fitness can't reach the threshold. There is only one, so budgeted
+	 * solves don't allocate.
+	 */
+	private static class FitnessBudget implements ShinroSolver.GiveUpCondition {
+		int structuralError;
+		double threshold;
+		
+		@Override
+		public boolean shouldGiveUp(int[] numMovesByDifficulty) {
+			//both move counts only ever grow, so overshooting is permanent
+			int leastError = this.structuralError
+					+ Math.max(0, numMovesByDifficulty[0] - minMoves)
+					+ Math.max(0, numMovesByDifficulty[difficultyFactor] 
+							- minOfDifficulty);
+			return 1.0 / (1.0 + leastError) < this.threshold;
+		}
+	}
+	
+	private static final FitnessBudget budget = new FitnessBudget();
+	
+	//every genome is copied into toSolve and solved by the same solver
+	private static final ShinroPuzzle toSolve = new ShinroPuzzle();
+	private static final ShinroSolver solver = new ShinroSolver();
+	
+	static {
+		solver.setPuzzle(toSolve);
 	}
+
+	/* A population and the next one, so that generations can be run one at a 
+	 * time outside of generatePuzzle, as the benchmarks do
+	 */
+	static class Generation {
+		Population population;
+		private Population next;
+
+		/* Seeds the generator and creates a random initial population */
+		Generation(long seed) {
+			rand.setSeed(seed);
+			resetMutationRates();
+			this.population = initPopulation();
+			this.next = new Population(this.population.size());
+			for (int i = 0; i < this.population.size(); i++) {
+				calcFitness(this.population, i);
+			}
+		}
+
+		/* Replaces the population with the next generation */
+		void next() {
+			nextGeneration(this.population, this.next);
+			Population previous = this.population;
+			this.population = this.next;
+			this.next = previous;
+		}
+
+		/* Gets the fitness value of the elite genome */
+		double getEliteFitness() {
+			return this.population.fitness[this.population.getElite()];
+		}
+	}
+
+	//adaptive mutation selection, see chooseMutation
+	static final int NUMMUTATIONS = 6;
+	private static final double MINMUTATIONRATE = 0.05;
+	private static final int MUTATIONWINDOW = 2000; //mutants between decays
+	private static boolean adaptiveMutation = true;
+	private static final int[] numMutantsTried = new int[NUMMUTATIONS];
+	private static final int[] numMutantsImproved = new int[NUMMUTATIONS];
+	private static final double[] mutationRates = new double[NUMMUTATIONS];
+	private static int numSinceDecay = 0;
+	private static int lastMutation = 0;
+	
+	//tiered screening of mutants that may still be rejected, see screenMutant
+	private static final int MAXMUTATIONATTEMPTS = 3;
+	private static final int NUMTIERS = 3;
+	private static final int STORETIER = GeneratorMetrics.STORETIER;
+	private static final int PROPAGATIONDIFFICULTY = 3;
+	private static final long[] numScreened = new long[NUMTIERS + 1];
+	private static final long[] numScreenRejected = new long[NUMTIERS + 1];
+	
+	//solves, and budgeted solves that gave up, see FitnessBudget
+	private static int numSolves = 0, numEarlyExits = 0;
+	
+	//solver results kept between runs, see --store
+	private static SolverStore store = null;
+	private static final int[] storedInfo = new int[Population.INFOSIZE];
+	private static int numStoreLookups = 0, numStoreHits = 0;
+	
+	//periodic solver metrics log, see --metrics
+	private static final long METRICSINTERVAL = 10000000000L; //nanoseconds
+	private static long lastMetricsTime = System.nanoTime();
+	private static SolverMetrics.Snapshot lastMetrics = null;
 	
 	/**
 	 * Method which calculates the clustering function for a given puzzle
@@ -109,28 +227,216 @@ public class ShinroGenerator {
 	*/
 	
 	/**
-	 * Calculates the fitness of a ShinroPuzzle based on the selection parameters
+	 * Calculates the fitness of a genome based on the selection parameters
 	 * <p>
 	 * Fitness scores are based on the results of the solver. See
-	 * {@link shinro.ShinroSolver} for more details.
-	 * @see #epsilon(ShinroPuzzle, int)
-	 * @param puzzle  the puzzle whose fitness is to be calculated
-	 * @return a double representing the fitness of the puzzle
+	 * {@link shinro.ShinroSolver} for more details. The genome's hash, number of
+	 * pointless arrows, solver info and fitness are stored in the population.
+	 * @see #epsilon(Population, int)
+	 * @param population  the population of the genome
+	 * @param genome  the index of the genome whose fitness is to be calculated
+	 */
+	private static void calcFitness(Population population, int genome) {
+		population.numPointless[genome] = population.countPointlessArrows(genome);
+		population.calcHash(genome);
+		solveFitness(population, genome);
+	}
+	
+	/**
+	 * Gets the error contributed by the structural (non-solver) terms
+	 * @param population  the population of the genome
+	 * @param genome  the index of the genome
+	 * @return the point count error plus the number of pointless arrows
+	 */
+	private static int structuralError(Population population, int genome) {
+		return Math.abs(NUMPOINTS - population.getNumPoints(genome)) 
+				+ population.numPointless[genome];
+	}
+	
+	/**
+	 * Determines whether a mutant is strictly worse than its parent based on the 
+	 * structural terms alone
+	 * <p>
+	 * At best, the solver terms add nothing to epsilon's denominator, so the
+	 * mutant's fitness can never exceed 1 / (1 + structural error).
+	 * @param mutants  the population of the mutant
+	 * @param mutant  the index of the mutant, whose number of pointless arrows is
+	 * set
+	 * @param parentFitness  the fitness value of the mutant's parent
+	 * @return true if the mutant cannot possibly match its parent's fitness
+	 */
+	private static boolean isStrictlyWorse(Population mutants, int mutant,
+			double parentFitness) {
+		return 1.0 / (1.0 + structuralError(mutants, mutant)) < parentFitness;
+	}
+	
+	/**
+	 * Runs the solver on a genome and completes its fitness
+	 * <p>
+	 * A genome whose solver info is in the store isn't solved again.
+	 * @param population  the population of the genome
+	 * @param genome  the index of the genome, whose number of pointless arrows and
+	 * hash are set
+	 */
+	private static void solveFitness(Population population, int genome) {
+		int[] solverInfo = lookUpSolverInfo(population, genome);
+		if (solverInfo == null) {
+			population.copyToPuzzle(genome, toSolve);
+			solver.reset();
+			solverInfo = solver.solve();
+			numSolves++;
+			GeneratorMetrics.countSolve();
+			storeSolverInfo(population, genome, solverInfo);
+		}
+		finishFitness(population, genome, solverInfo);
+	}
+	
+	/**
+	 * Looks up the solver info of a genome in the store, if there is one
+	 * @param population  the population of the genome
+	 * @param genome  the index of the genome, whose hash is set
+	 * @return the stored solver info, or null if the genome has to be solved
+	 */
+	private static int[] lookUpSolverInfo(Population population, int genome) {
+		if (store == null) {
+			return null;
+		}
+		numStoreLookups++;
+		if (!store.get(population.hashes[genome], storedInfo)) {
+			return null;
+		}
+		numStoreHits++;
+		return storedInfo;
+	}
+	
+	/**
+	 * Adds the solver info of a complete solve of a genome to the store, if there
+	 * is one
+	 * <p>
+	 * A store that can't be locked is closed and the run carries on without it.
+	 * @param population  the population of the genome
+	 * @param genome  the index of the genome, whose hash is set
+	 * @param solverInfo  the solver info of the genome
+	 */
+	private static void storeSolverInfo(Population population, int genome,
+			int[] solverInfo) {
+		if (store == null) {
+			return;
+		}
+		try {
+			store.put(population.hashes[genome], solverInfo);
+		}
+		catch (IOException e) {
+			System.out.println("Could not write to solver store: " 
+					+ e.getMessage());
+			closeStore();
+		}
+	}
+	
+	/**
+	 * Screens a mutant in tiers of increasing cost and completes its fitness if 
+	 * it passes them all
+	 * <p>
+	 * The tiers are:
+	 * <ul>
+	 * <li> 0: the structural terms alone show the mutant can't match its parent.
+	 * See {@link #isStrictlyWorse(Population, int, double)}
+	 * <li> 1: the solver's easiest strategies, up to PROPAGATIONDIFFICULTY, 
+	 * make more moves than the final fitness could beat the parent with
+	 * <li> 2: a budgeted solve picks up where tier 1 left off. The solver gives up
+	 * as soon as the moves made so far guarantee that the final fitness can't 
+	 * exceed the parent's
+	 * </ul>
+	 * The budget depends only on the moves made, never on how long the solve 
+	 * takes, so a seeded run always evaluates its mutants the same way.
+	 * The solver tries its easiest strategies first anyway, so tier 1 is the start
+	 * of the solve rather than extra work, and a mutant that passes every tier
+	 * gets the same fitness as a solve from scratch would give it.
+	 * <p>
+	 * A mutant whose solver info is in the store skips tiers 1 and 2 and is
+	 * counted under STORETIER instead. It is rejected if its stored move counts
+	 * would have made the budgeted solve give up, which is what tiers 1 and 2
+	 * would have found.
+	 * @see ShinroSolver#propagate(int)
+	 * @see ShinroSolver#solve(int, long, ShinroSolver.GiveUpCondition)
+	 * @param mutants  the population of the mutant
+	 * @param mutant  the index of the mutant, whose number of pointless arrows is
+	 * set
+	 * @param parentFitness  the fitness value of the mutant's parent
+	 * @return true if the fitness was completed, false if the mutant was rejected
 	 */
-	private static Fitness calcFitness(ShinroPuzzle puzzle) {
-		Fitness fitness = new Fitness();
-		ShinroPuzzle toSolve = puzzle.clone();
-		ShinroSolver solver = new ShinroSolver(toSolve);
-		fitness.solverInfo = solver.solve();
+	private static boolean screenMutant(Population mutants, int mutant,
+			double parentFitness) {
+		numScreened[0]++;
+		GeneratorMetrics.countScreened(0);
+		if (isStrictlyWorse(mutants, mutant, parentFitness)) {
+			numScreenRejected[0]++;
+			GeneratorMetrics.countScreenRejected(0);
+			return false;
+		}
 		
-		fitness.value = epsilon(puzzle, fitness.solverInfo);
-		fitness.value *= 1 - (1 / (1 + fitness.solverInfo[difficultyFactor]));
+		budget.structuralError = structuralError(mutants, mutant);
+		budget.threshold = parentFitness;
+		int[] solverInfo = lookUpSolverInfo(mutants, mutant);
+		if (solverInfo != null) {
+			numScreened[STORETIER]++;
+			GeneratorMetrics.countScreened(STORETIER);
+			if (budget.shouldGiveUp(solverInfo)) {
+				numScreenRejected[STORETIER]++;
+				GeneratorMetrics.countScreenRejected(STORETIER);
+				return false;
+			}
+			finishFitness(mutants, mutant, solverInfo);
+			return true;
+		}
+		
+		numScreened[1]++;
+		GeneratorMetrics.countScreened(1);
+		mutants.copyToPuzzle(mutant, toSolve);
+		solver.reset();
+		solverInfo = solver.propagate(PROPAGATIONDIFFICULTY);
+		if (budget.shouldGiveUp(solverInfo)) {
+			numScreenRejected[1]++;
+			GeneratorMetrics.countScreenRejected(1);
+			return false;
+		}
+		
+		numScreened[2]++;
+		GeneratorMetrics.countScreened(2);
+		solverInfo = solver.solve(Integer.MAX_VALUE, Long.MAX_VALUE, budget);
+		numSolves++;
+		GeneratorMetrics.countSolve();
+		if (solver.isEarlyExit()) {
+			numEarlyExits++;
+			numScreenRejected[2]++;
+			GeneratorMetrics.countScreenRejected(2);
+			return false;
+		}
+		storeSolverInfo(mutants, mutant, solverInfo);
+		finishFitness(mutants, mutant, solverInfo);
+		return true;
+	}
+	
+	/**
+	 * Calculates the fitness value from the structural terms and solver info
+	 * @param population  the population of the genome
+	 * @param genome  the index of the genome, whose number of pointless arrows is
+	 * set
+	 * @param solverInfo  the solver info of the genome, which is copied into the
+	 * population
+	 */
+	private static void finishFitness(Population population, int genome,
+			int[] solverInfo) {
+		System.arraycopy(solverInfo, 0, population.solverInfo, 
+				genome * Population.INFOSIZE, Population.INFOSIZE);
+		double value = epsilon(population, genome);
+		value *= 1 - (1 / (1 + solverInfo[difficultyFactor]));
 		
 		/*if (cluster) {
-			fitness.value *= (1 - (1 / (1 + calcClustering(puzzle))));
+			value *= (1 - (1 / (1 + calcClustering(puzzle))));
 		}*/
 		
-		return fitness;
+		population.fitness[genome] = value;
 	}
 	
 	/**
@@ -205,24 +511,6 @@ public class ShinroGenerator {
 	}
 	*/
 	
-	/**
-	 * Counts the number of pointless arrows in a given puzzle
-	 * <p>
-	 * Pointless arrows do not have any point along their path
-	 * @param puzzle  the puzzle whose number of pointless arrows is to be calculated
-	 * @return the number of pointless arrows in the puzzle
-	 */
-	private static int countPointlessArrows(ShinroPuzzle puzzle) {
-		int count = 0;
-		for (GridPos arrow : puzzle.getListByType(ShinroPuzzle.N)) { //any arrow
-			if (puzzle.getTypeInList(ShinroPuzzle.POINT,
-					puzzle.getArrowToEdge(arrow)).size() == 0) {
-				count++;
-			}
-		}
-		return count;
-	}
-	
 	/**
 	 * Counts the number of nonsymmetrical spaces in a given puzzle
 	 * <p>
@@ -263,19 +551,20 @@ public class ShinroGenerator {
 	*/
 	
 	/**
-	 * Calculates the normalized error count of a specific puzzle
-	 * @param puzzle  the puzzle whose epsilon value is to be calculated
-	 * @param totalMoves  the total number of moves it took to solve the puzzle
-	 * @return a double representing the normalized error count of the puzzle
+	 * Calculates the normalized error count of a specific genome
+	 * @param population  the population of the genome
+	 * @param genome  the index of the genome, whose number of pointless arrows and
+	 * solver info are set
+	 * @return a double representing the normalized error count of the genome
 	 */
-	private static double epsilon(ShinroPuzzle puzzle, int[] solverInfo) {
+	private static double epsilon(Population population, int genome) {
+		int info = genome * Population.INFOSIZE;
 		double denominator = 
 				1.0
-				+ Math.abs(NUMPOINTS 
-						- puzzle.getListByType(ShinroPuzzle.POINT).size())
-				+ countPointlessArrows(puzzle)
-				+ Math.abs((minMoves) - solverInfo[0])
-				+ Math.abs(minOfDifficulty - solverInfo[difficultyFactor]);
+				+ structuralError(population, genome)
+				+ Math.abs((minMoves) - population.solverInfo[info])
+				+ Math.abs(minOfDifficulty 
+						- population.solverInfo[info + difficultyFactor]);
 		/*if (symmetry) {
 			denominator += countNonsymmetrical(puzzle);
 		}*/
@@ -292,17 +581,59 @@ public class ShinroGenerator {
 	 * change in the puzzle's fitness or the algorithm exceeds MAXGENERATIONS while
 	 * the fitness value is less than MINFITNESS. If the best-generated puzzle is 
 	 * invalid, the algorithm will continue until a valid puzzle is generated.
-	 * @see #printStatsWritePuzzle(ShinroPuzzle, int, double)
-	 * @return the generated puzzle
+	 * @see #printStatsWritePuzzle(Population, int, int)
+	 * @return the generated puzzle or null if the algorithm converged on an 
+	 * unsolvable puzzle
 	 */
 	public static ShinroPuzzle generatePuzzle() {
-		ShinroPuzzle[] population = initPopulation();
-		ShinroPuzzle elite = new ShinroPuzzle();
-		Fitness prevFitness, newFitness;
-		int noImprovementCount = 0, numGenerations = 0;
+		return generatePuzzle(null);
+	}
+	
+	/**
+	 * Generates a new ShinroPuzzle, optionally resuming an earlier run
+	 * <p>
+	 * If checkpointing is enabled, a checkpoint is handed to a background writer
+	 * every CHECKPOINTINTERVAL generations.
+	 * @see #generatePuzzle()
+	 * @param resume  the checkpoint to resume from or null to start a new run. The
+	 * targets, tournament size and mutation settings stored in the checkpoint
+	 * replace the current ones.
+	 * @return the generated puzzle or null if the algorithm converged on an 
+	 * unsolvable puzzle
+	 */
+	static ShinroPuzzle generatePuzzle(GeneratorCheckpoint resume) {
+		Population population, next;
+		double prevFitness, newFitness = 0;
+		int noImprovementCount = 0, numGenerations = 0, elite = 0;
 		
-		prevFitness = new Fitness();
-		newFitness = new Fitness();
+		if (resume != null) {
+			setTargets(resume.minMoves, resume.difficultyFactor, 
+					resume.minOfDifficulty);
+			population = resume.getPopulation();
+			setPopulation(population.size(), resume.tournamentSize);
+			numGenerations = resume.numGenerations;
+			noImprovementCount = resume.noImprovementCount;
+			rand.setState(resume.randomState);
+			adaptiveMutation = resume.adaptiveMutation;
+			System.arraycopy(resume.numMutantsTried, 0, numMutantsTried, 0, 
+					NUMMUTATIONS);
+			System.arraycopy(resume.numMutantsImproved, 0, numMutantsImproved, 0,
+					NUMMUTATIONS);
+			numSinceDecay = resume.numSinceDecay;
+			System.out.println("Resuming from generation " + numGenerations);
+		}
+		else {
+			population = initPopulation();
+			resetMutationRates();
+		}
+		next = new Population(population.size());
+		
+		for (int i = 0; i < population.size(); i++) {
+			calcFitness(population, i);
+		}
+		if (resume != null) {
+			newFitness = population.fitness[population.getElite()];
+		}
 		
 		System.out.println("Generating puzzle...");
 		System.out.println("Target moves: " + minMoves + ", Target difficulty: "
@@ -311,49 +642,62 @@ public class ShinroGenerator {
 		
 		while (true) {
 			prevFitness = newFitness;
-			population = nextGeneration(population);
+			Object event = FlightRecorderEvents.beginGeneration();
+			nextGeneration(population, next);
+			Population previous = population;
+			population = next;
+			next = previous;
 			numGenerations++;
-			elite = getElite(population);
-			newFitness = calcFitness(elite);
+			logSolverMetrics();
+			elite = population.getElite();
+			newFitness = population.fitness[elite];
+			FlightRecorderEvents.endGeneration(event, numGenerations, 
+					newFitness, noImprovementCount);
+			for (int i = 0; i < population.size(); i++) {
+				GeneratorMetrics.countFitness(population.fitness[i]);
+			}
+			GeneratorMetrics.countGeneration(newFitness);
 			
 			//Terminating conditions
 			if (noImprovementCount > maxNoImprovement 
-					|| newFitness.value == 1.0) {
+					|| newFitness == 1.0) {
+				boolean solvable = population.solverInfo[
+						(elite + 1) * Population.INFOSIZE - 1] != 0;
 				//if the puzzle is invalid
-				if (newFitness.value == 0.0 
-						|| (elite.getListByType(ShinroPuzzle.POINT).size() 
-								!= NUMPOINTS)
-						|| (countPointlessArrows(elite) > 0)
+				if (newFitness == 0.0 
+						|| (population.getNumPoints(elite) != NUMPOINTS)
+						|| (population.numPointless[elite] > 0)
 						//|| (symmetry && countNonsymmetrical(elite) > 0)
-						|| (newFitness.solverInfo[newFitness.solverInfo.length - 1]
-								== 0)) {
+						|| !solvable) {
 					System.out.print("Invalid puzzle: ");
-					if (newFitness.value == 0.0) {
+					if (newFitness == 0.0) {
 						System.out.print("of zero fitness.");
+						GeneratorMetrics.countRestart(GeneratorMetrics.ZEROFITNESS);
 					}
-					else if (elite.getListByType(ShinroPuzzle.POINT).size() 
-							!= NUMPOINTS) {
+					else if (population.getNumPoints(elite) != NUMPOINTS) {
 						System.out.print("continuing because there aren't the right "
 								+ "number of points.");
+						GeneratorMetrics.countRestart(GeneratorMetrics.POINTCOUNT);
 					}
-					else if (countPointlessArrows(elite) > 0) {
+					else if (population.numPointless[elite] > 0) {
 						System.out.print("continuing because there are pointless "
 								+ "arrows.");
+						GeneratorMetrics.countRestart(
+								GeneratorMetrics.POINTLESSARROWS);
 					}
 					/*else if (symmetry && countNonsymmetrical(elite) > 0) {
 						System.out.print("continuing because of lack of required "
 								+ "symmetry.");
 					}*/
-					else if (newFitness.solverInfo[newFitness.solverInfo.length - 1]
-							== 0 && newFitness.value < MINFITNESS) {
+					else if (!solvable && newFitness < MINFITNESS) {
 						System.out.print("the puzzle generated is not solvable.");
+						GeneratorMetrics.countRestart(GeneratorMetrics.UNSOLVABLE);
 						
 					}
-					else if (newFitness.solverInfo[newFitness.solverInfo.length - 1]
-							== 0 && newFitness.value == 1.0) {
+					else if (!solvable && newFitness == 1.0) {
 						System.out.print("the puzzle generated was not solvable. "
-								+ "Terminating.");
-						System.exit(1);
+								+ "Terminating.\n");
+						return null;
 						
 					}
 					System.out.print("\n");
@@ -364,40 +708,35 @@ public class ShinroGenerator {
 				break; //terminate algorithm
 			}
 			//Update to approach termination
-			if (prevFitness.value == newFitness.value) {
+			if (prevFitness == newFitness) {
 				noImprovementCount++;
 			}
 			else {
 				noImprovementCount = 0;
-				System.out.println("Fitness: " + newFitness.value);
+				System.out.println("Fitness: " + newFitness);
+			}
+			
+			if (checkpointWriter != null 
+					&& numGenerations % CHECKPOINTINTERVAL == 0) {
+				GeneratorCheckpoint checkpoint = new GeneratorCheckpoint(population);
+				checkpoint.minMoves = minMoves;
+				checkpoint.difficultyFactor = difficultyFactor;
+				checkpoint.minOfDifficulty = minOfDifficulty;
+				checkpoint.numGenerations = numGenerations;
+				checkpoint.noImprovementCount = noImprovementCount;
+				checkpoint.randomState = rand.getState();
+				checkpoint.adaptiveMutation = adaptiveMutation;
+				checkpoint.numSinceDecay = numSinceDecay;
+				checkpoint.numMutantsTried = numMutantsTried.clone();
+				checkpoint.numMutantsImproved = numMutantsImproved.clone();
+				checkpoint.tournamentSize = tournamentSize;
+				checkpointWriter.offer(checkpoint);
 			}
 		}
 		
-		printStatsWritePuzzle(elite, numGenerations, newFitness);
+		printStatsWritePuzzle(population, elite, numGenerations);
 		
-		return elite;
-	}
-	
-	/**
-	 * Gets the elite genome in a given population
-	 * @see #calcFitness(ShinroPuzzle)
-	 * @param population  the population in which to find the elite genome
-	 * @return the genome in the pouplation with the highest fitness value.
-	 */
-	private static ShinroPuzzle getElite(ShinroPuzzle[] population) {
-		ShinroPuzzle elite = population[0];
-		Fitness currentFitness, bestFitness;
-		currentFitness = new Fitness();
-		bestFitness = new Fitness();
-		
-		for (int i = 0; i < population.length; i++) {
-			currentFitness = calcFitness(population[i]);
-			if (currentFitness.value > bestFitness.value) {
-				bestFitness = currentFitness;
-				elite = population[i];
-			}
-		}		
-		return elite;
+		return population.toPuzzle(elite);
 	}
 	
 	/**
@@ -406,45 +745,141 @@ public class ShinroGenerator {
 	 * For every space each genome, either an empty space, random arrow, or point
 	 * is assigned with equal probability. Pointless arrows are removed to facilitate
 	 * the generation of valid puzzles.
-	 * @return an array of ShinroPuzzles of size POPULATIONSIZE which contains the
-	 * newly-encoded genomes.
-	 */
-	private static ShinroPuzzle[] initPopulation() {
-		Random rand = new Random();
-		ShinroPuzzle[] population = new ShinroPuzzle[POPULATIONSIZE];
-		for (int i = 0; i < population.length; i++) {
-			population[i] = new ShinroPuzzle();
-			for (int row = 0; row < PUZZSIZE; row++) {
-				for (int col = 0; col < PUZZSIZE; col++) {
-					try {
-						//randomly assign an blank space, POINT, or arrow					
-						switch (rand.nextInt(3)) {
-						case 0: //population[i].setPos(row, col, ShinroPuzzle.EMPTY);
-								break;
-						case 1: population[i].setPos(row, col, ShinroPuzzle.POINT);
-								break;
-						case 2: population[i].setPos(row, col, 
-									rand.nextInt(9 - 1) + 1);
-								break;
-						default:break;
-						}					
-					}
-					catch (IllegalArgumentException e) {
-						System.out.println(e.getMessage());
-						System.out.println("Setting population[" + i + "].["
-								+ row + "][" + col +"] to 0");
-						population[i].clearSpace(row, col);
-					}
+	 * @return a Population of size populationSize which contains the 
+	 * newly-encoded genomes, whose fitness is yet to be calculated.
+	 */
+	private static Population initPopulation() {
+		Population population = new Population(populationSize);
+		for (int i = 0; i < population.size(); i++) {
+			for (int space = 0; space < Population.CELLS; space++) {
+				//randomly assign an blank space, POINT, or arrow					
+				switch (rand.nextInt(3)) {
+				case 0: //population.setPos(i, space, ShinroPuzzle.EMPTY);
+						break;
+				case 1: population.setPos(i, space, ShinroPuzzle.POINT);
+						break;
+				case 2: population.setPos(i, space, rand.nextInt(9 - 1) + 1);
+						break;
+				default:break;
 				}
 			}
-			population[i].setHeaders();
-			removePointlessArrows(population[i]);
+			population.removePointlessArrows(i);
 		}
 		return population;
 	}
 	
+	/**
+	 * ShinroGenerator entry point.
+	 * <p>
+	 * Progress is checkpointed to CHECKPOINTFILE in the working directory. Passing
+	 * "--resume" continues from that checkpoint (or from the checkpoint file given
+	 * after it) with the targets it was started with. Passing "--log" appends the
+	 * puzzle to the given {@link PuzzleLog} instead of creating a file for it.
+	 * Passing "--metrics" turns on {@link SolverMetrics} and prints them every
+	 * METRICSINTERVAL. Passing "--metricsport" serves {@link GeneratorMetrics} on
+	 * the given port until the puzzle is written. "--population" and 
+	 * "--tournament" set the population and tournament sizes (see
+	 * {@link #setPopulation(int, int)}); the run stops if either is out of range.
+	 * "--uniformmutation" turns off adaptive mutation selection. Passing 
+	 * "--store" looks up and keeps solver results in a {@link SolverStore}, so
+	 * that genomes solved by earlier runs aren't solved again.
+	 * @param args  optionally "--resume [checkpointFile]", "--log logFile",
+	 * "--metrics", "--metricsport port", "--population size", 
+	 * "--tournament size", "--uniformmutation" and "--store storeFile"
+	 */
 	public static void main(String[] args) {
-		Random rand = new Random();
+		try {
+			runCommandLine(args);
+		}
+		finally {
+			GeneratorMetrics.stop();
+		}
+	}
+	
+	/**
+	 * Runs the generator as {@link #main(String[])} describes
+	 * <p>
+	 * The metrics server, if it was started, is left running for main to stop
+	 * however this returns.
+	 * @param args  the command line arguments
+	 */
+	private static void runCommandLine(String[] args) {
+		FlightRecorderEvents.install();
+		File checkpointFile = new File(CHECKPOINTFILE);
+		boolean resuming = false;
+		String size = null, tournament = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--resume")) {
+				resuming = true;
+				if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+					checkpointFile = new File(args[++i]);
+				}
+			}
+			else if (args[i].equals("--metrics")) {
+				SolverMetrics.setEnabled(true);
+			}
+			else if (args[i].equals("--metricsport") && i + 1 < args.length) {
+				try {
+					GeneratorMetrics.serve(Integer.parseInt(args[++i]));
+				}
+				catch (IOException e) {
+					System.out.println("Could not serve metrics: " + e.getMessage());
+					System.exit(1);
+				}
+			}
+			else if (args[i].equals("--log") && i + 1 < args.length) {
+				try {
+					sink = new PuzzleLog(new File(args[++i]));
+				}
+				catch (IOException e) {
+					System.out.println("Could not open log: " + e.getMessage());
+					System.exit(1);
+				}
+			}
+			else if (args[i].equals("--population") && i + 1 < args.length) {
+				size = args[++i];
+			}
+			else if (args[i].equals("--tournament") && i + 1 < args.length) {
+				tournament = args[++i];
+			}
+			else if (args[i].equals("--uniformmutation")) {
+				setAdaptiveMutation(false);
+			}
+			else if (args[i].equals("--store") && i + 1 < args.length) {
+				try {
+					store = new SolverStore(new File(args[++i]));
+				}
+				catch (IOException e) {
+					System.out.println("Could not open solver store: " 
+							+ e.getMessage());
+					System.exit(1);
+				}
+			}
+		}
+		try {
+			int numGenomes = (size != null) ? Integer.parseInt(size) 
+					: populationSize;
+			//the default tournament shrinks to fit a small population
+			setPopulation(numGenomes, (tournament != null) 
+					? Integer.parseInt(tournament) 
+					: Math.min(tournamentSize, numGenomes));
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("Could not set population: " + e.getMessage());
+			System.exit(1);
+		}
+		
+		GeneratorCheckpoint resume = null;
+		if (resuming) {
+			try {
+				resume = GeneratorCheckpoint.read(checkpointFile);
+			}
+			catch (IOException e) {
+				System.out.println("Could not resume: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		
 		if (RANDOMIZEALL) {			
 			minMoves = rand.nextInt(MOSTMOVES - LEASTMOVES) + LEASTMOVES;
 			difficultyFactor = rand.nextInt((ShinroSolver.ARRAYSIZE - 1) //7 diffs 
@@ -458,14 +893,115 @@ public class ShinroGenerator {
 			minMoves = rand.nextInt(MOSTMOVES - LEASTMOVES) + LEASTMOVES;
 		}
 		
-		if (difficultyFactor > 4) {
-			maxNoImprovement = 1000;
-		}
+		setTargets(minMoves, difficultyFactor, minOfDifficulty);
 		
-		generatePuzzle();
+		checkpointWriter = new GeneratorCheckpoint.Writer(checkpointFile);
+		ShinroPuzzle puzzle = generatePuzzle(resume);
+		checkpointWriter.finish();
+		closeStore();
+		try {
+			sink.close();
+		}
+		catch (IOException e) {
+			System.out.println("Crirical error -- could not write puzzle: "
+					+ e.getMessage());
+		}
+		if (puzzle == null) {
+			System.exit(1);
+		}
 		
 	}
 	
+	/**
+	 * Prints the solver metrics of the last METRICSINTERVAL, if metrics are on
+	 * and the interval has passed
+	 */
+	static synchronized void logSolverMetrics() {
+		if (!SolverMetrics.isEnabled() 
+				|| System.nanoTime() - lastMetricsTime < METRICSINTERVAL) {
+			return;
+		}
+		SolverMetrics.Snapshot metrics = SolverMetrics.snapshot();
+		System.out.println("Solver metrics: " 
+				+ ((lastMetrics == null) ? metrics : metrics.since(lastMetrics)));
+		lastMetrics = metrics;
+		lastMetricsTime = System.nanoTime();
+	}
+	
+	/**
+	 * Sets where {@link #generatePuzzle()} writes the puzzles it generates
+	 * @param puzzleSink  the sink to write to
+	 * @return the sink that was replaced, which is not closed
+	 */
+	static PuzzleSink setSink(PuzzleSink puzzleSink) {
+		PuzzleSink previous = sink;
+		sink = puzzleSink;
+		return previous;
+	}
+	
+	/**
+	 * Sets the selection parameters used by {@link #generatePuzzle()}
+	 * <p>
+	 * maxNoImprovement is raised for difficultyFactors greater than 4.
+	 * @param moves  the target total number of moves
+	 * @param factor  the difficulty factor to select for
+	 * @param ofDifficulty  the target number of moves of the difficulty factor
+	 */
+	static void setTargets(int moves, int factor, int ofDifficulty) {
+		minMoves = moves;
+		difficultyFactor = factor;
+		minOfDifficulty = ofDifficulty;
+		maxNoImprovement = (difficultyFactor > 4) ? 1000 : 500;
+	}
+	
+	/**
+	 * Sets the size of the population used by {@link #generatePuzzle()} and of 
+	 * its tournaments
+	 * <p>
+	 * The population is made of at least the elite genome and one mutant, and a 
+	 * tournament of between one genome and the whole population. A resumed run 
+	 * keeps the population and tournament sizes stored in its checkpoint.
+	 * @param size  the number of genomes in the population
+	 * @param tournament  the number of genomes in a tournament
+	 * @throws IllegalArgumentException if size is less than two or tournament
+	 * is out of range
+	 */
+	static void setPopulation(int size, int tournament) 
+			throws IllegalArgumentException {
+		if (size < 2 || tournament < 1 || tournament > size) {
+			throw new IllegalArgumentException("setPopulation: Illegal value --> "
+					+ size + ":" + tournament);
+		}
+		populationSize = size;
+		tournamentSize = tournament;
+	}
+	
+	/**
+	 * Turns adaptive mutation selection on or off
+	 * @see #chooseMutation()
+	 * @param adaptive  true to favor the mutation types that recently beat their
+	 * parents, false to pick every type with equal probability
+	 */
+	static void setAdaptiveMutation(boolean adaptive) {
+		adaptiveMutation = adaptive;
+	}
+	
+	/**
+	 * Closes the solver store, if there is one, and carries on without it
+	 */
+	private static void closeStore() {
+		if (store == null) {
+			return;
+		}
+		try {
+			store.close();
+		}
+		catch (IOException e) {
+			System.out.println("Could not close solver store: " + e.getMessage());
+		}
+		store = null;
+	}
+	
 	/**
 	 * Finds the symmetrical mirror value of a row or column location in a 
 	 * ShinroPuzzle
@@ -477,7 +1013,70 @@ public class ShinroGenerator {
 	}
 	
 	/**
-	 * Probabilistically applies a mutation to a ShinroPuzzle
+	 * Picks the type of the next mutation
+	 * <p>
+	 * With adaptive mutation off, every type is equally likely. Otherwise each
+	 * type is picked in proportion to its recent success rate, the share of its
+	 * mutants that beat their parent, except that every type keeps a chance of at
+	 * least MINMUTATIONRATE so that none is shut out for good.
+	 * @see #creditMutation(boolean)
+	 * @return the mutation type, from 0 to NUMMUTATIONS - 1
+	 */
+	private static int chooseMutation() {
+		if (!adaptiveMutation) {
+			return rand.nextInt(NUMMUTATIONS);
+		}
+		double total = 0;
+		for (int i = 0; i < NUMMUTATIONS; i++) {
+			//start every type out at a success rate of one half
+			mutationRates[i] = (numMutantsImproved[i] + 1.0) 
+					/ (numMutantsTried[i] + 2.0);
+			total += mutationRates[i];
+		}
+		double spare = 1.0 - NUMMUTATIONS * MINMUTATIONRATE;
+		double r = rand.nextDouble();
+		for (int i = 0; i < NUMMUTATIONS - 1; i++) {
+			r -= MINMUTATIONRATE + spare * mutationRates[i] / total;
+			if (r < 0) {
+				return i;
+			}
+		}
+		return NUMMUTATIONS - 1;
+	}
+	
+	/**
+	 * Counts the outcome of the last mutation towards its type's success rate
+	 * <p>
+	 * Every MUTATIONWINDOW mutants, the counts of every type are halved so that
+	 * the success rates follow what works at the population's current fitness.
+	 * @param improved  whether the mutant beat its parent
+	 */
+	private static void creditMutation(boolean improved) {
+		numMutantsTried[lastMutation]++;
+		if (improved) {
+			numMutantsImproved[lastMutation]++;
+		}
+		if (++numSinceDecay >= MUTATIONWINDOW) {
+			for (int i = 0; i < NUMMUTATIONS; i++) {
+				numMutantsTried[i] /= 2;
+				numMutantsImproved[i] /= 2;
+			}
+			numSinceDecay = 0;
+		}
+	}
+	
+	/**
+	 * Forgets the success rates of every mutation type
+	 */
+	private static void resetMutationRates() {
+		for (int i = 0; i < NUMMUTATIONS; i++) {
+			numMutantsTried[i] = numMutantsImproved[i] = 0;
+		}
+		numSinceDecay = 0;
+	}
+	
+	/**
+	 * Probabilistically applies a mutation to a copy of a genome
 	 * <p>
 	 * After mutation any pointless arrows or, if symmetry is enforced, any 
 	 * nonsymmetrical arrows are removed.
@@ -491,71 +1090,32 @@ public class ShinroGenerator {
 	 * <li> Add a point to a random space (and up to three pointing arrows)
 	 * <li> Delete a point from a random space
 	 * </ul>
-	 * @param puzzle  the puzzle to mutate
-	 * @return the mutated puzzle
+	 * Only the mutant's spaces are set; its fitness is left to the caller.
+	 * @param parents  the population of the genome to mutate
+	 * @param parent  the index of the genome to mutate
+	 * @param mutants  the population the mutant is written to
+	 * @param mutant  the index of the genome the mutant overwrites
 	 */
-	private static ShinroPuzzle mutate(ShinroPuzzle puzzle) {
-		Random rand = new Random();
-		ShinroPuzzle mutated = puzzle.clone();
-		int mutation = rand.nextInt(6);//((6 - 1) + 1) + 1); //skip mutation 0 //six possibilities (0 to 5)
+	private static void mutate(Population parents, int parent, Population mutants,
+			int mutant) {
+		parents.copyGenome(parent, mutants, mutant);
+		int mutation = chooseMutation(); //six possibilities (0 to 5)
+		lastMutation = mutation;
 
 		if (mutation == 0) {
 			//iterate through the puzzle and probabilistically mutate spaces
-			double rate = Math.random();
-			for (int i = 0; i < PUZZSIZE; i++) {
-				for (int j = 0; j < PUZZSIZE; j++) {
-					double r = Math.random();
-					if (r <= rate) {
-						switch (rand.nextInt(3)) {
-						case 0: mutated.setPos(i, j, ShinroPuzzle.EMPTY);
-								/*if (symmetry) {
-									if (xAxis) {
-										mutated.setPos(mirror(i), j, 
-												ShinroPuzzle.EMPTY);
-									}
-									else if (yAxis) {
-										mutated.setPos(i, mirror(j),
-												ShinroPuzzle.EMPTY);
-									}
-									else if (rotational) {
-										mutated.setPos(mirror(i), mirror(j),
-												ShinroPuzzle.EMPTY);
-									}
-								}*/
-								break;
-						case 1: mutated.setPos(i, j, ShinroPuzzle.POINT);
-								/*if (symmetry) {
-									if (xAxis) {
-										mutated.setPos(mirror(i), j, 
-												ShinroPuzzle.POINT);
-									}
-									else if (yAxis) {
-										mutated.setPos(i, mirror(j),
-												ShinroPuzzle.POINT);
-									}
-									else if (rotational) {
-										mutated.setPos(mirror(i), mirror(j),
-												ShinroPuzzle.POINT);
-									}
-								}*/
-								break;
-						case 2: int randArrow = rand.nextInt(9 - 1) + 1;
-								mutated.putArrow(i, j, randArrow);
-								/*if (symmetry) {
-									if (xAxis) {
-										mutated.setPos(mirror(i), j, randArrow);
-									}
-									else if (yAxis) {
-										mutated.setPos(i, mirror(j), randArrow);
-									}
-									else if (rotational) {
-										mutated.setPos(mirror(i), mirror(j),
-												randArrow);
-									}
-								}*/
-								break;
-						default:break;
-						}
+			double rate = rand.nextDouble();
+			for (int space = 0; space < Population.CELLS; space++) {
+				double r = rand.nextDouble();
+				if (r <= rate) {
+					switch (rand.nextInt(3)) {
+					case 0: mutants.setPos(mutant, space, ShinroPuzzle.EMPTY);
+							break;
+					case 1: mutants.setPos(mutant, space, ShinroPuzzle.POINT);
+							break;
+					case 2: mutants.setPos(mutant, space, rand.nextInt(9 - 1) + 1);
+							break;
+					default:break;
 					}
 				}
 			}
@@ -568,30 +1128,11 @@ public class ShinroGenerator {
 				int randCol1 = rand.nextInt(PUZZSIZE);
 				int randRow2 = rand.nextInt(PUZZSIZE);
 				int randCol2 = rand.nextInt(PUZZSIZE);
-				int temp = mutated.atPos(randRow1, randCol1);
-				mutated.setPos(randRow1, randCol1,
-						mutated.atPos(randRow2, randCol2));
-				mutated.setPos(randRow2, randCol2, temp);
-				/*if (symmetry) {
-					if (xAxis) {
-						temp = mutated.atPos(mirror(randRow1), randCol1);
-						mutated.setPos(mirror(randRow1), randCol1,
-								mutated.atPos(mirror(randRow2), randCol2));
-						mutated.setPos(mirror(randRow2), randCol2, temp);
-					}
-					else if (yAxis) {
-						temp = mutated.atPos(randRow1, mirror(randCol1));
-						mutated.setPos(randRow1, mirror(randCol1),
-								mutated.atPos(randRow2, mirror(randCol2)));
-						mutated.setPos(randRow2, mirror(randCol2), temp);
-					}
-					else if (rotational) {
-						temp = mutated.atPos(mirror(randRow1), mirror(randCol1));
-						mutated.setPos(mirror(randRow1), mirror(randCol1),
-								mutated.atPos(mirror(randRow2), mirror(randCol2)));
-						mutated.setPos(mirror(randRow2), mirror(randCol2), temp);
-					}
-				}*/
+				int space1 = randRow1 * PUZZSIZE + randCol1;
+				int space2 = randRow2 * PUZZSIZE + randCol2;
+				int temp = mutants.atPos(mutant, space1);
+				mutants.setPos(mutant, space1, mutants.atPos(mutant, space2));
+				mutants.setPos(mutant, space2, temp);
 			}			
 		}
 		else if (mutation == 2) {
@@ -599,118 +1140,64 @@ public class ShinroGenerator {
 			int randRow = rand.nextInt(PUZZSIZE);
 			int randCol = rand.nextInt(PUZZSIZE);
 			int randArrow = rand.nextInt(9 - 1) + 1; //1 to 8
-			mutated.setPos(randRow, randCol, randArrow);
-			/*if (symmetry) {
-				if (xAxis) {
-					mutated.setPos(mirror(randRow),	randCol, randArrow);
-				}
-				else if (yAxis) {
-					mutated.setPos(randRow,	mirror(randCol), randArrow);
-				}
-				else if (rotational) {
-					mutated.setPos(mirror(randRow),	mirror(randCol), randArrow);
-				}
-			}*/
+			mutants.setPos(mutant, randRow * PUZZSIZE + randCol, randArrow);
 		}
 		else if (mutation == 3) {
 			//delete up to three random arrows
 			int numTimes = rand.nextInt(3 + 1);
 			for (int i = 0; i < numTimes; i++) {
-				ArrayList<GridPos> arrows = 
-						mutated.getListByType(ShinroPuzzle.N); //all arrows
-				if (arrows.size() == 0) {
-					return mutate(puzzle);
+				long arrows = mutants.arrows[mutant];
+				if (arrows == 0) {
+					mutate(parents, parent, mutants, mutant);
+					return;
 				}
-				GridPos which = arrows.get(rand.nextInt(arrows.size()));
-				mutated.setPos(which, ShinroPuzzle.EMPTY);
+				int which = Population.getNthSpace(arrows, 
+						rand.nextInt(Long.bitCount(arrows)));
+				mutants.setPos(mutant, which, ShinroPuzzle.EMPTY);
 			}
-			
-			/*if (symmetry) {
-				if (xAxis) {
-					mutated.setPos(mirror(which.getRow()),	which.getCol(),
-							ShinroPuzzle.EMPTY);
-				}
-				else if (yAxis) {
-					mutated.setPos(which.getRow(), mirror(which.getCol()),
-							ShinroPuzzle.EMPTY);
-				}
-				else if (rotational) {
-					mutated.setPos(mirror(which.getRow()), mirror(which.getCol()),
-							ShinroPuzzle.EMPTY);
-				}
-			}*/
 		}
 		else if (mutation == 4) {
 			//add a POINT to a random space and up to three pointing arrows
 			int randRow = rand.nextInt(PUZZSIZE);
 			int randCol = rand.nextInt(PUZZSIZE);
-			mutated.setPos(randRow, randCol, ShinroPuzzle.POINT);
+			int space = randRow * PUZZSIZE + randCol;
+			mutants.setPos(mutant, space, ShinroPuzzle.POINT);
 			
 			int numArrows = rand.nextInt(3 + 1);
 			for (int i = 0; i < numArrows; i++) {
 				//pick a random direction
 				int randDir = rand.nextInt((8 - 1) + 1) + 1;
-				ArrayList<GridPos> empties = mutated.getTypeInList(
-						ShinroPuzzle.EMPTY, mutated.getSpacesToEdge(randRow,
-						randCol, randDir));
-				if (empties.size() > 0) {
-					int randSpace = rand.nextInt(empties.size());
-					mutated.setPos(empties.get(randSpace), 
-							mutated.getOpposingArrow(randDir));
-					
+				long empties = Population.getPath(space, randDir) 
+						& mutants.getEmpty(mutant);
+				int numEmpties = Long.bitCount(empties);
+				if (numEmpties > 0) {
+					//the empty spaces are picked from in order moving away from the
+					//point, which is down the mask for N, NE, W and NW
+					int randSpace = rand.nextInt(numEmpties);
+					if (randDir < ShinroPuzzle.E || randDir > ShinroPuzzle.SW) {
+						randSpace = numEmpties - 1 - randSpace;
+					}
+					mutants.setPos(mutant, Population.getNthSpace(empties, randSpace),
+							(randDir <= 4) ? randDir + 4 : randDir - 4);
 				}
 			}
 			
 		}
-		//OLD VERSION below
-		/*
-		else if (mutation == 4) {
-			//add a POINT to a random space
-			int randRow = rand.nextInt(PUZZSIZE);
-			int randCol = rand.nextInt(PUZZSIZE);
-			mutated.setPos(randRow, randCol, ShinroPuzzle.POINT);
-			/*if (symmetry) {
-				if (xAxis) {
-					mutated.setPos(mirror(randRow), randCol, ShinroPuzzle.POINT);
-				}
-				else if (yAxis) {
-					mutated.setPos(randRow, mirror(randCol), ShinroPuzzle.POINT);
-				}
-				else if (rotational) {
-					mutated.setPos(mirror(randRow),	mirror(randCol),
-							ShinroPuzzle.POINT);
-				}
-			}*/ /*
-		}*/
 		else if (mutation == 5) {
 			//delete a random POINT
-			ArrayList<GridPos> points = puzzle.getListByType(ShinroPuzzle.POINT);
-			if (points.size() == 0) {
-				return mutate(puzzle);
-			}
-			GridPos which = points.get(rand.nextInt(points.size()));
-			mutated.setPos(which, ShinroPuzzle.EMPTY);
-			/*if (symmetry) {
-				if (xAxis) {
-					mutated.setPos(mirror(which.getRow()),	which.getCol(),
-							ShinroPuzzle.EMPTY);
-				}
-				else if (yAxis) {
-					mutated.setPos(which.getRow(), mirror(which.getCol()),
-							ShinroPuzzle.EMPTY);
-				}
-				else if (rotational) {
-					mutated.setPos(mirror(which.getRow()), mirror(which.getCol()),
-							ShinroPuzzle.EMPTY);
-				}
-			}*/
+			long points = mutants.points[mutant];
+			if (points == 0) {
+				mutate(parents, parent, mutants, mutant);
+				return;
+			}
+			int which = Population.getNthSpace(points, 
+					rand.nextInt(Long.bitCount(points)));
+			mutants.setPos(mutant, which, ShinroPuzzle.EMPTY);
 		}
-		mutated.setHeaders();
-		removePointlessArrows(mutated); //maybe these will generate better
+		mutants.removePointlessArrows(mutant); //maybe these will generate better
 		/*if (symmetry) {
 			removeNonsymmetrical(mutated);
 		}*/
-		return mutated;
 	}
 	
 	/**
@@ -721,14 +1208,19 @@ public class ShinroGenerator {
 	 * generation and mutating the victors until the new generation is complete. This
 	 * method may randomly decide to enforce symmetry or clustering based on their
 	 * respective rate constants.
-	 * @param population  an array of ShinroPuzzles representing the previous
-	 * generation's population
-	 * @return an array of ShinroPuzzles representing the new generation's population
+	 * <p>
+	 * A mutant that is rejected by any tier of screening is discarded and the 
+	 * parent is mutated again, up to MAXMUTATIONATTEMPTS times; the last attempt
+	 * is always solved in full. A mutant that came out the same as its parent 
+	 * takes its parent's fitness without being solved.
+	 * @see #screenMutant(Population, int, double)
+	 * @param population  the previous generation's population, with the fitness of
+	 * every genome calculated
+	 * @param next  a population of the same size that is overwritten with the new
+	 * generation
 	 */
-	private static ShinroPuzzle[] nextGeneration(ShinroPuzzle[] population) {	
-		ShinroPuzzle[] nextGen = new ShinroPuzzle[population.length];
-		Random rand = new Random();
-		double r = Math.random(); //instantaneous rate for comparison
+	private static void nextGeneration(Population population, Population next) {	
+		double r = rand.nextDouble(); //instantaneous rate for comparison
 		
 		//randomly enforce symmetry
 		/*if (!symmetry && r <= SYMMETRYRATE) {
@@ -762,12 +1254,34 @@ public class ShinroGenerator {
 			}
 		}*/
 
-		nextGen[0] = getElite(population);		
-		for (int i = 1; i < nextGen.length; i++) {		
-			nextGen[i] = mutate(runTournament(population));
+		int elite = population.getElite();
+		population.copyGenome(elite, next, 0);
+		for (int i = 1; i < next.size(); i++) {		
+			int parent = population.runTournament(rand, tournamentSize);
+			double parentFitness = population.fitness[parent];
+			for (int attempt = 1; ; attempt++) {
+				mutate(population, parent, next, i);
+				next.numPointless[i] = next.countPointlessArrows(i);
+				next.calcHash(i);
+				if (next.sameSpaces(i, population, parent)) {
+					population.copyEvaluation(parent, next, i);
+					creditMutation(false);
+					break;
+				}
+				if (attempt < MAXMUTATIONATTEMPTS) {
+					if (screenMutant(next, i, parentFitness)) {
+						creditMutation(next.fitness[i] > parentFitness);
+						break;
+					}
+					creditMutation(false);
+				}
+				else {
+					solveFitness(next, i);
+					creditMutation(next.fitness[i] > parentFitness);
+					break;
+				}
+			}
 		}
-		
-		return nextGen;
 	}
 	
 	/**
@@ -778,24 +1292,53 @@ public class ShinroGenerator {
 	 * symmetry or clustering, and the info from the solver. See
 	 * {@link shinro.ShinroSolver} for additional details. 
 	 * <p>
-	 * The generated puzzle is also written to a plain text file as a sequence of space-
-	 * delimited integers whose filename is of the following format:
+	 * The generated puzzle is also written to the current PuzzleSink (by default, a 
+	 * plain text file as a sequence of space-delimited integers) with a name of the
+	 * following format:
 	 * "shinro_HHHg_SC_KKKf_NN11234567" where "HHH" is the number of generations,
 	 * S is the type of symmetry, if any, C is the type of clustering, if any, KKK
 	 * is the final fitness, NN is the total number of moves, and the rest of the
 	 * numbers are the number of moves per difficulty factor.  
-	 * @param puzzle the puzzle whose statistics to print
+	 * @param population the population of the genome whose statistics to print
+	 * @param genome the index of the genome, whose fitness is calculated
 	 * @param numGens the number of generations it took to generate this puzzle
-	 * @param fitness the final fitness of the puzzle when generated
 	 */
-	private static void printStatsWritePuzzle(ShinroPuzzle puzzle, 
-			int numGens, Fitness fitness) {
+	private static void printStatsWritePuzzle(Population population, int genome,
+			int numGens) {
 		String fileString = "shinro_";
+		ShinroPuzzle puzzle = population.toPuzzle(genome);
+		double fitness = population.fitness[genome];
+		int info = genome * Population.INFOSIZE;
 		
 		System.out.println("\n" + puzzle);
 		System.out.println("Min moves: " + minMoves + ", Difficulty factor: "
 				+ difficultyFactor + ", Target Diff Moves: " + minOfDifficulty);
 		System.out.println("Total generations: " + numGens);
+		System.out.print("Mutants rejected by screening tier:");
+		for (int i = 0; i < NUMTIERS; i++) {
+			System.out.print(String.format(" %d: %d of %d (%.1f%%)", i, 
+					numScreenRejected[i], numScreened[i], 
+					100.0 * numScreenRejected[i] / Math.max(1, numScreened[i])));
+		}
+		if (numScreened[STORETIER] > 0) {
+			System.out.print(String.format(" store: %d of %d (%.1f%%)", 
+					numScreenRejected[STORETIER], numScreened[STORETIER], 
+					100.0 * numScreenRejected[STORETIER] / numScreened[STORETIER]));
+		}
+		System.out.println();
+		System.out.println("Solver early exits: " + numEarlyExits + " of " 
+				+ numSolves + " solves");
+		if (store != null) {
+			System.out.println("Solver store: " + numStoreHits + " hits of " 
+					+ numStoreLookups + " lookups, " + store.size() + " of " 
+					+ store.capacity() + " slots used");
+		}
+		System.out.print("Mutation success rates: ");
+		for (int i = 0; i < NUMMUTATIONS; i++) {
+			System.out.print(String.format("%.3f ", numMutantsImproved[i] 
+					/ Math.max(1.0, numMutantsTried[i])));
+		}
+		System.out.println();
 		fileString += String.format("%dg_", numGens);
 		/*if (symmetry) {
 			System.out.print("Symmetry: ");
@@ -828,31 +1371,23 @@ public class ShinroGenerator {
 		if (symmetry || cluster) {
 			fileString += "_";
 		}*/
-		System.out.println("Final fitness: " + fitness.value);
-		fileString += String.format("%03df_", (int)(fitness.value * 100));
+		System.out.println("Final fitness: " + fitness);
+		fileString += String.format("%03df_", (int)(fitness * 100));
 		
 		System.out.print("Solver info: ");
-		for (int i = 0; i < (fitness.solverInfo.length - 1); i++) {
-			System.out.print(fitness.solverInfo[i] + " ");
-			fileString += fitness.solverInfo[i];
+		for (int i = 0; i < (Population.INFOSIZE - 1); i++) {
+			System.out.print(population.solverInfo[info + i] + " ");
+			fileString += population.solverInfo[info + i];
 		}
 		System.out.println();
 		
-		File outFile = new File(fileString);
 		try {
-			outFile.createNewFile();
-			PrintWriter out = new PrintWriter(outFile);
-			int[][] puzzleInts = puzzle.toIntMatrix();
-			for (int i = 0; i < PUZZSIZE; i++) {
-				for (int j = 0; j < PUZZSIZE; j++) {
-					out.print(puzzleInts[i][j] + " ");
-				}
-			}
-			System.out.println("File '" + fileString + "' created successfully.");
-			out.close();
+			sink.write(fileString, puzzle);
+			GeneratorMetrics.countEmitted(difficultyFactor);
+			System.out.println("Puzzle '" + fileString + "' written successfully.");
 		}
 		catch (IOException e) {
-			System.out.println("Crirical error -- could not create output file: "
+			System.out.println("Crirical error -- could not write puzzle: "
 					+ e.getMessage());
 		}
 	}
@@ -881,52 +1416,4 @@ public class ShinroGenerator {
 		}
 	}
 	*/
-	
-	/**
-	 * Removes the pointless arrows from a given puzzle
-	 * @param puzzle  the puzzle whose pointless arrows are to be removed
-	 */
-	private static void removePointlessArrows(ShinroPuzzle puzzle) {
-		for (GridPos arrow : puzzle.getListByType(ShinroPuzzle.N)) { //any arrow
-			if (puzzle.getTypeInList(ShinroPuzzle.POINT,
-					puzzle.getArrowToEdge(arrow)).size() == 0) {
-				puzzle.setPos(arrow.getRow(), arrow.getCol(), ShinroPuzzle.EMPTY);
-			}
-		}
-	}
-	
-	/**
-	 * Performs tournament selection on a population of genomes
-	 * <p>
-	 * Tournaments are of size TOURNAMENTSIZE. The victor is the elite genome of the
-	 * tournament.
-	 * @param population  the population to run the tournament on
-	 * @return the victor of the tournament
-	 */
-	private static ShinroPuzzle runTournament(ShinroPuzzle[] population) {
-		Random rand = new Random();
-		ShinroPuzzle[] tournament = new ShinroPuzzle[TOURNAMENTSIZE];
-		int[] selections = new int[TOURNAMENTSIZE];
-		
-		for (int i = 0; i < selections.length; i++) {
-			selections[i] = rand.nextInt(POPULATIONSIZE);
-			
-			//make sure the same puzzle isn't selected twice
-			if (i == 0) {
-				continue;
-			}
-			for (int j = (i - 1); j >= 0; j--) {
-				if (selections[i] == selections[j]) {
-					i--; //repeat this iteration of outer loop
-					break;
-				}
-			}
-		}
-		
-		for (int i = 0; i < tournament.length; i++) {
-			tournament[i] = population[selections[i]];
-		}
-		
-		return getElite(tournament);		
-	}
 }
\ No newline at end of file
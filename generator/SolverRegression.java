@@ -0,0 +1,196 @@
+package generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import shinro.ShinroPuzzle;
+import shinro.ShinroSolver;
+
+/**
+ * Checks a solver against the golden outputs of a {@link RegressionCorpus}
+ * <p>
+ * Every puzzle of the corpus is solved on a pool of threads and the result is
+ * compared with the output ShinroSolver gave when the golden file was written.
+ * Any difference changes difficulty ratings and generator fitness, so every
+ * change to the solver, including pure optimizations, should pass this check.
+ * <p>
+ * Usage: "java generator/SolverRegression [--threads n] [--solver className]
+ * [goldenFile]". The solver is ShinroSolver unless the name of a class
+ * implementing {@link Solver} with a no-argument constructor is given. The
+ * golden file is RegressionCorpus.GOLDENFILE by default. The first MAXREPORTED
+ * differences are printed and the program exits with 1 if there are any.
+ */
+public class SolverRegression {
+	private static final int MAXREPORTED = 20;
+
+	/**
+	 * A solver implementation to check
+	 * <p>
+	 * Implementations are called from several threads at once.
+	 */
+	public interface Solver {
+		/**
+		 * Solves a puzzle
+		 * @param puzzle  a new puzzle with its points in place and its headers
+		 * set, which may be changed
+		 * @return the move counts, indexed as in the array returned by
+		 * {@link ShinroSolver#solve()}
+		 */
+		int[] solve(ShinroPuzzle puzzle);
+	}
+
+	/**
+	 * The current ShinroSolver
+	 */
+	public static final Solver SHINROSOLVER = new Solver() {
+		@Override
+		public int[] solve(ShinroPuzzle puzzle) {
+			return new ShinroSolver(puzzle).solve();
+		}
+	};
+
+	/**
+	 * Checks a solver against a corpus
+	 * @param solver  the solver to check
+	 * @param entries  the entries of the corpus
+	 * @param numThreads  the number of threads to solve on
+	 * @return the indices of the entries the solver disagrees with, in order
+	 */
+	public static int[] check(final Solver solver,
+			final ArrayList<RegressionCorpus.Entry> entries, int numThreads) {
+		final boolean[] differs = new boolean[entries.size()];
+		final AtomicInteger next = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		for (int t = 0; t < numThreads; t++) {
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = next.getAndIncrement(); i < entries.size();
+							i = next.getAndIncrement()) {
+						differs[i] = !Arrays.equals(entries.get(i).golden,
+								solveSafely(solver, entries.get(i)));
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		int numDiffering = 0;
+		for (boolean d : differs) {
+			if (d) {
+				numDiffering++;
+			}
+		}
+		int[] result = new int[numDiffering];
+		for (int i = 0, j = 0; i < differs.length; i++) {
+			if (differs[i]) {
+				result[j++] = i;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Solves the puzzle of an entry
+	 * @param solver  the solver
+	 * @param entry  the entry
+	 * @return the solver's output or null if the puzzle can't be parsed or the
+	 * solver throws
+	 */
+	private static int[] solveSafely(Solver solver, RegressionCorpus.Entry entry) {
+		try {
+			return solver.solve(entry.toPuzzle());
+		}
+		catch (ParseException e) {
+			return null;
+		}
+		catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets a solver by class name
+	 * @param name  the fully qualified name of a class implementing Solver with a
+	 * no-argument constructor
+	 * @return the solver
+	 * @throws IllegalArgumentException if there is no such solver
+	 */
+	public static Solver getSolver(String name) throws IllegalArgumentException {
+		try {
+			return (Solver)Class.forName(name).getDeclaredConstructor()
+					.newInstance();
+		}
+		catch (Exception e) {
+			throw new IllegalArgumentException("getSolver: No solver --> "
+					+ name);
+		}
+	}
+
+	public static void main(String[] args) {
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		Solver solver = SHINROSOLVER;
+		String solverName = "ShinroSolver";
+		File file = new File(RegressionCorpus.GOLDENFILE);
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--threads") && i + 1 < args.length) {
+				numThreads = Math.max(1, Integer.parseInt(args[++i]));
+			}
+			else if (args[i].equals("--solver") && i + 1 < args.length) {
+				solverName = args[++i];
+				try {
+					solver = getSolver(solverName);
+				}
+				catch (IllegalArgumentException e) {
+					System.out.println("Unknown solver '" + solverName
+							+ "'. Terminating.");
+					System.exit(1);
+				}
+			}
+			else {
+				file = new File(args[i]);
+			}
+		}
+
+		ArrayList<RegressionCorpus.Entry> entries = null;
+		try {
+			entries = RegressionCorpus.read(file);
+		}
+		catch (IOException e) {
+			System.out.println("IO Error: " + e.getMessage());
+			System.exit(1);
+		}
+
+		long start = System.nanoTime();
+		int[] differing = check(solver, entries, numThreads);
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		for (int i = 0; i < differing.length && i < MAXREPORTED; i++) {
+			RegressionCorpus.Entry entry = entries.get(differing[i]);
+			System.out.println("Puzzle " + (differing[i] + 1) + ": "
+					+ entry.puzzleString);
+			System.out.println("  expected " + Arrays.toString(entry.golden));
+			System.out.println("  got      "
+					+ Arrays.toString(solveSafely(solver, entry)));
+		}
+		System.out.println(solverName + " differs on " + differing.length + " of "
+				+ entries.size() + " puzzles (" + millis + " ms on " + numThreads
+				+ " threads).");
+		if (differing.length > 0) {
+			System.exit(1);
+		}
+	}
+}
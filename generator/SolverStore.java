@@ -0,0 +1,284 @@
+package generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+import shinro.ShinroSolver;
+
+/**
+ * A file of solver results that is kept between generator runs and shared by
+ * generator processes
+ * <p>
+ * Each entry is the solver info of one puzzle, keyed by the 64-bit hash of the
+ * puzzle's spaces and header numbers (see {@link shinro.PuzzleSnapshot#getHash()}).
+ * The move counts are stored as the puzzle's profile and whether the solver
+ * solved it as a flag. Only the results of complete solves go in the store, and
+ * they don't depend on the generator's targets, so one store serves runs with
+ * any targets. Puzzles are told apart by their hashes alone. A puzzle whose hash
+ * is zero is never stored.
+ * <p>
+ * The file is a fixed-capacity open-addressing table with linear probing. It is
+ * memory-mapped, so a lookup only reads memory. Entries are added while holding
+ * a lock on the file. An entry's key is written last and a checksum covers the
+ * rest of the entry. A lookup that sees a half-written entry fails the checksum
+ * and misses. Once the table is MAXLOAD full, no more entries are added.
+ * <p>
+ * Only one SolverStore per file may be open in a process, since file locks are
+ * held by the whole process.
+ * <p>
+ * The file has the format:
+ * <ul>
+ * <li> int: MAGIC
+ * <li> int: VERSION
+ * <li> int: capacity, the number of slots, a power of two
+ * <li> int: number of entries
+ * <li> HEADERSIZE - 16 bytes of padding
+ * <li> capacity * SLOTSIZE bytes: the slots. A slot holds the long key (zero for
+ * a free slot), an int checksum, a byte of flags and the move counts by
+ * difficulty, one byte each
+ * </ul>
+ */
+class SolverStore {
+	private final FileChannel channel;
+	private final MappedByteBuffer table;
+	private final int capacity, mask;
+
+	static final int DEFAULTCAPACITY = 1 << 20;
+	private static final int MINCAPACITY = 1 << 10;
+	private static final int MAXCAPACITY = 1 << 25;
+	private static final double MAXLOAD = 0.75;
+
+	private static final int MAGIC = 0x53485354; //"SHST"
+	private static final int VERSION = 1;
+	private static final int HEADERSIZE = 32;
+	private static final int COUNTOFFSET = 12;
+	private static final int SLOTSIZE = 32;
+	private static final int CHECKOFFSET = 8;
+	private static final int FLAGSOFFSET = 12;
+	private static final int MOVESOFFSET = 13;
+	private static final int NUMCOUNTS = ShinroSolver.ARRAYSIZE - 1;
+	private static final int SOLVED = 1;
+
+	/**
+	 * Opens a store, creating it with DEFAULTCAPACITY slots if it doesn't exist
+	 * @param file  the store file
+	 * @throws IOException if the file can't be opened or isn't a store
+	 */
+	SolverStore(File file) throws IOException {
+		this(file, DEFAULTCAPACITY);
+	}
+
+	/**
+	 * Opens a store, creating it if it doesn't exist
+	 * @param file  the store file
+	 * @param capacity  the number of slots of a new store, a power of two from
+	 * MINCAPACITY to MAXCAPACITY. An existing store keeps its own capacity
+	 * @throws IOException if the file can't be opened or isn't a store
+	 * @throws IllegalArgumentException if capacity is out of range or not a power
+	 * of two
+	 */
+	SolverStore(File file, int capacity) throws IOException,
+			IllegalArgumentException {
+		if (capacity < MINCAPACITY || capacity > MAXCAPACITY
+				|| Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("SolverStore: Illegal capacity --> "
+					+ capacity);
+		}
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			FileLock lock = this.channel.lock();
+			try {
+				if (this.channel.size() == 0) {
+					ByteBuffer header = ByteBuffer.allocate(HEADERSIZE);
+					header.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(0);
+					header.rewind();
+					while (header.hasRemaining()) {
+						this.channel.write(header, header.position());
+					}
+					//extend the file to its full size; the slots start out free
+					this.channel.write(ByteBuffer.allocate(1),
+							HEADERSIZE + (long)capacity * SLOTSIZE - 1);
+				}
+				else {
+					ByteBuffer header = ByteBuffer.allocate(HEADERSIZE);
+					while (header.hasRemaining()) {
+						if (this.channel.read(header, header.position()) < 0) {
+							throw new IOException("Not a solver store: " + file);
+						}
+					}
+					header.flip();
+					if (header.getInt() != MAGIC
+							|| header.getInt() != VERSION) {
+						throw new IOException("Not a solver store: " + file);
+					}
+					capacity = header.getInt();
+					if (capacity < MINCAPACITY || capacity > MAXCAPACITY
+							|| Integer.bitCount(capacity) != 1
+							|| this.channel.size()
+									< HEADERSIZE + (long)capacity * SLOTSIZE) {
+						throw new IOException("Damaged solver store: " + file);
+					}
+				}
+			}
+			finally {
+				lock.release();
+			}
+			this.capacity = capacity;
+			this.mask = capacity - 1;
+			this.table = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					HEADERSIZE + (long)capacity * SLOTSIZE);
+		}
+		catch (IOException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Looks up the solver info of a puzzle
+	 * @param key  the puzzle's hash
+	 * @param solverInfo  an array of ShinroSolver.ARRAYSIZE integers that the
+	 * stored solver info is copied into, as {@link ShinroSolver#solve()} returns
+	 * it
+	 * @return true if the puzzle was found, false if solverInfo was left as is
+	 */
+	synchronized boolean get(long key, int[] solverInfo) {
+		if (key == 0) {
+			return false;
+		}
+		for (int i = slot(key, this.mask), probes = 0; probes < this.capacity;
+				i = (i + 1) & this.mask, probes++) {
+			int offset = HEADERSIZE + i * SLOTSIZE;
+			long stored = this.table.getLong(offset);
+			if (stored == 0) {
+				return false;
+			}
+			if (stored == key) {
+				if (this.table.getInt(offset + CHECKOFFSET)
+						!= this.checksum(key, offset)) {
+					return false; //being written by another process
+				}
+				for (int j = 0; j < NUMCOUNTS; j++) {
+					solverInfo[j] = this.table.get(offset + MOVESOFFSET + j);
+				}
+				solverInfo[NUMCOUNTS] =
+						(this.table.get(offset + FLAGSOFFSET) & SOLVED) != 0 ? 1 : 0;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the solver info of a puzzle unless it's already stored or the store
+	 * is full
+	 * @param key  the puzzle's hash
+	 * @param solverInfo  the solver info of a complete solve of the puzzle, as
+	 * {@link ShinroSolver#solve()} returns it
+	 * @return true if the solver info was added
+	 * @throws IOException if the file can't be locked
+	 */
+	synchronized boolean put(long key, int[] solverInfo) throws IOException {
+		if (key == 0) {
+			return false;
+		}
+		for (int j = 0; j < NUMCOUNTS; j++) {
+			if (solverInfo[j] < 0 || solverInfo[j] > Byte.MAX_VALUE) {
+				return false;
+			}
+		}
+		FileLock lock = this.channel.lock();
+		try {
+			int count = this.table.getInt(COUNTOFFSET);
+			for (int i = slot(key, this.mask), probes = 0; probes < this.capacity;
+					i = (i + 1) & this.mask, probes++) {
+				int offset = HEADERSIZE + i * SLOTSIZE;
+				long stored = this.table.getLong(offset);
+				if (stored == key) {
+					return false;
+				}
+				if (stored == 0) {
+					if (count >= this.capacity * MAXLOAD) {
+						return false;
+					}
+					for (int j = 0; j < NUMCOUNTS; j++) {
+						this.table.put(offset + MOVESOFFSET + j, (byte)solverInfo[j]);
+					}
+					this.table.put(offset + FLAGSOFFSET,
+							(byte)(solverInfo[NUMCOUNTS] != 0 ? SOLVED : 0));
+					this.table.putInt(offset + CHECKOFFSET, this.checksum(key, offset));
+					this.table.putLong(offset, key);
+					this.table.putInt(COUNTOFFSET, count + 1);
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			lock.release();
+		}
+	}
+
+	/**
+	 * Gets the number of puzzles in the store
+	 * @return the number of entries, including those added by other processes
+	 */
+	synchronized int size() {
+		return this.table.getInt(COUNTOFFSET);
+	}
+
+	/**
+	 * Gets the number of slots in the store
+	 * @return the capacity the store was created with
+	 */
+	int capacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Writes the store to disk and closes it
+	 * <p>
+	 * Entries reach the file as soon as they're added, so this only makes them
+	 * survive a crash of the operating system.
+	 * @throws IOException if the file can't be written
+	 */
+	synchronized void close() throws IOException {
+		if (this.channel.isOpen()) {
+			this.table.force();
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Calculates the checksum of a slot's key, flags and move counts
+	 * @param key  the slot's key
+	 * @param offset  the offset of the slot in the file
+	 * @return the checksum, which is never zero so that a free slot never
+	 * passes
+	 */
+	private int checksum(long key, int offset) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		for (int j = FLAGSOFFSET; j < MOVESOFFSET + NUMCOUNTS; j++) {
+			h = (h ^ (this.table.get(offset + j) & 0xff)) * 0x100000001b3L;
+		}
+		int result = (int)(h ^ (h >>> 32));
+		return result != 0 ? result : 1;
+	}
+
+	/**
+	 * Gets the home slot of a key
+	 * @param key  the key
+	 * @param mask  the capacity minus one
+	 * @return the index the key is probed from
+	 */
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+}
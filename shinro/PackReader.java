@@ -0,0 +1,252 @@
+package shinro;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to the puzzles in a binary puzzle pack
+ * <p>
+ * The pack file is memory-mapped, so opening a pack of any size is cheap and
+ * reading a puzzle neither parses text nor allocates. Puzzles are numbered from
+ * zero in order of increasing difficulty.
+ * <p>
+ * The binary pack has the format (all numbers big-endian):
+ * <ul>
+ * <li> int: MAGIC
+ * <li> short: VERSION
+ * <li> short: RECORDSIZE
+ * <li> int: number of puzzles n
+ * <li> long: offset of the first record
+ * <li> long: offset of the index
+ * <li> int: number of index entries k
+ * <li> short: length of the pack name in bytes, followed by the UTF-8 name
+ * <li> n records of RECORDSIZE bytes, ordered by difficulty. Every record holds
+ * the spaces in the nibble encoding of {@link PuzzleCodec}, the difficulty as a
+ * short and the solver info as one byte per entry. See
+ * {@link ShinroSolver#solve()} for the meaning of the solver info.
+ * <li> k index entries, ordered by difficulty, each an int difficulty and the int
+ * number of the first puzzle with that difficulty
+ * </ul>
+ * @see PackWriter
+ */
+public class PackReader {
+	private String name;
+	private int numPuzzles;
+	private long recordsOffset;
+	private int[] indexDifficulty, indexFirst;
+	private MappedByteBuffer[] segments;
+
+	public static final int MAGIC = 0x5348504B; //"SHPK"
+	public static final short VERSION = 1;
+	public static final int DIFFICULTYOFFSET = PuzzleCodec.NIBBLEBYTES;
+	public static final int SOLVEROFFSET = DIFFICULTYOFFSET + 2;
+	public static final short RECORDSIZE = 48;
+
+	//the fixed part of the header, without the name
+	private static final int HEADERSIZE = 34;
+
+	//records per mapped segment; a single mapping can't exceed 2GB
+	private static final int SEGMENTSHIFT = 22;
+	private static final int SEGMENTMASK = (1 << SEGMENTSHIFT) - 1;
+
+	/**
+	 * A reusable view of a single puzzle in the pack
+	 * <p>
+	 * An Entry is filled by {@link PackReader#get(int, Entry)} and stays valid
+	 * until it is filled again. Reading from it doesn't allocate.
+	 */
+	public static class Entry {
+		ByteBuffer segment;
+		int offset, number;
+
+		/**
+		 * Gets the number of the puzzle in the pack
+		 * @return the puzzle's number, starting from zero
+		 */
+		public int getNumber() {
+			return this.number;
+		}
+
+		/**
+		 * Gets the difficulty rating of the puzzle
+		 * @return the puzzle's difficulty
+		 */
+		public int getDifficulty() {
+			return this.segment.getShort(this.offset + DIFFICULTYOFFSET);
+		}
+
+		/**
+		 * Gets one entry of the solver info of the puzzle
+		 * @param index  the index into the array returned by
+		 * {@link ShinroSolver#solve()}
+		 * @return the solver info at the index
+		 */
+		public int getSolverInfo(int index) {
+			return this.segment.get(this.offset + SOLVEROFFSET + index);
+		}
+
+		/**
+		 * Gets the value of a space in the puzzle
+		 * @param row  the row index of the space
+		 * @param col  the column index of the space
+		 * @return the value of the space, as in {@link ShinroPuzzle#atPos(int, int)}
+		 */
+		public int atPos(int row, int col) {
+			return PuzzleCodec.getSpace(this.segment, this.offset, row, col);
+		}
+
+		/**
+		 * Copies the spaces of the puzzle into an existing matrix
+		 * @param intMatrix  a SIZE x SIZE matrix to fill
+		 */
+		public void copyTo(int[][] intMatrix) {
+			PuzzleCodec.decode(this.segment, this.offset, intMatrix);
+		}
+
+		/**
+		 * Creates a ShinroPuzzle from this entry
+		 * <p>
+		 * Unlike the other methods, this allocates a new puzzle.
+		 * @return a new ShinroPuzzle with the entry's layout and headers
+		 */
+		public ShinroPuzzle toPuzzle() {
+			int[][] intMatrix = new int[ShinroPuzzle.SIZE][ShinroPuzzle.SIZE];
+			this.copyTo(intMatrix);
+			return new ShinroPuzzle(intMatrix);
+		}
+	}
+
+	/**
+	 * Opens and memory-maps a binary pack
+	 * @param file  the pack file
+	 * @throws IOException if the file can't be read or isn't a binary pack, or if
+	 * its header doesn't fit the size of the file
+	 */
+	public PackReader(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					Math.min(size, 1 << 16));
+			if (size < HEADERSIZE || header.getInt() != MAGIC
+					|| header.getShort() != VERSION
+					|| header.getShort() != RECORDSIZE) {
+				throw new IOException("Not a binary puzzle pack: " + file);
+			}
+			this.numPuzzles = header.getInt();
+			this.recordsOffset = header.getLong();
+			long indexOffset = header.getLong();
+			int indexEntries = header.getInt();
+			int nameLength = header.getShort();
+			//every part must lie within the file, after the header
+			long headerEnd = HEADERSIZE + nameLength;
+			if (nameLength < 0 || headerEnd > header.limit()
+					|| this.numPuzzles < 0 || indexEntries < 0
+					|| this.recordsOffset < headerEnd || indexOffset < headerEnd
+					|| this.recordsOffset > size - (long)this.numPuzzles * RECORDSIZE
+					|| indexOffset > size - indexEntries * 8L) {
+				throw new IOException("Not a binary puzzle pack: " + file);
+			}
+			byte[] nameBytes = new byte[nameLength];
+			header.get(nameBytes);
+			this.name = new String(nameBytes, StandardCharsets.UTF_8);
+
+			ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY,
+					indexOffset, indexEntries * 8L);
+			this.indexDifficulty = new int[indexEntries];
+			this.indexFirst = new int[indexEntries];
+			for (int i = 0; i < indexEntries; i++) {
+				this.indexDifficulty[i] = index.getInt();
+				this.indexFirst[i] = index.getInt();
+				if (this.indexFirst[i] < 0 || this.indexFirst[i] > this.numPuzzles) {
+					throw new IOException("Not a binary puzzle pack: " + file);
+				}
+			}
+
+			int numSegments = (int)((this.numPuzzles + (long)SEGMENTMASK)
+					>>> SEGMENTSHIFT);
+			this.segments = new MappedByteBuffer[numSegments];
+			for (int i = 0; i < numSegments; i++) {
+				long first = (long)i << SEGMENTSHIFT;
+				long count = Math.min(this.numPuzzles - first, SEGMENTMASK + 1L);
+				this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						this.recordsOffset + first * RECORDSIZE, count * RECORDSIZE);
+			}
+		}
+		finally {
+			channel.close(); //mappings stay valid after the channel is closed
+		}
+	}
+
+	/**
+	 * Gets the name of the pack
+	 * @return the pack name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Gets the number of puzzles in the pack
+	 * @return the number of puzzles
+	 */
+	public int size() {
+		return this.numPuzzles;
+	}
+
+	/**
+	 * Points an Entry at a puzzle in the pack
+	 * @param i  the number of the puzzle, starting from zero
+	 * @param entry  the Entry to fill
+	 * @return the filled Entry
+	 * @throws IndexOutOfBoundsException if there is no such puzzle
+	 */
+	public Entry get(int i, Entry entry) {
+		if (i < 0 || i >= this.numPuzzles) {
+			throw new IndexOutOfBoundsException("get: no puzzle " + i);
+		}
+		entry.segment = this.segments[i >>> SEGMENTSHIFT];
+		entry.offset = (i & SEGMENTMASK) * RECORDSIZE;
+		entry.number = i;
+		return entry;
+	}
+
+	/**
+	 * Gets the number of the first puzzle with at least a given difficulty
+	 * @param difficulty  the least difficulty
+	 * @return the number of the first such puzzle or size() if there is none
+	 */
+	public int lowerBound(int difficulty) {
+		int lo = 0, hi = this.indexDifficulty.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.indexDifficulty[mid] < difficulty) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return (lo < this.indexFirst.length) ? this.indexFirst[lo]
+				: this.numPuzzles;
+	}
+
+	/**
+	 * Gets the number of the first puzzle more difficult than a given difficulty
+	 * <p>
+	 * The puzzles with difficulties from lo to hi are numbered from
+	 * lowerBound(lo) up to but not including upperBound(hi).
+	 * @param difficulty  the greatest difficulty
+	 * @return the number of the first puzzle more difficult or size() if there is
+	 * none
+	 */
+	public int upperBound(int difficulty) {
+		return this.lowerBound(difficulty + 1);
+	}
+}
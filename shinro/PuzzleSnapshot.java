@@ -0,0 +1,286 @@
+package shinro;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of a ShinroPuzzle's spaces and header numbers
+ * <p>
+ * A snapshot never changes, so it can be handed to other threads without copying
+ * or locking and used as a key in hash maps and caches. Its spaces are packed one
+ * byte each and its 64-bit hash is calculated once, when it is built.
+ * <p>
+ * Snapshots are changed by making a {@link Builder} from them. The builder shares
+ * the snapshot's arrays and only copies the spaces or the header numbers once
+ * they are first written, so a snapshot that differs from its parent in a few
+ * spaces shares the parent's header numbers, and a builder that changes nothing
+ * builds the parent itself.
+ */
+public final class PuzzleSnapshot {
+	private static final int SIZE = ShinroPuzzle.SIZE;
+	private static final int CELLS = SIZE * SIZE;
+	private static final long FNVOFFSET = 0xcbf29ce484222325L;
+	private static final long FNVPRIME = 0x100000001b3L;
+
+	private final byte[] cells;   //row-major
+	private final byte[] headers; //rows, then columns
+	private final long hash;
+
+	private PuzzleSnapshot(byte[] cells, byte[] headers) {
+		this.cells = cells;
+		this.headers = headers;
+		long hash = FNVOFFSET;
+		for (byte cell : cells) {
+			hash = (hash ^ (cell & 0xff)) * FNVPRIME;
+		}
+		for (byte header : headers) {
+			hash = (hash ^ (header & 0xff)) * FNVPRIME;
+		}
+		this.hash = hash;
+	}
+
+	/**
+	 * Builds new snapshots by changing the spaces and header numbers of an
+	 * existing one
+	 * <p>
+	 * A builder isn't thread-safe, but the snapshots it builds are. It can keep
+	 * being changed and built after build() is called.
+	 */
+	public static final class Builder {
+		private PuzzleSnapshot source;
+		private byte[] cells, headers;
+		private boolean cellsShared, headersShared;
+
+		/**
+		 * Creates a builder for an empty puzzle with all header numbers zero
+		 */
+		public Builder() {
+			this.cells = new byte[CELLS];
+			this.headers = new byte[2 * SIZE];
+		}
+
+		private Builder(PuzzleSnapshot source) {
+			this.source = source;
+			this.cells = source.cells;
+			this.headers = source.headers;
+			this.cellsShared = this.headersShared = true;
+		}
+
+		/**
+		 * Gets a value from the spaces being built
+		 * @param row  the row index of the space to get
+		 * @param col  the column index of the space to get
+		 * @return the int value at the desired coordinates
+		 */
+		public int atPos(int row, int col) {
+			return this.cells[row * SIZE + col];
+		}
+
+		/**
+		 * Sets a space to a specific value
+		 * @param row  the row index of the space to set
+		 * @param col  the column index of the space to set
+		 * @param value  any value a space of a ShinroPuzzle can hold, from X to
+		 * POINT
+		 * @return this builder
+		 * @throws IllegalArgumentException if value is less than X or greater than
+		 * POINT
+		 */
+		public Builder setPos(int row, int col, int value)
+				throws IllegalArgumentException {
+			if (value < ShinroPuzzle.X || value > ShinroPuzzle.POINT) {
+				throw new IllegalArgumentException("setPos: Illegal value --> "
+						+ value);
+			}
+			if (this.cells[row * SIZE + col] != value) {
+				if (this.cellsShared) {
+					this.cells = this.cells.clone();
+					this.cellsShared = false;
+				}
+				this.cells[row * SIZE + col] = (byte)value;
+			}
+			return this;
+		}
+
+		/**
+		 * Sets the number of points in a row
+		 * @param row  the row whose header number is to be set
+		 * @param value  the value to set the row header to
+		 * @return this builder
+		 */
+		public Builder setRowHeaderNum(int row, int value) {
+			this.setHeader(row, value);
+			return this;
+		}
+
+		/**
+		 * Sets the number of points in a column
+		 * @param col  the column whose header number is to be set
+		 * @param value  the value to set the column header to
+		 * @return this builder
+		 */
+		public Builder setColHeaderNum(int col, int value) {
+			this.setHeader(SIZE + col, value);
+			return this;
+		}
+
+		/**
+		 * Sets the row and column header numbers to the number of points in each
+		 * row and column
+		 * @return this builder
+		 */
+		public Builder setHeaders() {
+			for (int i = 0; i < SIZE; i++) {
+				int inRow = 0, inCol = 0;
+				for (int j = 0; j < SIZE; j++) {
+					if (this.cells[i * SIZE + j] == ShinroPuzzle.POINT) {
+						inRow++;
+					}
+					if (this.cells[j * SIZE + i] == ShinroPuzzle.POINT) {
+						inCol++;
+					}
+				}
+				this.setHeader(i, inRow);
+				this.setHeader(SIZE + i, inCol);
+			}
+			return this;
+		}
+
+		/**
+		 * Builds a snapshot of the spaces and header numbers set so far
+		 * @return the snapshot, which is the builder's source snapshot if nothing
+		 * has been changed
+		 */
+		public PuzzleSnapshot build() {
+			if (this.source != null && this.cellsShared && this.headersShared) {
+				return this.source;
+			}
+			this.source = new PuzzleSnapshot(this.cells, this.headers);
+			this.cellsShared = this.headersShared = true;
+			return this.source;
+		}
+
+		/* Sets a header number, copying the headers first if they are shared */
+		private void setHeader(int index, int value) {
+			if (this.headers[index] != value) {
+				if (this.headersShared) {
+					this.headers = this.headers.clone();
+					this.headersShared = false;
+				}
+				this.headers[index] = (byte)value;
+			}
+		}
+	}
+
+	/**
+	 * Takes a snapshot of a puzzle
+	 * @param puzzle  the puzzle, which may be partially solved
+	 * @return a snapshot of the puzzle's spaces and header numbers
+	 */
+	public static PuzzleSnapshot of(ShinroPuzzle puzzle) {
+		byte[] cells = new byte[CELLS];
+		byte[] headers = new byte[2 * SIZE];
+		for (int row = 0; row < SIZE; row++) {
+			for (int col = 0; col < SIZE; col++) {
+				cells[row * SIZE + col] = (byte)puzzle.atPos(row, col);
+			}
+			headers[row] = (byte)puzzle.getRowHeaderNum(row);
+			headers[SIZE + row] = (byte)puzzle.getColHeaderNum(row);
+		}
+		return new PuzzleSnapshot(cells, headers);
+	}
+
+	/**
+	 * Gets a value from the snapshot's spaces
+	 * @param row  the row index of the space to get
+	 * @param col  the column index of the space to get
+	 * @return the int value at the desired coordinates
+	 */
+	public int atPos(int row, int col) {
+		return this.cells[row * SIZE + col];
+	}
+
+	/**
+	 * Gets the number of points in the specified column
+	 * @param col  the column whose header number is to be returned
+	 * @return an integer representing the number of points in the column
+	 */
+	public int getColHeaderNum(int col) {
+		return this.headers[SIZE + col];
+	}
+
+	/**
+	 * Gets the 64-bit hash of the snapshot's spaces and header numbers
+	 * <p>
+	 * Unlike {@link ShinroPuzzle#getCanonicalHash()}, every space counts and
+	 * rotations and reflections hash differently.
+	 * @return the hash
+	 */
+	public long getHash() {
+		return this.hash;
+	}
+
+	/**
+	 * Gets the number of points in the specified row
+	 * @param row  the row whose header number is to be returned
+	 * @return an integer representing the number of points in the row
+	 */
+	public int getRowHeaderNum(int row) {
+		return this.headers[row];
+	}
+
+	/**
+	 * Makes a builder that starts out with this snapshot's spaces and header
+	 * numbers
+	 * @return the builder
+	 */
+	public Builder toBuilder() {
+		return new Builder(this);
+	}
+
+	/**
+	 * Makes a new puzzle with the snapshot's spaces and header numbers
+	 * <p>
+	 * Like a puzzle created from an int matrix, the puzzle needs as many points
+	 * as the snapshot has.
+	 * @return the puzzle, which can be changed without affecting the snapshot
+	 */
+	public ShinroPuzzle toPuzzle() {
+		int[][] intMatrix = new int[SIZE][SIZE];
+		for (int row = 0; row < SIZE; row++) {
+			for (int col = 0; col < SIZE; col++) {
+				intMatrix[row][col] = this.cells[row * SIZE + col];
+			}
+		}
+		ShinroPuzzle puzzle = new ShinroPuzzle(intMatrix);
+		for (int i = 0; i < SIZE; i++) {
+			puzzle.setRowHeaderNum(i, this.headers[i]);
+			puzzle.setColHeaderNum(i, this.headers[SIZE + i]);
+		}
+		return puzzle;
+	}
+
+	/* Snapshots are equal if all their spaces and header numbers are
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PuzzleSnapshot)) {
+			return false;
+		}
+		PuzzleSnapshot other = (PuzzleSnapshot)obj;
+		return this.hash == other.hash
+				&& Arrays.equals(this.cells, other.cells)
+				&& Arrays.equals(this.headers, other.headers);
+	}
+
+	/* The 64-bit hash folded to 32 bits
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (int)(this.hash ^ (this.hash >>> 32));
+	}
+}
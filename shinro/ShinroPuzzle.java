@@ -1,6 +1,7 @@
 package shinro;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Data structure and methods to represent a shinro puzzle
@@ -17,6 +18,54 @@ public class ShinroPuzzle implements Cloneable{
 			N = 1, NE = 2, E = 3, SE = 4, S = 5, SW = 6, W = 7, NW = 8,
 			n = -1, ne = -2, e = -3, se = -4, s = -5, sw = -6, w = -7, nw = -8;
 	
+	/* The 8 symmetries of the board: a left-right mirror (for symmetries 4-7)
+	 * followed by 0-3 clockwise quarter turns. For every symmetry, where each
+	 * space (row * SIZE + col) goes, what each arrow becomes and where each
+	 * header goes (rows 0 to SIZE - 1, then columns).
+	 */
+	private static final int SYMMETRIES = 8;
+	private static final int[][] SYMMETRYSPACE = new int[SYMMETRIES][SIZE * SIZE];
+	private static final int[][] SYMMETRYARROW = new int[SYMMETRIES][NW + 1];
+	private static final int[][] SYMMETRYHEADER = new int[SYMMETRIES][2 * SIZE];
+	
+	//the row and column steps of each arrow direction, indexed N to NW
+	private static final int[] DIRROW = {0, -1, -1, 0, 1, 1, 1, 0, -1};
+	private static final int[] DIRCOL = {0, 0, 1, 1, 1, 0, -1, -1, -1};
+	
+	static {
+		for (int t = 0; t < SYMMETRIES; t++) {
+			for (int row = 0; row < SIZE; row++) {
+				for (int col = 0; col < SIZE; col++) {
+					int r = row, c = (t >= 4) ? SIZE - 1 - col : col;
+					for (int k = 0; k < t % 4; k++) {
+						int turned = c;
+						c = SIZE - 1 - r;
+						r = turned;
+					}
+					SYMMETRYSPACE[t][row * SIZE + col] = r * SIZE + c;
+				}
+			}
+			for (int dir = N; dir <= NW; dir++) {
+				int d = (t >= 4) ? ((8 - (dir - 1)) % 8) + 1 : dir;
+				for (int k = 0; k < t % 4; k++) {
+					d = ((d - 1 + 2) % 8) + 1;
+				}
+				SYMMETRYARROW[t][dir] = d;
+			}
+			for (int i = 0; i < SIZE; i++) {
+				//a line stays a row or becomes a column depending on where its
+				//first two spaces go
+				int a = SYMMETRYSPACE[t][i * SIZE], b = SYMMETRYSPACE[t][i * SIZE + 1];
+				SYMMETRYHEADER[t][i] = (a / SIZE == b / SIZE) ? a / SIZE 
+						: SIZE + a % SIZE;
+				a = SYMMETRYSPACE[t][i];
+				b = SYMMETRYSPACE[t][SIZE + i];
+				SYMMETRYHEADER[t][SIZE + i] = (a / SIZE == b / SIZE) ? a / SIZE 
+						: SIZE + a % SIZE;
+			}
+		}
+	}
+	
 	/**
 	 * Creates a new empty ShinroPuzzle
 	 * <p>
@@ -91,10 +140,18 @@ public class ShinroPuzzle implements Cloneable{
 	public void clearSpace(int row, int col) {
 		if (!this.isArrow(row, col)) {
 			if (this.atPos(row, col) == POINT) {
-				for (GridPos arrow : this.getPointingArrows(row, col)) {
-					if (this.getTypeInList(POINT, 
-							this.getArrowToEdge(arrow)).size() == 1) {
-						this.unsatsifyArrow(arrow);
+				//the same arrows as getPointingArrows, without building lists
+				for (int dir = N; dir <= NW; dir++) {
+					int arrow = this.getOpposingArrow(dir);
+					int myRow = row + DIRROW[dir], myCol = col + DIRCOL[dir];
+					while (myRow >= 0 && myRow < this.size 
+							&& myCol >= 0 && myCol < this.size) {
+						if (Math.abs(this.puzzleGrid[myRow][myCol]) == arrow
+								&& this.countPointsToEdge(myRow, myCol, arrow) == 1) {
+							this.unsatsifyArrow(myRow, myCol);
+						}
+						myRow += DIRROW[dir];
+						myCol += DIRCOL[dir];
 					}
 				}
 			}
@@ -104,6 +161,9 @@ public class ShinroPuzzle implements Cloneable{
 	
 	/**
 	 * Returns a clone of this ShinroPuzzle instance
+	 * <p>
+	 * Xs and satisfied arrows are copied as they are, so a puzzle can be cloned
+	 * partway through a solve.
 	 * @return the copied ShinroPuzzle
 	 */
 	@Override
@@ -111,7 +171,7 @@ public class ShinroPuzzle implements Cloneable{
 		ShinroPuzzle copy = new ShinroPuzzle();
 		for (int i = 0; i < this.size; i++) {
 			for (int j = 0; j < this.size; j++) {
-				copy.setPos(i, j, this.atPos(i, j));
+				copy.puzzleGrid[i][j] = this.puzzleGrid[i][j];
 			}
 			copy.setRowHeaderNum(i, this.getRowHeaderNum(i));
 			copy.setColHeaderNum(i, this.getColHeaderNum(i));
@@ -119,6 +179,25 @@ public class ShinroPuzzle implements Cloneable{
 		return copy;
 	}
 	
+	/**
+	 * Counts the points from an arrow to the edge it points to
+	 * @param row  the row index of the arrow
+	 * @param col  the column index of the arrow
+	 * @param dir  the direction of the arrow, N to NW
+	 * @return the number of points in the arrow's path
+	 */
+	private int countPointsToEdge(int row, int col, int dir) {
+		int count = 0;
+		for (int myRow = row, myCol = col; 
+				myRow >= 0 && myRow < this.size && myCol >= 0 && myCol < this.size;
+				myRow += DIRROW[dir], myCol += DIRCOL[dir]) {
+			if (this.puzzleGrid[myRow][myCol] == POINT) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
 	/**
 	 * Tests for logical equality between two ShinroPuzzles
 	 * <p>
@@ -238,6 +317,59 @@ public class ShinroPuzzle implements Cloneable{
 		return result;
 	}
 	
+	/**
+	 * Gets a hash of this puzzle that is the same for all its rotations and 
+	 * reflections
+	 * <p>
+	 * Only the clues are hashed: the arrows, whether satisfied or not, and the
+	 * header numbers. Points and Xs are ignored, so a puzzle has the same hash
+	 * whether it is unsolved, partially solved or solved. The clues are encoded
+	 * under each of the 8 symmetries of the board and the lexicographically 
+	 * smallest encoding, the canonical form, is hashed.
+	 * @return a 64-bit hash of the puzzle's canonical form
+	 */
+	public long getCanonicalHash() {
+		int words = (SIZE * SIZE + 2 * SIZE + 15) / 16; //4-bit clues per long
+		long[] best = new long[words], encoding = new long[words];
+		for (int t = 0; t < SYMMETRIES; t++) {
+			Arrays.fill(encoding, 0);
+			for (int row = 0; row < this.size; row++) {
+				for (int col = 0; col < this.size; col++) {
+					int value = this.puzzleGrid[row][col];
+					if (this.isArrow(value)) {
+						int k = SYMMETRYSPACE[t][row * SIZE + col];
+						encoding[k >> 4] |= (long)SYMMETRYARROW[t][Math.abs(value)] 
+								<< ((k & 15) << 2);
+					}
+				}
+			}
+			for (int i = 0; i < this.size; i++) {
+				int k = SIZE * SIZE + SYMMETRYHEADER[t][i];
+				encoding[k >> 4] |= (long)this.rowHeaderNum[i] << ((k & 15) << 2);
+				k = SIZE * SIZE + SYMMETRYHEADER[t][SIZE + i];
+				encoding[k >> 4] |= (long)this.colHeaderNum[i] << ((k & 15) << 2);
+			}
+			for (int i = 0; i < words; i++) {
+				int order = Long.compareUnsigned(encoding[i], best[i]);
+				if (t == 0 || order < 0) {
+					System.arraycopy(encoding, 0, best, 0, words);
+					break;
+				}
+				else if (order > 0) {
+					break;
+				}
+			}
+		}
+		long hash = 0;
+		for (long word : best) {
+			hash = Long.rotateLeft((hash ^ word) * 0x9E3779B97F4A7C15L, 31);
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
 	/**
 	 * Gets an ArrayList of all coordinate pairs in a specified column
 	 * @param col  the column whose list of spaces is to be returned
@@ -540,11 +672,16 @@ public class ShinroPuzzle implements Cloneable{
 	 * Populates a ShinroPuzzle's spaces based on the content of an integer matrix.
 	 * <p>
 	 * A point will increment the relevant row and column header numbers as well as
-	 * numPoints.
+	 * numPoints. Both are counted from zero, so an existing puzzle can be
+	 * re-initialized, even from its own {@link #toIntMatrix()}.
 	 * @param intMatrix  a two-dimensional array if ints containing values to
 	 * assign to corresponding spaces in the puzzleGrid
 	 */
 	public void initPuzzle(int[][] intMatrix) {
+		this.numPoints = 0;
+		for (int i = 0; i < this.size; i++) {
+			this.rowHeaderNum[i] = this.colHeaderNum[i] = 0;
+		}
 		for (int i = 0; i < this.size; i++) {
 			for (int j = 0; j < this.size; j++) {
 				int atPos = intMatrix[i][j];
@@ -686,9 +823,18 @@ public class ShinroPuzzle implements Cloneable{
 	public void putPoint(int row, int col) {
 		if (!this.isArrow(row, col)) {
 			this.puzzleGrid[row][col] = POINT;
-			ArrayList<GridPos> myArrows = this.getPointingArrows(row, col);
-			for (GridPos pos: myArrows) {
-				this.satsifyArrow(pos);
+			//the same arrows as getPointingArrows, without building lists
+			for (int dir = N; dir <= NW; dir++) {
+				int arrow = this.getOpposingArrow(dir);
+				int myRow = row + DIRROW[dir], myCol = col + DIRCOL[dir];
+				while (myRow >= 0 && myRow < this.size 
+						&& myCol >= 0 && myCol < this.size) {
+					if (Math.abs(this.puzzleGrid[myRow][myCol]) == arrow) {
+						this.satsifyArrow(myRow, myCol);
+					}
+					myRow += DIRROW[dir];
+					myCol += DIRCOL[dir];
+				}
 			}
 		}
 	}
@@ -951,26 +1097,27 @@ public class ShinroPuzzle implements Cloneable{
 	 * @return true if the puzzle is in a solved state, false otherwise
 	 */
 	public boolean verifySolution() {
-		if (this.getListByType(POINT).size() < this.getNumPoints()) {
-			return false;
-		}
-		else {
-			for (int i = 0; i < this.size(); i++) {
-				if (this.getRowHeaderNum(i) 
-						!= this.getTypeInList(POINT, this.getRow(i)).size()) {
-					return false;
+		int pointsInGrid = 0;
+		boolean allSatisfied = true;
+		for (int i = 0; i < this.size; i++) {
+			int pointsInRow = 0, pointsInCol = 0;
+			for (int j = 0; j < this.size; j++) {
+				if (this.puzzleGrid[i][j] == POINT) {
+					pointsInRow++;
 				}
-				if (this.getColHeaderNum(i) 
-						!= this.getTypeInList(POINT, this.getCol(i)).size()) {
-					return false;
+				else if (this.isArrow(i, j) && !this.isSatisfied(i, j)) {
+					allSatisfied = false;
 				}
-			}
-			for (GridPos arrow : this.getListByType(N)) { //all arrows 
-				if (!this.isSatisfied(arrow)) {
-					return false;
+				if (this.puzzleGrid[j][i] == POINT) {
+					pointsInCol++;
 				}
 			}
-			return true;
+			pointsInGrid += pointsInRow;
+			if (this.rowHeaderNum[i] != pointsInRow 
+					|| this.colHeaderNum[i] != pointsInCol) {
+				allSatisfied = false;
+			}
 		}
+		return pointsInGrid >= this.getNumPoints() && allSatisfied;
 	}
 }
@@ -1,7 +1,5 @@
 package shinro;
 
-import java.util.ArrayList;
-
 /**
  * Finds the number and types of moves required to solve a given shinro puzzle
  * <p>
@@ -31,10 +29,87 @@ import java.util.ArrayList;
 public class ShinroSolver {
 	private ShinroPuzzle puzzle;
 	private int[] numMovesByDifficulty;
+	private boolean earlyExit;
 	
 	private static final int DIFFICULTYLEVELS = 7;
 	public static final int ARRAYSIZE = DIFFICULTYLEVELS + 2;
 	
+	private static SolveObserver solveObserver = null;
+	
+	/* Sets of spaces are masks with bit row * SIZE + col set for every space in
+	 * them; a long holds all 64 spaces of the board. ARROWPATHS holds the spaces
+	 * from every space to the edge in every arrow direction, N to NW.
+	 */
+	private static final int CELLS = ShinroPuzzle.SIZE * ShinroPuzzle.SIZE;
+	private static final long[] ROWMASKS = new long[ShinroPuzzle.SIZE];
+	private static final long[] COLMASKS = new long[ShinroPuzzle.SIZE];
+	private static final long[][] ARROWPATHS = 
+			new long[CELLS][ShinroPuzzle.NW + 1];
+	
+	static {
+		ShinroPuzzle board = new ShinroPuzzle();
+		for (int row = 0; row < ShinroPuzzle.SIZE; row++) {
+			for (int col = 0; col < ShinroPuzzle.SIZE; col++) {
+				ROWMASKS[row] |= getBit(row, col);
+				COLMASKS[col] |= getBit(row, col);
+				for (int dir = ShinroPuzzle.N; dir <= ShinroPuzzle.NW; dir++) {
+					for (GridPos pos : board.getSpacesToEdge(row, col, dir)) {
+						ARROWPATHS[row * ShinroPuzzle.SIZE + col][dir] |= 
+								getBit(pos.getRow(), pos.getCol());
+					}
+				}
+			}
+		}
+	}
+	
+	//scratch space for the strategies, so that solving doesn't allocate
+	private final int[] arrows = new int[CELLS];
+	private int numArrows;
+	private final long[] emptyInPath = new long[CELLS];
+	private final int[] arrowSet = new int[CELLS * ShinroPuzzle.SIZE];
+	private int arrowSetSize;
+	private final int[] removals = new int[CELLS];
+	
+	/**
+	 * A condition under which a budgeted solve gives up before completion
+	 * @see ShinroSolver#solve(int, long, GiveUpCondition)
+	 */
+	public interface GiveUpCondition {
+		/**
+		 * Checked after every move of a budgeted solve
+		 * @param numMovesByDifficulty  the moves made so far, indexed as in the 
+		 * array returned by {@link ShinroSolver#solve()}
+		 * @return true if the solver should stop
+		 */
+		boolean shouldGiveUp(int[] numMovesByDifficulty);
+	}
+	
+	/**
+	 * Watches every solve of every ShinroSolver, for instance to record it as a
+	 * profiling event
+	 * <p>
+	 * The observer is called on the solving thread, so it has to be thread-safe.
+	 * While no observer is set, a solve only checks for one once.
+	 * @see ShinroSolver#setSolveObserver(SolveObserver)
+	 */
+	public interface SolveObserver {
+		/**
+		 * Called before a solve makes its first move
+		 * @return a token handed back to {@link #solveFinished}; may be null
+		 */
+		Object solveStarted();
+		
+		/**
+		 * Called once a solve has stopped
+		 * @param token  the token returned by solveStarted
+		 * @param numMovesByDifficulty  the moves made, indexed as in the array 
+		 * returned by {@link ShinroSolver#solve()}
+		 * @param earlyExit  whether the solve gave up before completion
+		 */
+		void solveFinished(Object token, int[] numMovesByDifficulty, 
+				boolean earlyExit);
+	}
+	
 	/**
 	 * Create a new default ShinroSolver instance
 	 * <p>
@@ -61,6 +136,26 @@ public class ShinroSolver {
 		}
 	}
 	
+	/**
+	 * Determines whether the last call to solve gave up early
+	 * @return true if the last solve stopped because a budget was exceeded or its
+	 * GiveUpCondition was met
+	 */
+	public boolean isEarlyExit() {
+		return this.earlyExit;
+	}
+	
+	/**
+	 * Sets the observer that every solve reports to
+	 * <p>
+	 * Solves that are running when the observer changes may report to the old
+	 * one or to none at all.
+	 * @param observer  the observer or null to stop observing
+	 */
+	public static void setSolveObserver(SolveObserver observer) {
+		solveObserver = observer;
+	}
+	
 	/**
 	 * Gets the puzzle field of this ShinroSolver
 	 * @return the ShinroPuzzle referenced by this ShinroSolver's puzzle field
@@ -78,149 +173,169 @@ public class ShinroSolver {
 	}
 	
 	/**
-	 * Gets an ArrayList of the spaces "behind" an arrow
+	 * Resets the puzzle and clears the move counts, so that the puzzle can be
+	 * solved again
 	 * <p>
-	 * The list goes in the opposite direction that the arrow points.
-	 * If the space in question is not an arrow, an empty ArrayList is returned.
+	 * Together with {@link #setPuzzle(ShinroPuzzle)}, this lets one solver solve
+	 * any number of puzzles without allocating.
+	 */
+	public void reset() {
+		this.puzzle.reset();
+		for (int i = 0; i < this.numMovesByDifficulty.length; i++) {
+			this.numMovesByDifficulty[i] = 0;
+		}
+	}
+
+	/**
+	 * Gets the spaces "behind" an arrow
+	 * <p>
+	 * The spaces go in the opposite direction that the arrow points, up to but
+	 * not including the first arrow pointing back at it. If the space in question
+	 * is not a horizontal or vertical arrow, no spaces are returned.
 	 * @param row  the row index of the arrow
 	 * @param col  the column index of the arrow
-	 * @return an ArrayList of GridPos representing the spaces "behind" the specified
-	 * arrow
+	 * @return a mask of the spaces "behind" the specified arrow
 	 */
-	private ArrayList<GridPos> getSpacesBehindArrow(int row, int col) {
-		ArrayList<GridPos> myList = new ArrayList<GridPos>();
-		if (!puzzle.isArrow(row, col)) {
-			return myList;
-		}
-		else {
-			int i;
-			switch (puzzle.atPos(row, col)) {
-			case ShinroPuzzle.n: //pass through
-			case ShinroPuzzle.N: for (i = row; i < puzzle.size(); i++) {
-						if (puzzle.isArrow(i, col) && 
-								(puzzle.atPos(i, col) == ShinroPuzzle.S ||
-										puzzle.atPos(i, col) == ShinroPuzzle.s)) {
-							break;
-						}
-						myList.add(new GridPos(i, col));
+	private long getSpacesBehindArrow(int row, int col) {
+		long result = 0;
+		int i;
+		switch (puzzle.atPos(row, col)) {
+		case ShinroPuzzle.n: //pass through
+		case ShinroPuzzle.N: for (i = row; i < puzzle.size(); i++) {
+					if (puzzle.atPos(i, col) == ShinroPuzzle.S ||
+							puzzle.atPos(i, col) == ShinroPuzzle.s) {
+						break;
 					}
-					break;
-			case ShinroPuzzle.s: //pass through
-			case ShinroPuzzle.S: for (i = row; i >= 0; i--) {
-						if (puzzle.isArrow(i, col) && 
-								(puzzle.atPos(i, col) == ShinroPuzzle.N ||
-										puzzle.atPos(i, col) == ShinroPuzzle.n)) {
-							break;
-						}
-						myList.add(new GridPos(i, col));
+					result |= getBit(i, col);
+				}
+				break;
+		case ShinroPuzzle.s: //pass through
+		case ShinroPuzzle.S: for (i = row; i >= 0; i--) {
+					if (puzzle.atPos(i, col) == ShinroPuzzle.N ||
+							puzzle.atPos(i, col) == ShinroPuzzle.n) {
+						break;
 					}
-					break;
-			case ShinroPuzzle.e: //pass through
-			case ShinroPuzzle.E: for (i = col; i >= 0; i--) {
-						if (puzzle.isArrow(row, i) && 
-								(puzzle.atPos(row, i) == ShinroPuzzle.W ||
-										puzzle.atPos(row, i) == ShinroPuzzle.w)) {
-							break;
-						}
-						myList.add(new GridPos(row, i));
+					result |= getBit(i, col);
+				}
+				break;
+		case ShinroPuzzle.e: //pass through
+		case ShinroPuzzle.E: for (i = col; i >= 0; i--) {
+					if (puzzle.atPos(row, i) == ShinroPuzzle.W ||
+							puzzle.atPos(row, i) == ShinroPuzzle.w) {
+						break;
 					}
-					break;
-			case ShinroPuzzle.w: //pass through
-			case ShinroPuzzle.W: for (i = col; i < puzzle.size(); i++) {
-						if (puzzle.isArrow(row, i) && 
-								(puzzle.atPos(row, i) == ShinroPuzzle.E ||
-										puzzle.atPos(row, i) == ShinroPuzzle.e)) {
-							break;
-						}
-						myList.add(new GridPos(row, i));
+					result |= getBit(row, i);
+				}
+				break;
+		case ShinroPuzzle.w: //pass through
+		case ShinroPuzzle.W: for (i = col; i < puzzle.size(); i++) {
+					if (puzzle.atPos(row, i) == ShinroPuzzle.E ||
+							puzzle.atPos(row, i) == ShinroPuzzle.e) {
+						break;
 					}
-					break;
-			default: return myList;
-			}
-			return myList;
-		}		
+					result |= getBit(row, i);
+				}
+				break;
+		default: break;
+		}
+		return result;
 	}
-	
+
 	/**
-	 * GridPos-based convenience method for {@link #getSpacesBehindArrow(int, int)}
-	 * @param pos The GridPos of the specified arrow
-	 * @return an ArrayList of GridPos representing the spaces "behind" the specified
-	 * arrow
+	 * Gets the bit of a space in a mask of spaces
+	 * @param row  the row index of the space
+	 * @param col  the column index of the space
+	 * @return a mask with only the space's bit set
 	 */
-	private ArrayList<GridPos> getSpacesBehindArrow(GridPos pos) {
-		return this.getSpacesBehindArrow(pos.getRow(), pos.getCol());
+	private static long getBit(int row, int col) {
+		return 1L << (row * ShinroPuzzle.SIZE + col);
 	}
-	
-	private ArrayList<GridPos> getUnsatisfiedArrows() {
-		ArrayList <GridPos> myList = 
-				puzzle.getListByType(ShinroPuzzle.N); //any arrow
-		ArrayList <GridPos> result = new ArrayList<GridPos>();
-		for (GridPos pos : myList) {
-			if (!puzzle.isSatisfied(pos)) {
-				result.add(pos);
+
+	/**
+	 * Gets a mask of every space that contains a specified type
+	 * @param type  EMPTY or POINT
+	 * @return a mask of the spaces of that type
+	 */
+	private long getMaskByType(int type) {
+		long result = 0;
+		for (int row = 0; row < puzzle.size(); row++) {
+			for (int col = 0; col < puzzle.size(); col++) {
+				if (puzzle.atPos(row, col) == type) {
+					result |= getBit(row, col);
+				}
 			}
 		}
 		return result;
 	}
-	
+
 	/**
-	 * Determines whether listA contains listB
-	 * @param listA  the containing list
-	 * @param listB  the contained list 
-	 * @return true if listA contains listB
+	 * Gets the rows or columns a mask of spaces has spaces in
+	 * @param spaces  the mask of spaces
+	 * @param lines  ROWMASKS or COLMASKS
+	 * @return a mask with bit i set if line i has a space in the mask
 	 */
-	private boolean listContainsList(ArrayList<GridPos> listA, 
-			ArrayList<GridPos> listB) {
-		for (GridPos pos : listB) {
-			if (!listA.contains(pos)) {
-				return false;
+	private static int getLines(long spaces, long[] lines) {
+		int result = 0;
+		for (int i = 0; i < lines.length; i++) {
+			if ((spaces & lines[i]) != 0) {
+				result |= 1 << i;
 			}
 		}
-		return true;
+		return result;
 	}
-	
+
 	/**
-	 * Determines whether or not listA and listB have any intersecting elements
-	 * @param listA  one of the lists to check for intersection
-	 * @param listB  the other list to check for intersection
-	 * @return true of the lists have any intersecting elements
+	 * Finds the unsatisfied arrows and the empty spaces in their paths
+	 * <p>
+	 * The arrows are put in arrows in row-major order, as getListByType lists
+	 * them, and the empty spaces in the path of each one in emptyInPath.
+	 * @param empty  the mask of empty spaces
 	 */
-	private boolean listIntersectsList(ArrayList<GridPos> listA, 
-			ArrayList<GridPos> listB) {
-		for (GridPos pos : listA) {
-			if (listB.contains(pos)) {
-				return true;
+	private void findUnsatisfiedArrows(long empty) {
+		this.numArrows = 0;
+		for (int space = 0; space < CELLS; space++) {
+			int arrow = puzzle.atPos(space / ShinroPuzzle.SIZE,
+					space % ShinroPuzzle.SIZE);
+			if (arrow > 0 && arrow < ShinroPuzzle.POINT) { //unsatisfied arrow
+				this.arrows[this.numArrows++] = space;
+				this.emptyInPath[space] = ARROWPATHS[space][arrow] & empty;
 			}
 		}
-		return false;
-	}	
-	
+	}
+
 	/**
-	 * Removes arrows from a list that have intersecting empty spaces in their paths
+	 * Removes arrows from arrowSet that have intersecting empty spaces in their
+	 * paths
 	 * <p>
-	 * ONLY empty spaces are considered
-	 * @param list  the list to remove intersecting arrows from
-	 */
-	private void removeIntersectingArrows(ArrayList<GridPos> list) {
-		ArrayList<GridPos> removalList = new ArrayList<GridPos>();
-		ArrayList<GridPos> subA = new ArrayList<GridPos>();
-		ArrayList<GridPos> subB = new ArrayList<GridPos>();
-		for (int i = 0; i < list.size(); i++) {
-			subA = puzzle.getTypeInList(ShinroPuzzle.EMPTY, 
-					puzzle.getArrowToEdge(list.get(i)));
-			for (int j = 0; j < list.size(); j++) {
-				subB = puzzle.getTypeInList(ShinroPuzzle.EMPTY, 
-						puzzle.getArrowToEdge(list.get(j)));
-				if (i != j && this.listIntersectsList(subA, subB)) {
-					removalList.add(list.get(i));
+	 * ONLY empty spaces are considered. An arrow is removed once for every other
+	 * entry it intersects, and the earliest entries of an arrow go first, so an
+	 * arrow that is in the set more than once can stay in it.
+	 */
+	private void removeIntersectingArrows() {
+		for (int i = 0; i < this.arrowSetSize; i++) {
+			this.removals[this.arrowSet[i]] = 0;
+		}
+		for (int i = 0; i < this.arrowSetSize; i++) {
+			long subA = this.emptyInPath[this.arrowSet[i]];
+			for (int j = 0; j < this.arrowSetSize; j++) {
+				if (i != j && (subA & this.emptyInPath[this.arrowSet[j]]) != 0) {
+					this.removals[this.arrowSet[i]]++;
 				}
 			}
 		}
-		for (GridPos pos : removalList) {
-			list.remove(pos);
+		int kept = 0;
+		for (int i = 0; i < this.arrowSetSize; i++) {
+			int arrow = this.arrowSet[i];
+			if (this.removals[arrow] > 0) {
+				this.removals[arrow]--;
+			}
+			else {
+				this.arrowSet[kept++] = arrow;
+			}
 		}
+		this.arrowSetSize = kept;
 	}
-	
+
 	/**
 	 * Determines the difficulty level of the next move and applies it to the puzzle
 	 * state.
@@ -237,6 +352,9 @@ public class ShinroSolver {
 	 * @return the integer value of the next move to be made in the puzzle
 	 */
 	private int nextMove() {
+		if (SolverMetrics.isEnabled()) {
+			return this.nextMeasuredMove(DIFFICULTYLEVELS);
+		}
 		if (this.findZeroToPlace()) {
 			return 1; //num Zero to Place
 		}
@@ -262,33 +380,71 @@ public class ShinroSolver {
 			return -1;
 		}
 	}
-	
+
 	/**
-	 * Gets a list of every row index for every GridPos in a list
-	 * @param list  the list to extract the row indices from
-	 * @return an ArrayList of Integers with every row index in the original list
+	 * Works like {@link #nextMove()}, but only tries the strategies up to a
+	 * difficulty
+	 * @param maxDifficulty  the difficulty of the hardest strategy to try
+	 * @return the integer value of the next move to be made in the puzzle
 	 */
-	private ArrayList<Integer> getListOfRows(ArrayList<GridPos> list) {
-		ArrayList<Integer> result = new ArrayList<Integer>();
-		for (GridPos pos : list) {
-			result.add(pos.getRow());
+	private int nextMove(int maxDifficulty) {
+		if (SolverMetrics.isEnabled()) {
+			return this.nextMeasuredMove(maxDifficulty);
 		}
-		return result;
+		for (int difficulty = 1; difficulty <= maxDifficulty; difficulty++) {
+			if (this.tryMove(difficulty)) {
+				return difficulty;
+			}
+		}
+		return -1;
 	}
-	
+
 	/**
-	 * Gets a list of every column index for every GridPos in a list
-	 * @param list  the list to extract the row indices from
-	 * @return an ArrayList of Integers with every column index in the original list
+	 * Works like {@link #nextMove(int)}, but counts every strategy it runs in the
+	 * current thread's {@link SolverMetrics}
+	 * @param maxDifficulty  the difficulty of the hardest strategy to try
+	 * @return the integer value of the next move to be made in the puzzle
 	 */
-	private ArrayList<Integer> getListOfCols(ArrayList<GridPos> list) {
-		ArrayList<Integer> result = new ArrayList<Integer>();
-		for (GridPos pos : list) {
-			result.add(pos.getCol());
+	private int nextMeasuredMove(int maxDifficulty) {
+		SolverMetrics.Counters counters = SolverMetrics.forCurrentThread();
+		for (int difficulty = 1; difficulty <= maxDifficulty; difficulty++) {
+			long bytes = SolverMetrics.allocatedBytes();
+			long start = System.nanoTime();
+			boolean found = this.tryMove(difficulty);
+			long nanos = System.nanoTime() - start;
+			counters.record(difficulty, found, nanos, 
+					SolverMetrics.allocatedBytes() - bytes);
+			if (found) {
+				return difficulty;
+			}
 		}
-		return result;
+		return -1;
 	}
-	
+
+	/**
+	 * Makes a single move of one difficulty, if the puzzle allows one
+	 * <p>
+	 * Unlike {@link #nextMove()}, the easier strategies are not tried first and
+	 * the move isn't counted. This lets a strategy be run and measured on its own.
+	 * @param difficulty  the difficulty of the move, from 1 to 7 as in the array
+	 * returned by {@link #solve()}
+	 * @return true if a move was made
+	 * @throws IllegalArgumentException if there is no such difficulty
+	 */
+	public boolean tryMove(int difficulty) throws IllegalArgumentException {
+		switch (difficulty) {
+		case 1: return this.findZeroToPlace();
+		case 2: return this.findNumUnfilledEqRemaining();
+		case 3: return this.findOneFreeSpace();
+		case 4: return this.findOneAndHorizOrVert();
+		case 5: return this.findNonIntersecting();
+		case 6: return this.findPigeonhole();
+		case 7: return this.findUnsatisfiable();
+		default:throw new IllegalArgumentException("tryMove: Illegal value --> "
+						+ difficulty);
+		}
+	}
+
 	/**
 	 * Calculates the difference between a row's header number and the current number
 	 * of points in the row
@@ -297,107 +453,133 @@ public class ShinroSolver {
 	 * points
 	 */
 	private int calcDiffInRow(int row) {
-		return puzzle.getRowHeaderNum(row) - 
-				puzzle.getTypeInList(ShinroPuzzle.POINT, puzzle.getRow(row)).size();
+		int diff = puzzle.getRowHeaderNum(row);
+		for (int col = 0; col < puzzle.size(); col++) {
+			if (puzzle.atPos(row, col) == ShinroPuzzle.POINT) {
+				diff--;
+			}
+		}
+		return diff;
 	}
-	
+
 	/**
-	 * Calculates the difference between a column's header number and the current 
+	 * Calculates the difference between a column's header number and the current
 	 * number of points in the row
 	 * @param col  the column to calculate the difference in
 	 * @return an integer representing the difference between the header and current
 	 * points
 	 */
 	private int calcDiffInCol(int col) {
-		return puzzle.getColHeaderNum(col) -
-				puzzle.getTypeInList(ShinroPuzzle.POINT, puzzle.getCol(col)).size();
+		int diff = puzzle.getColHeaderNum(col);
+		for (int row = 0; row < puzzle.size(); row++) {
+			if (puzzle.atPos(row, col) == ShinroPuzzle.POINT) {
+				diff--;
+			}
+		}
+		return diff;
 	}
-	
+
+	/**
+	 * Calculates the difference between a line's header number and the current
+	 * number of points in it
+	 * @param line  the row or column
+	 * @param isRow  true if line is a row
+	 * @return the difference between the header and current points
+	 */
+	private int calcDiffInLine(int line, boolean isRow) {
+		return isRow ? this.calcDiffInRow(line) : this.calcDiffInCol(line);
+	}
+
+	/**
+	 * Puts Xs in a mask of spaces
+	 * @param spaces  the spaces to fill
+	 */
+	private void fillSpacesWithX(long spaces) {
+		for (long rest = spaces; rest != 0; rest &= rest - 1) {
+			int space = Long.numberOfTrailingZeros(rest);
+			puzzle.putX(space / ShinroPuzzle.SIZE, space % ShinroPuzzle.SIZE);
+		}
+	}
+
+	/**
+	 * Puts points in a mask of spaces
+	 * @param spaces  the spaces to fill
+	 */
+	private void putPoints(long spaces) {
+		for (long rest = spaces; rest != 0; rest &= rest - 1) {
+			int space = Long.numberOfTrailingZeros(rest);
+			puzzle.putPoint(space / ShinroPuzzle.SIZE, space % ShinroPuzzle.SIZE);
+		}
+	}
+
 	/**
 	 * Puts Xs in remaining empty spaces of a row of column if there is zero more
 	 * points to place in that row or column
 	 * @return true if a move of this type is located
 	 */
 	private boolean findZeroToPlace() {
+		long empty = this.getMaskByType(ShinroPuzzle.EMPTY);
 		//first look for 0 row and column header nums
-		ArrayList<GridPos> myList = new ArrayList<GridPos>();
 		for (int i = 0; i < puzzle.size(); i++) {
-			if (puzzle.getRowHeaderNum(i) == 0) {
-				myList = puzzle.getTypeInList(ShinroPuzzle.EMPTY, puzzle.getRow(i));
-				if (myList.size() > 0) {
-					puzzle.fillSpacesWithX(myList);					
-					return true;
-				}
+			if (puzzle.getRowHeaderNum(i) == 0 && (empty & ROWMASKS[i]) != 0) {
+				this.fillSpacesWithX(empty & ROWMASKS[i]);
+				return true;
 			}
-			if (puzzle.getColHeaderNum(i) == 0) {
-				myList = puzzle.getTypeInList(ShinroPuzzle.EMPTY, puzzle.getCol(i));
-				if (myList.size() > 0) {
-					puzzle.fillSpacesWithX(myList);					
-					return true;
-				}
+			if (puzzle.getColHeaderNum(i) == 0 && (empty & COLMASKS[i]) != 0) {
+				this.fillSpacesWithX(empty & COLMASKS[i]);
+				return true;
 			}
 			//look for zero diff
-			if (this.calcDiffInRow(i) == 0) {
-				myList = puzzle.getTypeInList(ShinroPuzzle.EMPTY, puzzle.getRow(i));
-				if (myList.size() > 0) {
-					puzzle.fillSpacesWithX(myList);					
-					return true;
-				}
+			if (this.calcDiffInRow(i) == 0 && (empty & ROWMASKS[i]) != 0) {
+				this.fillSpacesWithX(empty & ROWMASKS[i]);
+				return true;
 			}
-			if (this.calcDiffInCol(i) == 0) {
-				myList = puzzle.getTypeInList(ShinroPuzzle.EMPTY, puzzle.getCol(i));
-				if (myList.size() > 0) {
-					puzzle.fillSpacesWithX(myList);					
-					return true;
-				}
+			if (this.calcDiffInCol(i) == 0 && (empty & COLMASKS[i]) != 0) {
+				this.fillSpacesWithX(empty & COLMASKS[i]);
+				return true;
 			}
 		}
 		return false;
 	}
-	
+
 	/**
 	 * Puts points in a row or column if the number of empty spaces equals the number
 	 * of remaining points to be placed in that row or column
 	 * @return true if a move of this type is found.
 	 */
 	private boolean findNumUnfilledEqRemaining() {
-		ArrayList<GridPos> myList = new ArrayList<GridPos>();
+		long empty = this.getMaskByType(ShinroPuzzle.EMPTY);
 		for (int i = 0; i < puzzle.size(); i++) {
-			myList = puzzle.getTypeInList(ShinroPuzzle.EMPTY, puzzle.getRow(i));
-			if (myList.size() != 0 && this.calcDiffInRow(i) == myList.size()) {
-				for (GridPos pos : myList) {
-					puzzle.putPoint(pos);
-				}
+			long inRow = empty & ROWMASKS[i];
+			if (inRow != 0 && this.calcDiffInRow(i) == Long.bitCount(inRow)) {
+				this.putPoints(inRow);
 				return true;
 			}
-			myList = puzzle.getTypeInList(ShinroPuzzle.EMPTY, puzzle.getCol(i));
-			if (myList.size() != 0 && this.calcDiffInCol(i) == myList.size()) {
-				for (GridPos pos : myList) {
-					puzzle.putPoint(pos);
-				}
+			long inCol = empty & COLMASKS[i];
+			if (inCol != 0 && this.calcDiffInCol(i) == Long.bitCount(inCol)) {
+				this.putPoints(inCol);
 				return true;
 			}
 		} //ELSE
 		return false;
 	}
-	
+
 	/**
 	 * Puts a point where an unsatisfied arrow only has one empty space in its path
 	 * @return true if a move of this type is found
 	 */
 	private boolean findOneFreeSpace() {
-		ArrayList<GridPos> myList = new ArrayList<GridPos>();
-		for (GridPos arrow : this.getUnsatisfiedArrows()) {
-			myList = puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-					puzzle.getArrowToEdge(arrow));
-			if (myList.size() == 1) {
-				puzzle.putPoint(myList.get(0));
+		this.findUnsatisfiedArrows(this.getMaskByType(ShinroPuzzle.EMPTY));
+		for (int i = 0; i < this.numArrows; i++) {
+			long spaces = this.emptyInPath[this.arrows[i]];
+			if (Long.bitCount(spaces) == 1) {
+				this.putPoints(spaces);
 				return true;
 			}
 		}
 		return false;
 	}
-	
+
 	//row column row column
 	//unsatisfied arrows only
 	/**
@@ -406,51 +588,40 @@ public class ShinroSolver {
 	 * @return true if a move of this type is found
 	 */
 	private boolean findOneAndHorizOrVert() {
-		int i;
-		ArrayList<GridPos> myList = new ArrayList<GridPos>();
-		ArrayList<GridPos> mySpaces = new ArrayList<GridPos>();
-		for (i = 0; i < puzzle.size(); i++) {
+		long empty = this.getMaskByType(ShinroPuzzle.EMPTY);
+		for (int i = 0; i < puzzle.size(); i++) {
 			if (this.calcDiffInRow(i) == 1) {
-				myList = puzzle.getTypeInList(ShinroPuzzle.N,
-						puzzle.getRow(i)); //any arrow
-				for (GridPos pos : myList) {
-					switch (puzzle.atPos(pos)) {
+				for (int col = 0; col < puzzle.size(); col++) {
+					switch (puzzle.atPos(i, col)) {
 					case ShinroPuzzle.E: //pass through
 					case ShinroPuzzle.W:
-						mySpaces = 
-								puzzle.getTypeInList(ShinroPuzzle.EMPTY, 
-										this.getSpacesBehindArrow(pos));
-						if (mySpaces.size() > 0) {
-							//System.out.print(pos + "\n"); //DEBUG
-							puzzle.fillSpacesWithX(mySpaces);
+						long spaces = empty & this.getSpacesBehindArrow(i, col);
+						if (spaces != 0) {
+							this.fillSpacesWithX(spaces);
 							return true;
 						}
 					default: break;
-					}					
+					}
 				}
 			}
 			if (this.calcDiffInCol(i) == 1) {
-				myList = puzzle.getTypeInList(ShinroPuzzle.N,
-						puzzle.getCol(i)); // any arrow
-				for (GridPos pos : myList) {
-					switch (puzzle.atPos(pos)) {
+				for (int row = 0; row < puzzle.size(); row++) {
+					switch (puzzle.atPos(row, i)) {
 					case ShinroPuzzle.N: //pass through
 					case ShinroPuzzle.S:
-						mySpaces = 
-								puzzle.getTypeInList(ShinroPuzzle.EMPTY, 
-									this.getSpacesBehindArrow(pos));
-						if (mySpaces.size() > 0) {
-							puzzle.fillSpacesWithX(mySpaces);
+						long spaces = empty & this.getSpacesBehindArrow(row, i);
+						if (spaces != 0) {
+							this.fillSpacesWithX(spaces);
 							return true;
 						}
 					default: break;
-					}					
+					}
 				}
 			}
 		}
 		return false;
 	}
-	
+
 	/**
 	 * Places Xs based on the combinatorial ruling out of possible spaces due to
 	 * nonintersecting arrows.
@@ -463,124 +634,85 @@ public class ShinroSolver {
 	 * @return true if a move of this type is found
 	 */
 	private boolean findNonIntersecting() {
-		ArrayList<GridPos> theSubset = new ArrayList<GridPos>();
-		ArrayList<GridPos> arrowSet = new ArrayList<GridPos>();
-		int i, j, remainingInSubset = 0;
-		//every contiguous subset of rows
-		for (j = 0; j < (puzzle.size() - 1); j++) {
-			theSubset = new ArrayList<GridPos>();
-			arrowSet = new ArrayList<GridPos>();
-			remainingInSubset = 0;
-			//build theSubset
-			for (i = j; i < puzzle.size(); i++) {
-				theSubset.addAll(
-						puzzle.getTypeInList(
-								ShinroPuzzle.EMPTY,
-								puzzle.getRow(i)
-						)
-				);
-				//find target cardinality
-				remainingInSubset += this.calcDiffInRow(i);
-				//the following condition should always be found by findOneFreeSpace
-				if (theSubset.size() <= 1) { 
-					continue;
-				}
-				//build arrowSet
-				for (GridPos pos : this.getUnsatisfiedArrows()) {
-					if (this.listContainsList(theSubset,
-							puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-									puzzle.getArrowToEdge(pos)))) {
-						arrowSet.add(pos);
-					}
-				}
-				//if arrowSet cardinality not enough, move on to the next iteration
-				if (arrowSet.size() < remainingInSubset) {
-					continue;
-				}
-				//go to the common method
-				if (this.nonIntersectingCommon(remainingInSubset, theSubset,
-						arrowSet)) {
-					return true;
-				}
-			}
-		}
-		//every contiguous subset of columns
-		for (j = 0; j < (puzzle.size() - 1); j++) {
-			theSubset = new ArrayList<GridPos>();
-			arrowSet = new ArrayList<GridPos>();
-			remainingInSubset = 0;
-			//build theSubset
-			for (i = j; i < puzzle.size(); i++) {
-				theSubset.addAll(
-						puzzle.getTypeInList(
-								ShinroPuzzle.EMPTY,
-								puzzle.getCol(i)
-						)
-				);
+		long empty = this.getMaskByType(ShinroPuzzle.EMPTY);
+		this.findUnsatisfiedArrows(empty);
+		//every contiguous subset of rows, then of columns
+		return this.findNonIntersecting(empty, true)
+				|| this.findNonIntersecting(empty, false);
+	}
+
+	/**
+	 * Looks for a move of {@link #findNonIntersecting()} in every contiguous
+	 * subset of rows or of columns
+	 * <p>
+	 * Like the subset, arrowSet grows with every line added to it and only shrinks
+	 * when intersecting arrows are removed, so an arrow can be in it more than
+	 * once.
+	 * @param empty  the mask of empty spaces
+	 * @param isRow  true for subsets of rows, false for subsets of columns
+	 * @return true if a move of this type is found
+	 */
+	private boolean findNonIntersecting(long empty, boolean isRow) {
+		long[] lines = isRow ? ROWMASKS : COLMASKS;
+		for (int j = 0; j < (puzzle.size() - 1); j++) {
+			long theSubset = 0;
+			int remainingInSubset = 0;
+			this.arrowSetSize = 0;
+			for (int i = j; i < puzzle.size(); i++) {
+				theSubset |= empty & lines[i];
 				//find target cardinality
-				remainingInSubset += this.calcDiffInCol(i);
+				remainingInSubset += this.calcDiffInLine(i, isRow);
 				//the following condition should always be found by findOneFreeSpace
-				if (theSubset.size() <= 1) { 
+				if (Long.bitCount(theSubset) <= 1) {
 					continue;
 				}
 				//build arrowSet
-				for (GridPos pos : this.getUnsatisfiedArrows()) {
-					if (this.listContainsList(theSubset,
-							puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-									puzzle.getArrowToEdge(pos)))) {
-						arrowSet.add(pos);
+				for (int k = 0; k < this.numArrows; k++) {
+					if ((this.emptyInPath[this.arrows[k]] & ~theSubset) == 0) {
+						this.arrowSet[this.arrowSetSize++] = this.arrows[k];
 					}
 				}
 				//if arrowSet cardinality not enough, move on to the next iteration
-				if (arrowSet.size() < remainingInSubset) {
+				if (this.arrowSetSize < remainingInSubset) {
 					continue;
 				}
 				//go to the common method
-				if (this.nonIntersectingCommon(remainingInSubset, theSubset,
-						arrowSet)) {
+				if (this.nonIntersectingCommon(remainingInSubset, theSubset)) {
 					return true;
 				}
 			}
 		}
 		return false;
 	}
-	
+
 	/**
 	 * Common (for rows or columns) method for {@link #findNonIntersecting()}
 	 * @param remainingInSubset  the number of points remaining to be found in
 	 * theSubset
-	 * @param theSubset  the subset of rows or columns being considered
-	 * @param arrowSet  the set of arrows being considered
+	 * @param theSubset  the empty spaces of the subset of rows or columns being
+	 * considered
 	 * @return true if the conditions mentioned in {@link #findNonIntersecting()}
 	 * have been satisfied
 	 */
-	private boolean nonIntersectingCommon(int remainingInSubset, 
-			ArrayList<GridPos> theSubset, ArrayList<GridPos> arrowSet) {
-		ArrayList<GridPos> spacesInArrowSet = new ArrayList<GridPos>();
-		ArrayList<GridPos> setToX = new ArrayList<GridPos>();
-		this.removeIntersectingArrows(arrowSet);
-		if (remainingInSubset != 0 
-				&& arrowSet.size() == remainingInSubset) { //the move has been found!
+	private boolean nonIntersectingCommon(int remainingInSubset, long theSubset) {
+		this.removeIntersectingArrows();
+		if (remainingInSubset != 0
+				&& this.arrowSetSize == remainingInSubset) { //the move has been found!
 			//build setP
-			for (GridPos arrow : arrowSet) {
-				for (GridPos space : puzzle.getTypeInList(ShinroPuzzle.EMPTY, 
-						puzzle.getArrowToEdge(arrow))) {
-					spacesInArrowSet.add(space);
-				}
+			long spacesInArrowSet = 0;
+			for (int i = 0; i < this.arrowSetSize; i++) {
+				spacesInArrowSet |= this.emptyInPath[this.arrowSet[i]];
 			}
 			//build final set
-			setToX.addAll(theSubset);
-			for (GridPos pos : spacesInArrowSet) {
-				setToX.remove(pos);
-			}
-			if (setToX.size() > 0) {
-				puzzle.fillSpacesWithX(setToX);
+			long setToX = theSubset & ~spacesInArrowSet;
+			if (setToX != 0) {
+				this.fillSpacesWithX(setToX);
 				return true;
 			}
 		}
 		return false;
 	}
-	
+
 	/**
 	 * Places points based on a combinatorial strategy based on the pigeonhole
 	 * principle
@@ -590,11 +722,11 @@ public class ShinroSolver {
 	 * perpendicular element (columns if this is a row, rows if this is a column)
 	 * has only one point to be found. Next, make a set of any arrow whose path of
 	 * empty spaces is entirely in those columns if this is a row or rows if this
-	 * is a column of setPerpWithOne. Arrows in this set cannot intersect 
+	 * is a column of setPerpWithOne. Arrows in this set cannot intersect
 	 * setPerpWithOne, nor each other. If the number if arrows in the arrowSet is the
 	 * same as the difference between the number of points remaining to be found and
-	 * the number of free spaces in the row or column, then any space in the row or 
-	 * column that doesn't share a column or row, respectively, with any space 
+	 * the number of free spaces in the row or column, then any space in the row or
+	 * column that doesn't share a column or row, respectively, with any space
 	 * covered by one of the arrows must contain a point.
 	 * <p>
 	 * I'm not 100% sure my implementation is accurate but it seems to work fine --
@@ -605,178 +737,70 @@ public class ShinroSolver {
 	 * have left the condition as |A| > numUnfilledInLine - diffInLine.
 	 * @return true if a move of this type is found
 	 */
-	private boolean findPigeonhole() {		
-		ArrayList<GridPos> arrows = this.getUnsatisfiedArrows();
-		
-		ArrayList<GridPos> setPerpWithOne = new ArrayList<GridPos>();
-		ArrayList<GridPos> arrowSet = new ArrayList<GridPos>();
-		ArrayList<GridPos> spaces = new ArrayList<GridPos>();
-		ArrayList<GridPos> removalList = new ArrayList<GridPos>();
-		int i, diffInLine, numUnfilledInLine;
-		
-		//columns
-		ArrayList<Integer> rows = new ArrayList<Integer>();
-		
+	private boolean findPigeonhole() {
+		long empty = this.getMaskByType(ShinroPuzzle.EMPTY);
+		this.findUnsatisfiedArrows(empty);
+		//columns, then rows
+		return this.findPigeonhole(empty, false)
+				|| this.findPigeonhole(empty, true);
+	}
+
+	/**
+	 * Looks for a move of {@link #findPigeonhole()} in every column or every row
+	 * @param empty  the mask of empty spaces
+	 * @param isRow  true to look in rows, false to look in columns
+	 * @return true if a move of this type is found
+	 */
+	private boolean findPigeonhole(long empty, boolean isRow) {
+		long[] lines = isRow ? ROWMASKS : COLMASKS;
+		long[] perpLines = isRow ? COLMASKS : ROWMASKS;
 		for (int line = 0; line < puzzle.size(); line++) {
-			diffInLine = this.calcDiffInCol(line);
-			numUnfilledInLine = puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-					puzzle.getCol(line)).size();
+			int diffInLine = this.calcDiffInLine(line, isRow);
+			long inLine = empty & lines[line];
+			int numUnfilledInLine = Long.bitCount(inLine);
 			if (numUnfilledInLine > diffInLine) {
 				//build setPerpWithOne
-				setPerpWithOne = puzzle.getTypeInList(ShinroPuzzle.EMPTY, 
-						puzzle.getCol(line));
-				for (i = setPerpWithOne.size() - 1; i >= 0; i--) {
-					if (this.calcDiffInRow(setPerpWithOne.get(i).getRow()) != 1) {
-						setPerpWithOne.remove(i);
-					}
-				}				
-				//build arrowSet
-				arrowSet.clear();
-				arrowSet.addAll(arrows);				
-				//remove any A that intersect setPerpWithOne
-				for (i = arrowSet.size() - 1; i >= 0; i--) {
-					if (this.listIntersectsList(setPerpWithOne, 
-							puzzle.getTypeInList(ShinroPuzzle.EMPTY, 
-									puzzle.getArrowToEdge(arrowSet.get(i))))) {
-						arrowSet.remove(i);
-					}
-				}				
-				//remove arrows whose spaces don't share a row with setPerpWithOne
-				removalList.clear();
-				for (GridPos arrow : arrowSet) {
-					spaces = puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-							puzzle.getArrowToEdge(arrow));
-					rows.addAll(this.getListOfRows(spaces));
-					rows.removeAll(this.getListOfRows(setPerpWithOne));
-					if (rows.size() > 0) {
-						removalList.add(arrow);
+				long setPerpWithOne = 0;
+				for (int perp = 0; perp < puzzle.size(); perp++) {
+					if (this.calcDiffInLine(perp, !isRow) == 1) {
+						setPerpWithOne |= inLine & perpLines[perp];
 					}
-					rows.clear();
-				}
-				arrowSet.removeAll(removalList);				
-				//finally, remove any intersecting arrows from the arrowSet
-				this.removeIntersectingArrows(arrowSet);							
-				//perhaps |A| MUST = numUnfilledInLine - diffInLine
-				if (arrowSet.size() < (numUnfilledInLine - diffInLine)) {
-					continue; //move on if not enough arrows in the arrowSet
-				}				
-				//Find which spaces must contain a point
-				rows.clear();
-				rows.addAll(
-						this.getListOfRows(
-								puzzle.getTypeInList(
-										ShinroPuzzle.EMPTY,
-										puzzle.getCol(line)
-								)
-						)
-				);
-				for (GridPos arrow : arrowSet) {
-					spaces = puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-							puzzle.getArrowToEdge(arrow));
-					rows.removeAll(this.getListOfRows(spaces));
 				}
-				//To avoid an infinite loop, cols.size must be > 0
-				if (rows.size() == 0) {
-					continue;
-				}				
-				/* If one of the empty spaces in the column shares a row with
-				 * the remaining values in rows, place a point.
+				int perpsWithOne = getLines(setPerpWithOne, perpLines);
+				/* build arrowSet, leaving out any A that intersect setPerpWithOne
+				 * and arrows whose spaces don't share a perpendicular line with it
 				 */
-				for (Integer row : rows) {
-					for (GridPos pos : puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-							puzzle.getCol(line))) {
-						if (pos.getRow() == row) {
-							puzzle.putPoint(pos);
-						}
-					}
-				}
-				return true;
-			}
-		}
-		//rows
-		ArrayList<Integer> cols = new ArrayList<Integer>();
-		setPerpWithOne.clear();
-		arrowSet.clear();
-		removalList.clear();
-		spaces.clear();
-		
-		for (int line = 0; line < puzzle.size(); line++) {
-			diffInLine = this.calcDiffInRow(line);
-			numUnfilledInLine = puzzle.getTypeInList(ShinroPuzzle.EMPTY, 
-					puzzle.getRow(line)).size();
-			if (numUnfilledInLine > diffInLine) {
-				//build setPerpWithOne
-				setPerpWithOne = puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-						puzzle.getRow(line));
-				for (i = setPerpWithOne.size() - 1; i >= 0; i--) {
-					if (this.calcDiffInCol(setPerpWithOne.get(i).getCol()) != 1) {
-						setPerpWithOne.remove(i);
-					}
-				}				
-				//build arrowSet
-				arrowSet.clear();
-				arrowSet.addAll(arrows);
-				
-				//remove any A that intersect setPerpWithOne
-				for (i = arrowSet.size() - 1; i >= 0; i--) {
-					if (this.listIntersectsList(setPerpWithOne, 
-							puzzle.getTypeInList(ShinroPuzzle.EMPTY, 
-									puzzle.getArrowToEdge(arrowSet.get(i))))) {
-						arrowSet.remove(i);
-					}
-				}				
-				//remove arrows whose spaces don't share a row with setPerpWithOne
-				removalList.clear();
-				for (GridPos arrow : arrowSet) {
-					spaces = puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-							puzzle.getArrowToEdge(arrow));
-					cols.addAll(this.getListOfCols(spaces));
-					cols.removeAll(this.getListOfCols(setPerpWithOne));
-					if (cols.size() > 0) {
-						removalList.add(arrow);
+				this.arrowSetSize = 0;
+				for (int i = 0; i < this.numArrows; i++) {
+					long spaces = this.emptyInPath[this.arrows[i]];
+					if ((spaces & setPerpWithOne) == 0
+							&& (getLines(spaces, perpLines) & ~perpsWithOne) == 0) {
+						this.arrowSet[this.arrowSetSize++] = this.arrows[i];
 					}
-					cols.clear();
 				}
-				arrowSet.removeAll(removalList);				
 				//finally, remove any intersecting arrows from the arrowSet
-				this.removeIntersectingArrows(arrowSet);				
+				this.removeIntersectingArrows();
 				//perhaps |A| MUST = numUnfilledInLine - diffInLine
-				if (arrowSet.size() < (numUnfilledInLine - diffInLine)) {
+				if (this.arrowSetSize < (numUnfilledInLine - diffInLine)) {
 					continue; //move on if not enough arrows in the arrowSet
-				}				
+				}
 				//Find which spaces must contain a point
-				cols.clear();
-				cols.addAll(
-						this.getListOfCols(
-								puzzle.getTypeInList(
-										ShinroPuzzle.EMPTY,
-										puzzle.getRow(line)
-								)
-						)
-				);
-				/* potentially in here, there could be a scenario where, for example,
-				 * there are three arrows in A and numUnfilledInLine - diffInLine = 2
-				 * and some two of the three will satisfy the criteria for the 
-				 * pigeonhole principle. But this method seems to work
-				 */
-				for (GridPos arrow : arrowSet) {
-					spaces = puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-							puzzle.getArrowToEdge(arrow));
-					cols.removeAll(this.getListOfCols(spaces));
+				long spacesInArrowSet = 0;
+				for (int i = 0; i < this.arrowSetSize; i++) {
+					spacesInArrowSet |= this.emptyInPath[this.arrowSet[i]];
+				}
+				int perps = getLines(inLine, perpLines)
+						& ~getLines(spacesInArrowSet, perpLines);
+				//To avoid an infinite loop, perps must be > 0
+				if (perps == 0) {
+					continue;
 				}
-				//To avoid an infinite loop, cols.size must be > 0
-				if (cols.size() == 0) {
-					continue;	
-				}				
-				/* If one of the empty spaces in the row shares a column with
-				 * the values in cols, place a point.
+				/* If one of the empty spaces in the line shares a perpendicular
+				 * line with the remaining values in perps, place a point.
 				 */
-				for (Integer col : cols) {
-					for (GridPos pos : puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-							puzzle.getRow(line))) {
-						if (pos.getCol() == col) {
-							puzzle.putPoint(pos);
-						}
+				for (int perp = 0; perp < puzzle.size(); perp++) {
+					if ((perps & (1 << perp)) != 0) {
+						this.putPoints(inLine & perpLines[perp]);
 					}
 				}
 				return true;
@@ -784,14 +808,14 @@ public class ShinroSolver {
 		}
 		return false;
 	}
-	
+
 	/**
 	 * Finds positions that cause an arrow to be unsatisfiable and places an X
 	 * <p>
 	 * This strategy is employed as the "highest difficulty" because of its brute
 	 * force nature. For every empty space in the puzzle not pointed at by some
-	 * arrow, consider if a point was placed in that location. If placing a point 
-	 * there blocks all the spaces in the path of any unsatisfied arrow from being 
+	 * arrow, consider if a point was placed in that location. If placing a point
+	 * there blocks all the spaces in the path of any unsatisfied arrow from being
 	 * illed, then there must not be a point there and it can be filled with an X.
 	 * <p>
 	 * Note: For simplicity, my implementation just looks at every space regardless
@@ -800,48 +824,46 @@ public class ShinroSolver {
 	 * @return true if a move of this type is found
 	 */
 	private boolean findUnsatisfiable() {
-		ArrayList<GridPos> arrowSpaces = new ArrayList<GridPos>();
-		ArrayList<GridPos> nonArrowSpaces = new ArrayList<GridPos>();
-		for (GridPos arrow : this.getUnsatisfiedArrows()) {
-			for (GridPos space : puzzle.getTypeInList(ShinroPuzzle.EMPTY,
-					puzzle.getArrowToEdge(arrow))) {
-				arrowSpaces.add(space);
-			}
+		long empty = this.getMaskByType(ShinroPuzzle.EMPTY);
+		this.findUnsatisfiedArrows(empty);
+		long arrowSpaces = 0;
+		for (int i = 0; i < this.numArrows; i++) {
+			arrowSpaces |= this.emptyInPath[this.arrows[i]];
 		}
-		nonArrowSpaces.addAll(puzzle.getListByType(ShinroPuzzle.EMPTY));
-		nonArrowSpaces.removeAll(arrowSpaces);
 		//For every empty space in puzzle not pointed to by some arrow
-		for (GridPos space : nonArrowSpaces) {				
+		for (long rest = empty & ~arrowSpaces; rest != 0; rest &= rest - 1) {
+			int space = Long.numberOfTrailingZeros(rest);
+			int row = space / ShinroPuzzle.SIZE, col = space % ShinroPuzzle.SIZE;
 			//put a point
-			puzzle.putPoint(space);
-			//then, for every unsatisfied arrow
-			for (GridPos arrow : this.getUnsatisfiedArrows()) {
-				//mark the arrow as unsatisfiable unless proven otherwise
-				boolean foundUnsatisfiable = true;
-				//go through every empty space pointed to by the arrow
-				for (GridPos checkSpace : puzzle.getTypeInList(ShinroPuzzle.EMPTY, 
-						puzzle.getArrowToEdge(arrow))) {
-					//if BOTH the row and column for ANY space have at least
-					//one space to fill, then the arrow is satisfiable
-					if (this.calcDiffInCol(checkSpace.getCol()) > 0 &&
-						this.calcDiffInRow(checkSpace.getRow()) > 0) {
-						foundUnsatisfiable = false;
-						break;
-					}
+			puzzle.putPoint(row, col);
+			this.findUnsatisfiedArrows(empty & ~(1L << space));
+			//the spaces whose row and column BOTH have at least one point to find
+			long rowsToFill = 0, colsToFill = 0;
+			for (int i = 0; i < puzzle.size(); i++) {
+				if (this.calcDiffInRow(i) > 0) {
+					rowsToFill |= ROWMASKS[i];
+				}
+				if (this.calcDiffInCol(i) > 0) {
+					colsToFill |= COLMASKS[i];
 				}
-				//if the arrow IS unsatisfiable, put an X and return true
-				if (foundUnsatisfiable) {					
-					puzzle.clearSpace(space);
-					puzzle.putX(space);
+			}
+			long fillable = rowsToFill & colsToFill;
+			//then, for every unsatisfied arrow
+			for (int i = 0; i < this.numArrows; i++) {
+				//the arrow is satisfiable if ANY space in its path is fillable
+				if ((this.emptyInPath[this.arrows[i]] & fillable) == 0) {
+					//the arrow IS unsatisfiable, put an X and return true
+					puzzle.clearSpace(row, col);
+					puzzle.putX(row, col);
 					return true;
 				}
 			}
 			//clear the space if no unsatisfiable arrow is found
-			puzzle.clearSpace(space);
+			puzzle.clearSpace(row, col);
 		}
 		return false;
 	}
-	
+
 	/** Solves the puzzle by employing the strategies described in David Oranchak's
 	 * paper.
 	 * <p>
@@ -869,24 +891,89 @@ public class ShinroSolver {
 	 * number of moves of each difficulty.
 	 */
 	public int[] solve() {
+		return this.solve(Integer.MAX_VALUE, Long.MAX_VALUE, null);
+	}
+	
+	/**
+	 * Makes every move the easiest strategies allow, counting them like 
+	 * {@link #solve()} does
+	 * <p>
+	 * solve() also tries the easiest strategies first, so these are the moves a
+	 * solve would start with. Calling solve() afterwards picks up where this left
+	 * off and returns the same counts as solving from the start would. The 
+	 * SolveObserver isn't told about these moves until the solve that follows.
+	 * @param maxDifficulty  the difficulty of the hardest strategy to use, from 1
+	 * to 7 as in the array returned by solve()
+	 * @return the moves made so far, in the array returned by solve()
+	 * @throws IllegalArgumentException if there is no such difficulty
+	 */
+	public int[] propagate(int maxDifficulty) throws IllegalArgumentException {
+		if (maxDifficulty < 1 || maxDifficulty > DIFFICULTYLEVELS) {
+			throw new IllegalArgumentException("propagate: Illegal value --> "
+					+ maxDifficulty);
+		}
+		int moveDifficulty;
+		while ((moveDifficulty = this.nextMove(maxDifficulty)) > 0) {
+			this.countMove(moveDifficulty);
+		}
+		return this.numMovesByDifficulty;
+	}
+
+	/**
+	 * Counts a move and whether it solved the puzzle
+	 * @param difficulty  the difficulty of the move
+	 */
+	private void countMove(int difficulty) {
+		this.numMovesByDifficulty[difficulty]++;
+		this.numMovesByDifficulty[0]++; //num Total moves
+		
+		if (puzzle.verifySolution()) {
+			this.numMovesByDifficulty[this.numMovesByDifficulty.length - 1] = 1;
+		}
+	}
+
+	/**
+	 * Solves the puzzle like {@link #solve()} but gives up once a budget is 
+	 * exceeded or a condition is met
+	 * <p>
+	 * The returned array holds the moves made up until the solver stopped. Use
+	 * {@link #isEarlyExit()} to find out whether the solve was cut short.
+	 * @param maxMoves  the solver gives up once more than this many moves are made
+	 * @param maxNanos  the solver gives up once it has run for longer than this
+	 * many nanoseconds
+	 * @param giveUp  checked after every move; may be null
+	 * @return an array of integers representing the total number of moves and
+	 * number of moves of each difficulty.
+	 */
+	public int[] solve(int maxMoves, long maxNanos, GiveUpCondition giveUp) {
 		int moveDifficulty;
 		boolean solved = false;
+		boolean timed = maxNanos != Long.MAX_VALUE;
+		long start = timed ? System.nanoTime() : 0;
+		SolveObserver observer = solveObserver;
+		Object token = (observer != null) ? observer.solveStarted() : null;
+		this.earlyExit = false;
 		while (!solved) {
 			moveDifficulty = this.nextMove();
 			//System.out.println(this);  //uncomment for debug
 			if (moveDifficulty > 0) {
-				this.numMovesByDifficulty[moveDifficulty]++;
-				this.numMovesByDifficulty[0]++; //num Total moves
+				this.countMove(moveDifficulty);
 				
-				if (puzzle.verifySolution()) {
-					this.numMovesByDifficulty[this.numMovesByDifficulty.length - 1] 
-							= 1;
+				if (this.numMovesByDifficulty[0] > maxMoves
+						|| (timed && System.nanoTime() - start > maxNanos)
+						|| (giveUp != null 
+								&& giveUp.shouldGiveUp(this.numMovesByDifficulty))) {
+					this.earlyExit = true;
+					break;
 				}
 			}
 			else { //the puzzle is unsolvable
 				break;
 			}
 		}
+		if (observer != null) {
+			observer.solveFinished(token, this.numMovesByDifficulty, this.earlyExit);
+		}
 		return this.numMovesByDifficulty;
 	}
 	
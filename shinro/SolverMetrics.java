@@ -0,0 +1,240 @@
+package shinro;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * Counts how often each strategy of {@link ShinroSolver} runs, how often it
+ * finds a move and how much time and memory it takes
+ * <p>
+ * Metrics are off by default. They are turned on with {@link #setEnabled} or by
+ * starting the JVM with -Dshinro.solverMetrics=true. While they are off, the
+ * solver only checks the flag once per move and runs exactly as it does
+ * without metrics.
+ * <p>
+ * Each thread counts into its own Counters, so solvers on different threads
+ * never contend. A {@link Snapshot} adds up the counters of every thread that
+ * has solved with metrics on. Counters are read without synchronization, so a
+ * snapshot taken while solvers are running can lag slightly behind them.
+ * Allocations are measured with com.sun.management.ThreadMXBean where the JVM
+ * supports it and are reported as zero otherwise.
+ */
+public class SolverMetrics {
+	public static final int STRATEGIES = ShinroSolver.ARRAYSIZE - 2;
+
+	private static volatile boolean enabled = Boolean.getBoolean("shinro.solverMetrics");
+	private static final ArrayList<Counters> allCounters =
+			new ArrayList<Counters>();
+	private static final ThreadLocal<Counters> threadCounters =
+			new ThreadLocal<Counters>() {
+		@Override
+		protected Counters initialValue() {
+			Counters counters = new Counters();
+			synchronized (allCounters) {
+				allCounters.add(counters);
+			}
+			return counters;
+		}
+	};
+	private static boolean allocationsUnavailable = false;
+
+	/**
+	 * The metrics of a single thread, indexed by difficulty from 1 to STRATEGIES
+	 */
+	static class Counters {
+		final long[] invocations = new long[STRATEGIES + 1];
+		final long[] successes = new long[STRATEGIES + 1];
+		final long[] nanos = new long[STRATEGIES + 1];
+		final long[] bytes = new long[STRATEGIES + 1];
+
+		/* Counts a single run of a strategy */
+		void record(int difficulty, boolean success, long nanos, long bytes) {
+			this.invocations[difficulty]++;
+			if (success) {
+				this.successes[difficulty]++;
+			}
+			this.nanos[difficulty] += nanos;
+			this.bytes[difficulty] += bytes;
+		}
+	}
+
+	/**
+	 * The metrics of every thread added up at one moment
+	 */
+	public static class Snapshot {
+		private final long[] invocations, successes, nanos, bytes;
+
+		private Snapshot() {
+			this.invocations = new long[STRATEGIES + 1];
+			this.successes = new long[STRATEGIES + 1];
+			this.nanos = new long[STRATEGIES + 1];
+			this.bytes = new long[STRATEGIES + 1];
+		}
+
+		/**
+		 * Gets the number of times a strategy was run
+		 * @param difficulty  the strategy's difficulty, from 1 to STRATEGIES
+		 * @return the number of runs
+		 */
+		public long getInvocations(int difficulty) {
+			return this.invocations[difficulty];
+		}
+
+		/**
+		 * Gets the number of times a strategy found a move
+		 * @param difficulty  the strategy's difficulty, from 1 to STRATEGIES
+		 * @return the number of moves made
+		 */
+		public long getSuccesses(int difficulty) {
+			return this.successes[difficulty];
+		}
+
+		/**
+		 * Gets the time spent in a strategy
+		 * @param difficulty  the strategy's difficulty, from 1 to STRATEGIES
+		 * @return the total time in nanoseconds
+		 */
+		public long getNanos(int difficulty) {
+			return this.nanos[difficulty];
+		}
+
+		/**
+		 * Gets the memory allocated by a strategy
+		 * @param difficulty  the strategy's difficulty, from 1 to STRATEGIES
+		 * @return the total number of bytes allocated
+		 */
+		public long getAllocatedBytes(int difficulty) {
+			return this.bytes[difficulty];
+		}
+
+		/**
+		 * Gets the metrics accumulated since an earlier snapshot
+		 * @param earlier  a snapshot taken before this one
+		 * @return the difference between this snapshot and the earlier one
+		 */
+		public Snapshot since(Snapshot earlier) {
+			Snapshot result = new Snapshot();
+			for (int i = 1; i <= STRATEGIES; i++) {
+				result.invocations[i] = this.invocations[i]
+						- earlier.invocations[i];
+				result.successes[i] = this.successes[i] - earlier.successes[i];
+				result.nanos[i] = this.nanos[i] - earlier.nanos[i];
+				result.bytes[i] = this.bytes[i] - earlier.bytes[i];
+			}
+			return result;
+		}
+
+		/* A single log line with the calls, the hit rate, the share of the total
+		 * time, the average time and the average allocation of every strategy
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			long totalNanos = 0;
+			for (int i = 1; i <= STRATEGIES; i++) {
+				totalNanos += this.nanos[i];
+			}
+			StringBuilder result = new StringBuilder();
+			for (int i = 1; i <= STRATEGIES; i++) {
+				long calls = Math.max(1, this.invocations[i]);
+				result.append(String.format("%s%d: %d calls %.0f%% hit %.0f%% time "
+						+ "%.1fus %dB", (i > 1) ? " | " : "", i,
+						this.invocations[i], 100.0 * this.successes[i] / calls,
+						100.0 * this.nanos[i] / Math.max(1, totalNanos),
+						this.nanos[i] / 1000.0 / calls, this.bytes[i] / calls));
+			}
+			return result.toString();
+		}
+	}
+
+	/**
+	 * Determines whether metrics are being counted
+	 * @return true if metrics are on
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns metrics on or off
+	 * <p>
+	 * Solvers that are running pick the change up on their next move, or on
+	 * their next solve on other threads.
+	 * @param on  whether to count metrics
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	/**
+	 * Adds up the metrics of every thread
+	 * @return the metrics counted since the JVM started
+	 */
+	public static Snapshot snapshot() {
+		Snapshot snapshot = new Snapshot();
+		synchronized (allCounters) {
+			for (Counters counters : allCounters) {
+				for (int i = 1; i <= STRATEGIES; i++) {
+					snapshot.invocations[i] += counters.invocations[i];
+					snapshot.successes[i] += counters.successes[i];
+					snapshot.nanos[i] += counters.nanos[i];
+					snapshot.bytes[i] += counters.bytes[i];
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Gets the counters of the current thread
+	 * @return the thread's counters
+	 */
+	static Counters forCurrentThread() {
+		return threadCounters.get();
+	}
+
+	/**
+	 * Gets the number of bytes the current thread has allocated so far
+	 * @return the number of bytes or 0 if the JVM can't measure it
+	 */
+	static long allocatedBytes() {
+		if (allocationsUnavailable) {
+			return 0;
+		}
+		try {
+			return AllocationCounter.allocatedBytes();
+		}
+		catch (LinkageError e) {
+			//no java.lang.management, as on Android
+			allocationsUnavailable = true;
+			return 0;
+		}
+	}
+
+	/* Reads allocations from com.sun.management.ThreadMXBean. This is a class of
+	 * its own so that the management classes, which Android doesn't have, are
+	 * only loaded once metrics are on.
+	 */
+	private static class AllocationCounter {
+		private static final com.sun.management.ThreadMXBean BEAN =
+				getThreadBean();
+
+		static long allocatedBytes() {
+			return (BEAN == null) ? 0
+					: BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		private static com.sun.management.ThreadMXBean getThreadBean() {
+			Object bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean threadBean =
+						(com.sun.management.ThreadMXBean)bean;
+				if (threadBean.isThreadAllocatedMemorySupported()) {
+					threadBean.setThreadAllocatedMemoryEnabled(true);
+					return threadBean;
+				}
+			}
+			return null;
+		}
+	}
+}